@@ -0,0 +1,55 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.entity.FailedNotification;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.FailedNotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a claimed failed_notifications row back into a request during retries, dominated by
+ * parsing the stored template data JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FailedNotificationMappingBenchmark {
+
+    @Param({"true", "false"})
+    public boolean withTemplateData;
+
+    private FailedNotificationService service;
+    private FailedNotification failedNotification;
+
+    @Setup
+    public void setUp() {
+        // mapToNotificationRequest never touches the database
+        service = new FailedNotificationService(null, null, new ObjectMapper());
+
+        failedNotification = new FailedNotification();
+        failedNotification.setId(UUID.randomUUID().toString());
+        failedNotification.setType(NotificationRequest.NotificationType.EMAIL);
+        failedNotification.setRecipient("test@example.com");
+        failedNotification.setSubject("Your order has shipped");
+        failedNotification.setTemplateName("email-template");
+        failedNotification.setCreatedAt(LocalDateTime.now());
+        if (withTemplateData) {
+            failedNotification.setTemplateData(
+                    "{\"name\":\"John Doe\",\"orderId\":\"A-100123\",\"carrier\":\"DHL\",\"eta\":\"Thursday\"}");
+        } else {
+            failedNotification.setContent("Order A-100123 is on its way.");
+        }
+    }
+
+    @Benchmark
+    public NotificationRequest mapToNotificationRequest() {
+        return service.mapToNotificationRequest(failedNotification);
+    }
+}
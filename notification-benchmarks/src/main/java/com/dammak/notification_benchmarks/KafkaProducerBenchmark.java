@@ -0,0 +1,62 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_benchmarks.support.LegacyKafkaProducer;
+import com.dammak.notification_benchmarks.support.StubKafkaTemplate;
+import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.model.NotificationRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-send overhead of KafkaProducer.sendEvent against a broker-less template, compared with the
+ * previous implementation. Run with {@code -prof gc} to see allocation per send.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaProducerBenchmark {
+
+    private static final String TOPIC = "notification-requests-normal";
+
+    private ScheduledExecutorService scheduler;
+    private KafkaProducer<NotificationRequest> producer;
+    private LegacyKafkaProducer<NotificationRequest> legacyProducer;
+    private NotificationRequest request;
+    private String key;
+
+    @Setup
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        producer = new KafkaProducer<>(new StubKafkaTemplate<>(), "benchmark-circuit-breaker", scheduler);
+        legacyProducer = new LegacyKafkaProducer<>(new StubKafkaTemplate<>(), "benchmark-legacy-circuit-breaker");
+
+        request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient("test@example.com");
+        request.setSubject("Benchmark");
+        request.setContent("Benchmark content");
+        key = request.getId().toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public SendResult<String, NotificationRequest> sendEvent() {
+        return producer.sendEvent(TOPIC, key, request).join();
+    }
+
+    @Benchmark
+    public SendResult<String, NotificationRequest> legacySendEvent() {
+        return legacyProducer.sendEvent(TOPIC, key, request).join();
+    }
+}
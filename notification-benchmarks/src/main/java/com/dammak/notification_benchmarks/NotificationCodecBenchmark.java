@@ -0,0 +1,94 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.kafka.serialization.NotificationBinarySerializer;
+import com.dammak.notification_service.kafka.serialization.NotificationDeserializer;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value ser/de cost of the JSON format (Spring's JsonSerializer with type headers) against the binary
+ * codec, for both record types. Bytes per record are printed once per trial; run with
+ * {@code -prof gc} for allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationCodecBenchmark {
+
+    private static final String TOPIC = "notification-requests-normal";
+
+    @Param({"json", "binary"})
+    public String format;
+
+    @Param({"request", "status"})
+    public String payload;
+
+    private Serializer<Object> serializer;
+    private Deserializer<?> deserializer;
+    private Object value;
+    private byte[] encoded;
+    private Headers encodedHeaders;
+
+    @Setup
+    public void setUp() {
+        boolean request = "request".equals(payload);
+        Class<?> type = request ? NotificationRequest.class : NotificationStatus.class;
+        value = request ? request() : status();
+
+        if ("json".equals(format)) {
+            serializer = new JsonSerializer<>();
+            JsonDeserializer<?> json = new JsonDeserializer<>(type);
+            json.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.dammak.notification_service.model"), false);
+            deserializer = json;
+        } else {
+            serializer = new NotificationBinarySerializer<>();
+            deserializer = new NotificationDeserializer<>(type);
+        }
+
+        encodedHeaders = new RecordHeaders();
+        encoded = serializer.serialize(TOPIC, encodedHeaders, value);
+        System.out.printf("%n[%s %s] %d value bytes per record%n", format, payload, encoded.length);
+    }
+
+    private static NotificationRequest request() {
+        NotificationRequest request = new NotificationRequest();
+        request.setPriority(NotificationRequest.Priority.HIGH);
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient("test@example.com");
+        request.setSubject("Your order has shipped");
+        request.setTemplateName("email-template");
+        request.setTemplateData(Map.of("name", "John Doe", "orderId", "A-100123", "carrier", "DHL"));
+        return request;
+    }
+
+    private static NotificationStatus status() {
+        return new NotificationStatus(UUID.randomUUID(), NotificationRequest.NotificationType.EMAIL,
+                "test@example.com", true, "EMAIL sent successfully", LocalDateTime.now());
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        // Fresh headers per record, as on the producer path
+        return serializer.serialize(TOPIC, new RecordHeaders(), value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserializer.deserialize(TOPIC, encodedHeaders, encoded);
+    }
+}
@@ -0,0 +1,40 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of the status factory called once per processed notification. Run with {@code -prof gc};
+ * the default message (null) costs an extra string concatenation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationStatusBenchmark {
+
+    private NotificationRequest request;
+
+    @Setup
+    public void setUp() {
+        request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient("test@example.com");
+        request.setSubject("Benchmark");
+    }
+
+    @Benchmark
+    public NotificationStatus getSuccessDefaultMessage() {
+        return NotificationStatus.getSuccess(request, null);
+    }
+
+    @Benchmark
+    public NotificationStatus getSuccessExplicitMessage() {
+        return NotificationStatus.getSuccess(request, "Push notification sent successfully");
+    }
+}
@@ -0,0 +1,93 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.kafka.producer.ProducerProfile;
+import com.dammak.notification_service.model.NotificationRequest;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send latency and burst throughput of each priority lane's producer profile against an embedded
+ * broker, compared with the single profile every template used before ({@code SHARED}). Latency
+ * is one send awaited at a time, so it includes the linger; throughput sends a burst of
+ * {@value #BURST} campaign-sized requests and awaits them all.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProducerProfileBenchmark {
+
+    private static final String TOPIC = "notification-requests";
+    private static final int BURST = 1000;
+
+    // The settings createProducerFactory applied to every producer before the lanes got their own
+    private static final ProducerProfile SHARED = new ProducerProfile(16384, Duration.ofMillis(5), "snappy", 33554432);
+
+    @Param({"CRITICAL", "HIGH", "NORMAL", "SHARED"})
+    private String lane;
+
+    private EmbeddedKafkaKraftBroker broker;
+    private DefaultKafkaProducerFactory<String, NotificationRequest> producerFactory;
+    private KafkaTemplate<String, NotificationRequest> template;
+    private NotificationRequest request;
+
+    @Setup
+    public void setUp() {
+        broker = new EmbeddedKafkaKraftBroker(1, 1, TOPIC);
+        broker.afterPropertiesSet();
+
+        ProducerProfile profile = "SHARED".equals(lane)
+                ? SHARED
+                : ProducerProfile.forPriority(NotificationRequest.Priority.valueOf(lane));
+        Map<String, Object> configs = new HashMap<>(profile.producerConfigs());
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        configs.put(ProducerConfig.ACKS_CONFIG, "all");
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        producerFactory = new DefaultKafkaProducerFactory<>(configs, new StringSerializer(), new JsonSerializer<>());
+        template = new KafkaTemplate<>(producerFactory);
+
+        request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient("test@example.com");
+        request.setSubject("Spring campaign");
+        request.setContent("Hello, our spring collection is here. ".repeat(20));
+        request.setTemplateData(Map.of("firstName", "Ada", "offerCode", "SPRING25"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        producerFactory.destroy();
+        broker.destroy();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SendResult<String, NotificationRequest> sendLatency() {
+        return template.send(TOPIC, request.getId().toString(), request).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void burstThroughput() {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            sends[i] = template.send(TOPIC, Integer.toString(i), request);
+        }
+        CompletableFuture.allOf(sends).join();
+    }
+}
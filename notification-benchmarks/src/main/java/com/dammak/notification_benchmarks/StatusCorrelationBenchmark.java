@@ -0,0 +1,58 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.correlation.StatusCorrelationRegistry;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the controller's pending-response map: every thread registers a request and completes
+ * it, as the HTTP thread and the status listener do for each POST. Compare {@code -t 1} with higher
+ * thread counts to see how it scales.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class StatusCorrelationBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(3);
+
+    private StatusCorrelationRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new StatusCorrelationRegistry(Duration.ofMillis(100), 512, 0, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadStatus {
+        final NotificationStatus status = new NotificationStatus(null, NotificationRequest.NotificationType.EMAIL,
+                "test@example.com", true, "EMAIL sent successfully", LocalDateTime.now());
+    }
+
+    @Benchmark
+    public boolean registerAndComplete(ThreadStatus state) {
+        // Not UUID.randomUUID(): its SecureRandom would dominate and serialise the threads
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID id = new UUID(random.nextLong(), random.nextLong());
+        registry.register(id, TIMEOUT);
+        state.status.setId(id);
+        return registry.complete(state.status);
+    }
+}
@@ -0,0 +1,68 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.config.TemplateConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the email template through the engine EmailService uses (TemplateConfig), with the
+ * parsed-template cache on and, for comparison, off (every render re-reads and re-parses the file).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateRenderBenchmark {
+
+    private static final String TEMPLATE = "email-template";
+
+    @Param({"true", "false"})
+    public boolean cacheable;
+
+    private AnnotationConfigApplicationContext context;
+    private SpringTemplateEngine engine;
+    private Map<String, String> templateData;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        // Boot's conversions, so "0s"-style @Value durations resolve as in the service
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(TemplateConfig.class);
+        context.refresh();
+        context.getBean(SpringResourceTemplateResolver.class).setCacheable(cacheable);
+        engine = context.getBean(SpringTemplateEngine.class);
+
+        templateData = Map.of(
+                "subject", "Your order has shipped",
+                "name", "John Doe",
+                "message", "Order A-100123 is on its way and should arrive on Thursday.",
+                "actionUrl", "https://example.com/orders/A-100123",
+                "actionText", "Track order");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String render() {
+        // Same per-request work as EmailTemplateRenderer: fresh context, then process
+        Context ctx = new Context();
+        templateData.forEach(ctx::setVariable);
+        return engine.process(TEMPLATE, ctx);
+    }
+}
@@ -0,0 +1,214 @@
+package com.dammak.notification_benchmarks;
+
+import com.dammak.notification_service.mail.PooledJavaMailSender;
+import com.dammak.notification_service.monitoring.VirtualThreadPinningMonitor;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pinning of the blocking provider clients when dispatched on virtual threads
+ * ({@code notification.dispatch.virtual-threads.enabled=true}). Each operation sends a burst of
+ * {@value #BURST} SMS through the Twilio client or emails through {@link PooledJavaMailSender} against
+ * local stand-ins, on virtual threads or on a platform pool the size of notificationBatchExecutor.
+ * <p>
+ * JFR's {@code jdk.VirtualThreadPinned} events are streamed with no threshold while the benchmark
+ * runs; pins per send, pinned time per send and the top pinning sites are printed after each trial.
+ */
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class VirtualThreadPinningBenchmark {
+
+    private static final int BURST = 200;
+    private static final int PLATFORM_THREADS = 32;
+    private static final Duration PROVIDER_LATENCY = Duration.ofMillis(20);
+    private static final String ACCOUNT_SID = "AC00000000000000000000000000000000";
+
+    @Param({"SMS", "EMAIL"})
+    private String channel;
+
+    @Param({"virtual", "platform"})
+    private String dispatch;
+
+    private ExecutorService executor;
+    private HttpServer twilio;
+    private ExecutorService twilioHandlers;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private TwilioRestClient twilioClient;
+    private GreenMail smtp;
+    private PooledJavaMailSender mailSender;
+
+    private RecordingStream pinning;
+    private final LongAdder sends = new LongAdder();
+    private final LongAdder pins = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        executor = "virtual".equals(dispatch)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+        if ("SMS".equals(channel)) {
+            startTwilio();
+        } else {
+            startSmtp();
+        }
+
+        pinning = new RecordingStream();
+        pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+        pinning.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        pinning.startAsync();
+    }
+
+    // Same client setup as TwilioConfig, routed to a local fake of the Messages endpoint
+    private void startTwilio() throws IOException {
+        twilioHandlers = Executors.newVirtualThreadPerTaskExecutor();
+        twilio = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        twilio.createContext("/2010-04-01/Accounts/" + ACCOUNT_SID + "/Messages.json", this::handleTwilio);
+        twilio.setExecutor(twilioHandlers);
+        twilio.start();
+
+        connectionManager = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        connectionManager.setMaxTotal(BURST);
+        connectionManager.setDefaultMaxPerRoute(BURST);
+        HttpHost fake = new HttpHost("localhost", twilio.getAddress().getPort());
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setRoutePlanner((target, request, context) -> new HttpRoute(fake));
+        twilioClient = new TwilioRestClient.Builder(ACCOUNT_SID, "benchmark")
+                .httpClient(new NetworkHttpClient(builder))
+                .build();
+    }
+
+    private void handleTwilio(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        try {
+            Thread.sleep(PROVIDER_LATENCY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = "{\"sid\":\"SM0\",\"status\":\"queued\"}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(201, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void startSmtp() {
+        smtp = new GreenMail(new ServerSetup(0, "localhost", ServerSetup.PROTOCOL_SMTP))
+                .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+        smtp.start();
+        smtp.setUser("benchmark", "benchmark");
+        // The default pool size of notification.mail.pool.max-size
+        mailSender = new PooledJavaMailSender(10, Duration.ofMinutes(1), Duration.ofSeconds(30),
+                Duration.ofSeconds(30), 100);
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtp.getSmtp().getPort());
+        mailSender.setUsername("benchmark");
+        mailSender.setPassword("benchmark");
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pins.increment();
+        pinnedNanos.add(event.getDuration().toNanos());
+        sites.computeIfAbsent(VirtualThreadPinningMonitor.pinningSite(event.getStackTrace()), s -> new LongAdder())
+                .increment();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        // Events are delivered in chunks; let the last one arrive before reporting
+        Thread.sleep(1500);
+        pinning.close();
+        report();
+
+        if (twilio != null) {
+            twilio.stop(0);
+            twilioHandlers.shutdownNow();
+            connectionManager.close();
+        }
+        if (smtp != null) {
+            mailSender.destroy();
+            smtp.stop();
+        }
+    }
+
+    private void report() {
+        long sent = Math.max(1, sends.sum());
+        StringBuilder out = new StringBuilder(String.format(
+                "%n%s on %s threads: %d sends, %d pinned events (%.3f per send), %.3f ms pinned per send%n",
+                channel, dispatch, sends.sum(), pins.sum(), (double) pins.sum() / sent,
+                pinnedNanos.sum() / 1e6 / sent));
+        sites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .limit(5)
+                .forEach(site -> out.append(String.format("  %8d  %s%n", site.getValue().sum(), site.getKey())));
+        System.out.print(out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int burst() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            int sequence = i;
+            futures.add(executor.submit("SMS".equals(channel) ? () -> sendSms(sequence) : () -> sendEmail(sequence)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        sends.add(BURST);
+        return futures.size();
+    }
+
+    private void sendSms(int sequence) {
+        Message.creator(new PhoneNumber("+1555000" + String.format("%04d", sequence)),
+                new PhoneNumber("+15005550006"), "Your order has shipped").create(twilioClient);
+    }
+
+    private void sendEmail(int sequence) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("notifications@example.com");
+        message.setTo("user" + sequence + "@example.com");
+        message.setSubject("Your order has shipped");
+        message.setText("Track it at https://example.com/orders/" + sequence);
+        mailSender.send(message);
+    }
+}
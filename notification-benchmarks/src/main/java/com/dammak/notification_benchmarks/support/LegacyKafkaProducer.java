@@ -0,0 +1,75 @@
+package com.dammak.notification_benchmarks.support;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The send path of KafkaProducer before the asynchronous rebuild (registry and Retry created per
+ * call, synchronous retry around a future-returning supplier), kept as the comparison baseline.
+ * Logging is left out on both sides.
+ */
+public class LegacyKafkaProducer<T> {
+
+    private final KafkaTemplate<String, T> kafkaTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryConfig standardRetryConfig;
+
+    public LegacyKafkaProducer(KafkaTemplate<String, T> kafkaTemplate, String circuitBreakerName) {
+        this.kafkaTemplate = kafkaTemplate;
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedNumberOfCallsInHalfOpenState(3)
+                .slidingWindowSize(10)
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .build();
+        this.circuitBreaker = CircuitBreakerRegistry.of(circuitBreakerConfig).circuitBreaker(circuitBreakerName);
+        this.standardRetryConfig = RetryConfig.custom()
+                .maxAttempts(3)
+                .waitDuration(Duration.ofMillis(500))
+                .retryExceptions(org.apache.kafka.common.errors.RetriableException.class,
+                        org.springframework.kafka.KafkaException.class)
+                .build();
+    }
+
+    public CompletableFuture<SendResult<String, T>> sendEvent(String topic, String key, T event) {
+        RetryRegistry retryRegistry = RetryRegistry.of(standardRetryConfig);
+        Retry retry = retryRegistry.retry("send-" + topic);
+
+        Supplier<CompletableFuture<SendResult<String, T>>> sendOperation = () -> {
+            try {
+                return kafkaTemplate.send(topic, key, event)
+                        .whenComplete((result, ex) -> {
+                            if (ex != null) {
+                                throw new RuntimeException("Failed to send event", ex);
+                            }
+                        });
+            } catch (Exception e) {
+                CompletableFuture<SendResult<String, T>> failedFuture = new CompletableFuture<>();
+                failedFuture.completeExceptionally(e);
+                return failedFuture;
+            }
+        };
+
+        Supplier<CompletableFuture<SendResult<String, T>>> circuitBreakerProtectedSupplier =
+                CircuitBreaker.decorateSupplier(circuitBreaker, sendOperation);
+
+        try {
+            return retry.executeSupplier(circuitBreakerProtectedSupplier);
+        } catch (Exception e) {
+            CompletableFuture<SendResult<String, T>> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(e);
+            return failedFuture;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.dammak.notification_benchmarks.support;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * KafkaTemplate that acknowledges every record immediately without a broker, so benchmarks measure
+ * only the client-side cost of the send pipeline.
+ */
+public class StubKafkaTemplate<T> extends KafkaTemplate<String, T> {
+
+    private static final RecordMetadata METADATA =
+            new RecordMetadata(new TopicPartition("benchmark", 0), 0, 0, 0, 0, 0);
+
+    public StubKafkaTemplate() {
+        super(new DefaultKafkaProducerFactory<>(Map.of()));
+    }
+
+    @Override
+    public CompletableFuture<SendResult<String, T>> send(ProducerRecord<String, T> record) {
+        return CompletableFuture.completedFuture(new SendResult<>(record, METADATA));
+    }
+
+    @Override
+    public CompletableFuture<SendResult<String, T>> send(String topic, String key, T data) {
+        return send(new ProducerRecord<>(topic, key, data));
+    }
+}
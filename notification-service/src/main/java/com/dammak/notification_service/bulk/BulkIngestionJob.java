@@ -0,0 +1,98 @@
+package com.dammak.notification_service.bulk;
+
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of one bulk upload. Counters are updated by the ingesting thread and by producer
+ * callbacks, and read at any time by status requests.
+ */
+public class BulkIngestionJob {
+
+    public enum State {
+        RUNNING, COMPLETED, ABORTED
+    }
+
+    /**
+     * A line that was not published, with its 1-based line number in the upload.
+     */
+    public record LineError(long line, String message) {
+    }
+
+    /**
+     * Point-in-time view of a job, as returned to clients.
+     */
+    public record Status(UUID jobId, State state, long received, long accepted, long rejected, long failed,
+                         Instant startedAt, Instant finishedAt, String message, List<LineError> errors) {
+    }
+
+    private final UUID id = UUID.randomUUID();
+    private final Instant startedAt = Instant.now();
+    private final int maxErrors;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final List<LineError> errors = new CopyOnWriteArrayList<>();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    private volatile State state = State.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String message;
+
+    public BulkIngestionJob(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void received() {
+        received.increment();
+    }
+
+    void accepted() {
+        accepted.increment();
+    }
+
+    void rejected(long line, String reason) {
+        rejected.increment();
+        recordError(line, reason);
+    }
+
+    void failed(long line, String reason) {
+        failed.increment();
+        recordError(line, reason);
+    }
+
+    void finish(State finalState, String finalMessage) {
+        message = finalMessage;
+        finishedAt = Instant.now();
+        state = finalState;
+    }
+
+    // Only the first errors are kept; a broken upload of millions of lines must not fill the heap
+    private void recordError(long line, String reason) {
+        if (errorCount.getAndIncrement() < maxErrors) {
+            errors.add(new LineError(line, reason));
+        }
+    }
+
+    /**
+     * Current counters; errors are left out of the frequent progress updates and included in the final one.
+     */
+    public Status snapshot(boolean includeErrors) {
+        return new Status(id, state, received.sum(), accepted.sum(), rejected.sum(), failed.sum(),
+                startedAt, finishedAt, message, includeErrors ? List.copyOf(errors) : List.of());
+    }
+}
@@ -0,0 +1,233 @@
+package com.dammak.notification_service.bulk;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.NotificationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Publishes newline-delimited {@link NotificationRequest}s from a bulk upload.
+ * <p>
+ * The body is read one line at a time, so memory use depends on the batch size rather than the
+ * upload size. Each line is validated with the same constraints as the single-request endpoint, and
+ * valid ones go to Kafka in batches. One batch waits for its acks while the next is read, which
+ * bounds how much is in flight and lets a slow broker throttle the upload. If Kafka rejects every
+ * record of a batch, the job is aborted instead of failing the rest of the file one record at a time.
+ */
+@Service
+@Slf4j
+public class BulkIngestionService {
+
+    private record Line(long number, NotificationRequest request) {
+    }
+
+    private final NotificationService notificationService;
+    private final Validator validator;
+    private final ObjectReader requestReader;
+    private final int batchSize;
+    private final int maxErrors;
+    private final Semaphore jobSlots;
+    private final Cache<UUID, BulkIngestionJob> jobs;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    public BulkIngestionService(NotificationService notificationService,
+                                Validator validator,
+                                ObjectMapper objectMapper,
+                                @Value("${notification.bulk.batch-size:1000}") int batchSize,
+                                @Value("${notification.bulk.max-errors:100}") int maxErrors,
+                                @Value("${notification.bulk.max-concurrent-jobs:4}") int maxConcurrentJobs,
+                                @Value("${notification.bulk.job-retention:24h}") Duration jobRetention,
+                                MeterRegistry meterRegistry) {
+        this.notificationService = notificationService;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(NotificationRequest.class);
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+        this.jobSlots = new Semaphore(maxConcurrentJobs);
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(jobRetention)
+                .maximumSize(10_000)
+                .build();
+        this.acceptedCounter = recordCounter(meterRegistry, "accepted");
+        this.rejectedCounter = recordCounter(meterRegistry, "rejected");
+        this.failedCounter = recordCounter(meterRegistry, "failed");
+    }
+
+    private static Counter recordCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("notification.bulk.records")
+                .description("Bulk upload lines by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Register a new job, or return empty if the maximum number of uploads is already running.
+     * A started job must be passed to {@link #ingest}, which frees its slot.
+     */
+    public Optional<BulkIngestionJob> start() {
+        if (!jobSlots.tryAcquire()) {
+            return Optional.empty();
+        }
+        BulkIngestionJob job = new BulkIngestionJob(maxErrors);
+        jobs.put(job.getId(), job);
+        return Optional.of(job);
+    }
+
+    public Optional<BulkIngestionJob> find(UUID jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+    /**
+     * Read and publish the whole upload. Blocks until the body is consumed and every record has been
+     * acknowledged or has failed; {@code progress} is called after each batch is handed to Kafka.
+     */
+    public void ingest(BulkIngestionJob job, InputStream body, Consumer<BulkIngestionJob.Status> progress) {
+        CompletableFuture<Boolean> inFlight = CompletableFuture.completedFuture(true);
+        long lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            List<Line> batch = new ArrayList<>(batchSize);
+            String text;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                job.received();
+                NotificationRequest request = parse(job, lineNumber, text);
+                if (request == null) {
+                    continue;
+                }
+                batch.add(new Line(lineNumber, request));
+                if (batch.size() >= batchSize) {
+                    if (!inFlight.join()) {
+                        abort(job, lineNumber);
+                        return;
+                    }
+                    inFlight = publish(job, batch);
+                    batch = new ArrayList<>(batchSize);
+                    progress.accept(job.snapshot(false));
+                }
+            }
+            if (!inFlight.join() || (!batch.isEmpty() && !publish(job, batch).join())) {
+                abort(job, lineNumber);
+                return;
+            }
+            job.finish(BulkIngestionJob.State.COMPLETED, null);
+            log.info("Bulk job {} completed: {}", job.getId(), job.snapshot(false));
+        } catch (IOException e) {
+            // Usually the client went away mid-upload; what was already sent stays sent
+            inFlight.join();
+            job.finish(BulkIngestionJob.State.ABORTED, "Failed to read upload after line " + lineNumber + ": " + e.getMessage());
+            log.warn("Bulk job {} aborted after line {}: {}", job.getId(), lineNumber, e.getMessage());
+        } catch (RuntimeException e) {
+            job.finish(BulkIngestionJob.State.ABORTED, "Failed after line " + lineNumber + ": " + e.getMessage());
+            throw e;
+        } finally {
+            jobSlots.release();
+        }
+    }
+
+    private void abort(BulkIngestionJob job, long lineNumber) {
+        job.finish(BulkIngestionJob.State.ABORTED,
+                "Kafka rejected a whole batch; stopped reading at line " + lineNumber);
+        log.error("Bulk job {} aborted at line {}: Kafka rejected a whole batch", job.getId(), lineNumber);
+    }
+
+    private NotificationRequest parse(BulkIngestionJob job, long lineNumber, String text) {
+        NotificationRequest request;
+        try {
+            request = requestReader.readValue(text);
+        } catch (JsonProcessingException e) {
+            reject(job, lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+            return null;
+        }
+        if (request == null) {
+            reject(job, lineNumber, "Not a notification request");
+            return null;
+        }
+
+        Set<String> problems = new TreeSet<>();
+        for (ConstraintViolation<NotificationRequest> violation : validator.validate(request)) {
+            problems.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        // Defaults the single-request endpoint relies on, which an explicit null in the upload overrides
+        if (request.getId() == null) {
+            problems.add("id: must not be null");
+        }
+        if (request.getPriority() == null) {
+            problems.add("priority: must not be null");
+        }
+        if (!problems.isEmpty()) {
+            reject(job, lineNumber, String.join("; ", problems));
+            return null;
+        }
+        return request;
+    }
+
+    private void reject(BulkIngestionJob job, long lineNumber, String reason) {
+        job.rejected(lineNumber, reason);
+        rejectedCounter.increment();
+    }
+
+    /**
+     * Send a batch; the future completes once every record is acked or failed, with false when none
+     * made it.
+     */
+    private CompletableFuture<Boolean> publish(BulkIngestionJob job, List<Line> batch) {
+        AtomicInteger acked = new AtomicInteger();
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            Line line = batch.get(i);
+            CompletableFuture<?> send;
+            try {
+                send = notificationService.publishRequest(line.request());
+            } catch (RuntimeException e) {
+                send = CompletableFuture.failedFuture(e);
+            }
+            sends[i] = send.handle((result, ex) -> {
+                if (ex == null) {
+                    acked.incrementAndGet();
+                    job.accepted();
+                    acceptedCounter.increment();
+                } else {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    job.failed(line.number(), "Failed to publish: " + cause.getMessage());
+                    failedCounter.increment();
+                }
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(sends).thenApply(v -> acked.get() > 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.dammak.notification_service.config;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${notification.dispatch.virtual-threads.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    // Fan-out pool for records of a polled batch, shared by all priority containers
+    @Bean
+    public AsyncTaskExecutor notificationBatchExecutor(
+            @Value("${notification.kafka.batch.parallelism:32}") int parallelism) {
+        if (virtualThreadsEnabled) {
+            // One virtual thread per key group; ChannelConcurrencyLimiter bounds the provider calls instead
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("notification-vt-");
+            executor.setVirtualThreads(true);
+            executor.setTaskTerminationTimeout(30_000);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("notification-batch-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Runs the blocking Twilio calls; SmsService caps how many are in flight
+    @Bean
+    public AsyncTaskExecutor smsSendExecutor(@Value("${notification.sms.max-in-flight:200}") int maxInFlight) {
+        if (virtualThreadsEnabled) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("sms-vt-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxInFlight);
+        executor.setMaxPoolSize(maxInFlight);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("sms-send-");
+        return executor;
+    }
+
+    // One thread per bulk upload; it mostly blocks on the request body and on broker acks
+    @Bean
+    public AsyncTaskExecutor bulkIngestExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("bulk-ingest-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
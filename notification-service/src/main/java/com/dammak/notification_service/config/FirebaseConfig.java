@@ -1,27 +1,56 @@
 package com.dammak.notification_service.config;
 
 
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.FirebaseMessaging;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
 
 @Configuration
 public class FirebaseConfig {
 
+    // Points FCM at a local stand-in for load tests; empty means the real endpoint
+    @Value("${notification.push.fcm.base-url:}")
+    private String fcmBaseUrl;
+
     @Bean
     public FirebaseApp firebaseApp() throws IOException {
         if (FirebaseApp.getApps().isEmpty()) {
-            FirebaseOptions options = FirebaseOptions.builder()
+            FirebaseOptions.Builder options = FirebaseOptions.builder()
                     .setCredentials(GoogleCredentials.fromStream(
-                            new ClassPathResource("firebase-service-account.json").getInputStream()))
-                    .build();
-            return FirebaseApp.initializeApp(options);
+                            new ClassPathResource("firebase-service-account.json").getInputStream()));
+            if (!fcmBaseUrl.isEmpty()) {
+                options.setHttpTransport(redirectingTransport(URI.create(fcmBaseUrl)));
+            }
+            return FirebaseApp.initializeApp(options.build());
         }
         return FirebaseApp.getInstance();
     }
-}
\ No newline at end of file
+
+    @Bean
+    public FirebaseMessaging firebaseMessaging(FirebaseApp firebaseApp) {
+        return FirebaseMessaging.getInstance(firebaseApp);
+    }
+
+    /**
+     * HTTP transport that sends every request to {@code baseUrl}, keeping the original path and query.
+     */
+    public static HttpTransport redirectingTransport(URI baseUrl) {
+        return new NetHttpTransport.Builder()
+                .setConnectionFactory(url -> {
+                    URI target = baseUrl.resolve(url.getFile());
+                    return (HttpURLConnection) target.toURL().openConnection();
+                })
+                .build();
+    }
+}
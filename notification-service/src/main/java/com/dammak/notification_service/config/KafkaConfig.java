@@ -1,23 +1,41 @@
 package com.dammak.notification_service.config;
 
+import com.dammak.notification_service.kafka.listener.ParallelNotificationConsumer;
+import com.dammak.notification_service.kafka.listener.ReplayWindow;
 import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.kafka.producer.PriorityProducerRouter;
+import com.dammak.notification_service.kafka.producer.ProducerProfile;
+import com.dammak.notification_service.kafka.serialization.NotificationBinarySerializer;
+import com.dammak.notification_service.kafka.serialization.NotificationDeserializer;
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Configuration
 public class KafkaConfig {
@@ -28,47 +46,135 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${notification.kafka.topic.status-events}")
+    private String statusEventsTopic;
+
+    // Must be at least the number of replicas: each instance owns one reply partition
+    @Value("${notification.kafka.reply.partitions:8}")
+    private int replyPartitions;
+
+    @Value("${notification.kafka.batch.max-poll-records:500}")
+    private int batchMaxPollRecords;
+
+    @Value("${notification.kafka.batch.max-poll-interval:10m}")
+    private Duration batchMaxPollInterval;
+
+    // batch or parallel, see KafkaNotificationListener
+    @Value("${notification.kafka.consumer.mode:batch}")
+    private String consumerMode;
+
+    @Value("${notification.kafka.parallel.commit-interval:1s}")
+    private Duration parallelCommitInterval;
+
+    // Value format written by producers: json or binary. Consumers read both.
+    @Value("${notification.kafka.serialization.format:json}")
+    private String serializationFormat;
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    // Looked up lazily: it depends on the producers defined here
+    private final ObjectProvider<ParallelNotificationConsumer> parallelConsumer;
+    private final ReplayWindow replayWindow;
+
+    public KafkaConfig(MeterRegistry meterRegistry, Environment environment,
+                       ObjectProvider<ParallelNotificationConsumer> parallelConsumer,
+                       ReplayWindow replayWindow) {
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+        this.parallelConsumer = parallelConsumer;
+        this.replayWindow = replayWindow;
+    }
+
+    // =================== TOPIC CONFIGURATION ===================
+
+    @Bean
+    public NewTopic statusEventsTopic() {
+        return TopicBuilder.name(statusEventsTopic)
+                .partitions(replyPartitions)
+                .build();
+    }
+
     // =================== PRODUCER CONFIGURATION ===================
 
-    // Generic producer factory method
-    private <T> ProducerFactory<String, T> createProducerFactory() {
+    // Generic producer factory method; each call creates a separate producer instance
+    private <T> ProducerFactory<String, T> createProducerFactory(String lane, ProducerProfile defaults) {
+        ProducerProfile profile = producerProfile(lane, defaults);
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.CLIENT_ID_CONFIG, "notification-" + lane);
 
-        // Performance and reliability settings
+        // Reliability settings are the same for every lane; batching and compression come from the profile
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
-        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
-        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 5);
-        configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432);
-        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "snappy");
+        configProps.putAll(profile.producerConfigs());
 
-        return new DefaultKafkaProducerFactory<>(configProps);
+        Serializer<T> valueSerializer = "binary".equalsIgnoreCase(serializationFormat)
+                ? new NotificationBinarySerializer<>()
+                : new JsonSerializer<>();
+        DefaultKafkaProducerFactory<String, T> factory =
+                new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), valueSerializer);
+        // Binds the client metrics of each lane's producer, tagged with its client id
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
-    // KafkaTemplate beans for different types
-    @Bean
-    public KafkaTemplate<String, NotificationRequest> notificationRequestKafkaTemplate() {
-        return new KafkaTemplate<>(createProducerFactory());
+    // Lane defaults can be overridden under notification.kafka.producer.<lane>.*
+    private ProducerProfile producerProfile(String lane, ProducerProfile defaults) {
+        String prefix = "notification.kafka.producer." + lane + ".";
+        return new ProducerProfile(
+                (int) environment.getProperty(prefix + "batch-size", DataSize.class,
+                        DataSize.ofBytes(defaults.batchSize())).toBytes(),
+                environment.getProperty(prefix + "linger", Duration.class, defaults.linger()),
+                environment.getProperty(prefix + "compression", defaults.compression()),
+                environment.getProperty(prefix + "buffer-memory", DataSize.class,
+                        DataSize.ofBytes(defaults.bufferMemory())).toBytes());
     }
 
     @Bean
     public KafkaTemplate<String, NotificationStatus> notificationStatusKafkaTemplate() {
-        return new KafkaTemplate<>(createProducerFactory());
+        // Statuses complete waiting HTTP requests, so they are sent with little linger
+        return new KafkaTemplate<>(createProducerFactory("status", ProducerProfile.BALANCED));
+    }
+
+    // Backoff timer for producer retries; sends never block on it, it only re-schedules attempts
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService kafkaProducerRetryScheduler() {
+        return Executors.newScheduledThreadPool(2, Thread.ofPlatform()
+                .name("kafka-producer-retry-", 0)
+                .daemon(true)
+                .factory());
+    }
+
+    // Backoff timer for in-place retries of the parallel consumer; it only re-submits attempts
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService kafkaConsumerRetryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("kafka-consumer-retry")
+                .daemon(true)
+                .factory());
     }
 
-    // Generic producer beans
+    // One request producer, with its own circuit breaker, per priority lane
     @Bean
-    public KafkaProducer<NotificationRequest> notificationRequestProducer() {
-        return new KafkaProducer<>(notificationRequestKafkaTemplate(), "notification-request-circuit-breaker");
+    public PriorityProducerRouter priorityProducerRouter() {
+        Map<NotificationRequest.Priority, KafkaProducer<NotificationRequest>> producers =
+                new EnumMap<>(NotificationRequest.Priority.class);
+        for (NotificationRequest.Priority priority : NotificationRequest.Priority.values()) {
+            String lane = priority.name().toLowerCase(Locale.ROOT);
+            KafkaTemplate<String, NotificationRequest> template =
+                    new KafkaTemplate<>(createProducerFactory(lane, ProducerProfile.forPriority(priority)));
+            producers.put(priority, new KafkaProducer<>(template, "notification-request-" + lane + "-circuit-breaker",
+                    kafkaProducerRetryScheduler()));
+        }
+        return new PriorityProducerRouter(producers);
     }
 
     @Bean
     public KafkaProducer<NotificationStatus> notificationStatusProducer() {
-        return new KafkaProducer<>(notificationStatusKafkaTemplate(), "notification-status-circuit-breaker");
+        return new KafkaProducer<>(notificationStatusKafkaTemplate(), "notification-status-circuit-breaker",
+                kafkaProducerRetryScheduler());
     }
 
 //    // For backward compatibility
@@ -81,15 +187,23 @@ public class KafkaConfig {
 
     // Generic consumer factory method
     private <T> ConsumerFactory<String, T> createConsumerFactory(Class<T> type, String groupIdSuffix) {
+        return createConsumerFactory(type, groupIdSuffix, Map.of());
+    }
+
+    private <T> ConsumerFactory<String, T> createConsumerFactory(Class<T> type, String groupIdSuffix,
+                                                                 Map<String, Object> overrides) {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId + groupIdSuffix);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.dammak.notification_service.model");
-        return new DefaultKafkaConsumerFactory<>(props,
+        props.putAll(overrides);
+        DefaultKafkaConsumerFactory<String, T> factory = new DefaultKafkaConsumerFactory<>(props,
                 new StringDeserializer(),
-                new JsonDeserializer<>(type));
+                new NotificationDeserializer<>(type));
+        // Binds the client metrics of every consumer, including records-lag per assigned partition
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
 
     // Consumer factories
@@ -98,9 +212,27 @@ public class KafkaConfig {
         return createConsumerFactory(NotificationRequest.class, "");
     }
 
+    @Bean
+    public ConsumerFactory<String, NotificationRequest> notificationBatchConsumerFactory() {
+        // A whole poll is processed before the next one, so allow for slow providers
+        return createConsumerFactory(NotificationRequest.class, "", Map.of(
+                ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxPollRecords,
+                ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, (int) batchMaxPollInterval.toMillis()));
+    }
+
     @Bean
     public ConsumerFactory<String, NotificationStatus> statusConsumerFactory() {
-        return createConsumerFactory(NotificationStatus.class, "-response");
+        // Pending futures only live in memory, so statuses from before a restart are useless
+        return createConsumerFactory(NotificationStatus.class, "-response",
+                Map.of(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest"));
+    }
+
+    @Bean
+    public ConsumerFactory<String, NotificationStatus> statusCacheConsumerFactory() {
+        // Nothing is committed for the cache consumer, so it always starts from the newest statuses
+        return createConsumerFactory(NotificationStatus.class, "-status-cache", Map.of(
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest",
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false));
     }
 
     // Listener containers
@@ -112,24 +244,48 @@ public class KafkaConfig {
         return factory;
     }
 
-    @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> highPriorityKafkaListenerContainerFactory() {
+    // Batch listener containers: each poll is handed over whole and fanned out by BatchNotificationProcessor
+    private ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> createBatchListenerContainerFactory(int concurrency) {
         ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(notificationConsumerFactory());
-        factory.setConcurrency(3); // More concurrent consumers for high priority
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.setConsumerFactory(notificationBatchConsumerFactory());
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        if ("parallel".equalsIgnoreCase(consumerMode)) {
+            // ParallelNotificationConsumer commits itself; nothing is acknowledged, so the container never commits.
+            // It also keeps the ReplayWindow up to date
+            ContainerProperties properties = factory.getContainerProperties();
+            properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+            properties.setConsumerRebalanceListener(parallelConsumer.getObject());
+            // Idle events let completions be committed while no records arrive
+            properties.setIdleEventInterval(parallelCommitInterval.toMillis());
+            // Idle events are only checked between polls, so a poll must not outlast the interval
+            properties.setPollTimeout(Math.min(properties.getPollTimeout(), parallelCommitInterval.toMillis()));
+        } else {
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+            factory.getContainerProperties().setConsumerRebalanceListener(replayWindow);
+        }
         return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> criticalPriorityKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> factory =
-                new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(notificationConsumerFactory());
-        factory.setConcurrency(5); // Even more concurrent consumers for critical priority
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
-        return factory;
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> lowPriorityBatchListenerContainerFactory() {
+        return createBatchListenerContainerFactory(1);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> normalPriorityBatchListenerContainerFactory() {
+        return createBatchListenerContainerFactory(1);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> highPriorityBatchListenerContainerFactory() {
+        return createBatchListenerContainerFactory(3); // More concurrent consumers for high priority
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationRequest> criticalPriorityBatchListenerContainerFactory() {
+        return createBatchListenerContainerFactory(5); // Even more concurrent consumers for critical priority
     }
 
     @Bean
@@ -139,4 +295,15 @@ public class KafkaConfig {
         factory.setConsumerFactory(statusConsumerFactory());
         return factory;
     }
-}
\ No newline at end of file
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationStatus> statusCacheListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, NotificationStatus> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(statusCacheConsumerFactory());
+        factory.setBatchListener(true);
+        // Never acknowledged, so the container never commits offsets for the shared group id
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
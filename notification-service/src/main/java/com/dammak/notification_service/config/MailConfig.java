@@ -0,0 +1,83 @@
+package com.dammak.notification_service.config;
+
+
+import com.dammak.notification_service.mail.PooledJavaMailSender;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Replaces Boot's per-send {@code JavaMailSenderImpl} with a pooled sender for the relay configured
+ * under {@code spring.mail.*}. Pool settings live under {@code notification.mail.pool.*}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "spring.mail", name = "host")
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+
+    @Value("${notification.mail.pool.size:8}")
+    private int poolSize;
+
+    @Value("${notification.mail.pool.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${notification.mail.pool.validation-interval:10s}")
+    private Duration validationInterval;
+
+    @Value("${notification.mail.pool.max-wait:30s}")
+    private Duration maxWait;
+
+    @Value("${notification.mail.pool.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Bean
+    public PooledJavaMailSender mailSender(MailProperties mailProperties, MeterRegistry meterRegistry,
+                                           ChannelConcurrencyLimiter channelLimiter) {
+        PooledJavaMailSender sender = new PooledJavaMailSender(poolSize, idleTimeout, validationInterval,
+                maxWait, maxMessagesPerConnection);
+        sender.setHost(mailProperties.getHost());
+        if (mailProperties.getPort() != null) {
+            sender.setPort(mailProperties.getPort());
+        }
+        sender.setUsername(mailProperties.getUsername());
+        sender.setPassword(mailProperties.getPassword());
+        sender.setProtocol(mailProperties.getProtocol());
+        if (mailProperties.getDefaultEncoding() != null) {
+            sender.setDefaultEncoding(mailProperties.getDefaultEncoding().name());
+        }
+        if (!mailProperties.getProperties().isEmpty()) {
+            Properties javaMailProperties = new Properties();
+            javaMailProperties.putAll(mailProperties.getProperties());
+            sender.setJavaMailProperties(javaMailProperties);
+        }
+        // Relay latency alone; EmailService's send also waits for a pooled connection
+        sender.setSendLatencyListener(
+                nanos -> channelLimiter.recordLatency(NotificationRequest.NotificationType.EMAIL, nanos));
+
+        String relay = mailProperties.getHost();
+        Gauge.builder("notification.mail.pool.active", sender, PooledJavaMailSender::getActiveCount)
+                .description("SMTP connections currently borrowed by senders")
+                .tag("relay", relay)
+                .register(meterRegistry);
+        Gauge.builder("notification.mail.pool.idle", sender, PooledJavaMailSender::getIdleCount)
+                .description("Open SMTP connections waiting in the pool")
+                .tag("relay", relay)
+                .register(meterRegistry);
+        FunctionCounter.builder("notification.mail.pool.opened", sender, PooledJavaMailSender::getConnectionsOpened)
+                .description("SMTP connections opened since startup")
+                .tag("relay", relay)
+                .register(meterRegistry);
+        return sender;
+    }
+}
@@ -0,0 +1,88 @@
+package com.dammak.notification_service.config;
+
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.thymeleaf.cache.StandardCache;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+import org.thymeleaf.templatemode.TemplateMode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Replaces Boot's default Thymeleaf engine with one whose parsed-template cache is bounded and
+ * instrumented. A non-zero reload interval expires cached templates so edited files are picked up
+ * without a restart.
+ */
+@Configuration
+public class TemplateConfig {
+
+    public static final String TEMPLATE_PREFIX = "classpath:/templates/";
+    public static final String TEMPLATE_SUFFIX = ".html";
+
+    @Value("${notification.email.template.cache-max-size:200}")
+    private int cacheMaxSize;
+
+    @Value("${notification.email.template.reload-interval:0s}")
+    private Duration reloadInterval;
+
+    @Bean
+    public SpringResourceTemplateResolver emailTemplateResolver() {
+        SpringResourceTemplateResolver resolver = new SpringResourceTemplateResolver();
+        resolver.setPrefix(TEMPLATE_PREFIX);
+        resolver.setSuffix(TEMPLATE_SUFFIX);
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        resolver.setCacheable(true);
+        if (!reloadInterval.isZero()) {
+            resolver.setCacheTTLMs(reloadInterval.toMillis());
+        }
+        return resolver;
+    }
+
+    @Bean
+    public StandardCacheManager templateCacheManager() {
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(cacheMaxSize);
+        cacheManager.setTemplateCacheEnableCounters(true);
+        return cacheManager;
+    }
+
+    @Bean
+    public SpringTemplateEngine templateEngine(SpringResourceTemplateResolver emailTemplateResolver,
+                                               StandardCacheManager templateCacheManager,
+                                               MeterRegistry meterRegistry) {
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(emailTemplateResolver);
+        engine.setCacheManager(templateCacheManager);
+        engine.setEnableSpringELCompiler(true);
+
+        // Evaluated lazily: the cache only exists once the engine has initialised
+        FunctionCounter.builder("notification.email.template.cache.hits", templateCacheManager,
+                        cm -> templateCache(cm).getHitCount())
+                .description("Template lookups served from the parsed-template cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("notification.email.template.cache.misses", templateCacheManager,
+                        cm -> templateCache(cm).getMissCount())
+                .description("Template lookups that had to parse the template")
+                .register(meterRegistry);
+        Gauge.builder("notification.email.template.cache.hit-ratio", templateCacheManager,
+                        cm -> templateCache(cm).getHitRatio())
+                .register(meterRegistry);
+        Gauge.builder("notification.email.template.cache.size", templateCacheManager,
+                        cm -> templateCache(cm).size())
+                .register(meterRegistry);
+        return engine;
+    }
+
+    private static StandardCache<?, ?> templateCache(StandardCacheManager cacheManager) {
+        return (StandardCache<?, ?>) cacheManager.getTemplateCache();
+    }
+}
@@ -0,0 +1,86 @@
+package com.dammak.notification_service.config;
+
+
+import com.twilio.http.HttpClient;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One shared Twilio client instead of the static {@code Twilio.init} singleton. Requests go through a
+ * pooled Apache HTTP client sized to the SMS in-flight limit, so every concurrent send reuses a warm
+ * TLS connection to the API.
+ */
+@Configuration
+public class TwilioConfig {
+
+    @Value("${twilio.account-sid}")
+    private String twilioAccountSid;
+
+    @Value("${twilio.auth-token}")
+    private String twilioAuthToken;
+
+    // Points the client at a local fake Twilio for load tests; empty means api.twilio.com
+    @Value("${twilio.api-base-url:}")
+    private String apiBaseUrl;
+
+    @Value("${notification.sms.max-in-flight:200}")
+    private int maxInFlight;
+
+    @Value("${notification.sms.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    @Value("${notification.sms.socket-timeout:30s}")
+    private Duration socketTimeout;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager twilioConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        // Everything goes to one host, so the per-route limit is the real one
+        connectionManager.setMaxTotal(maxInFlight);
+        connectionManager.setDefaultMaxPerRoute(maxInFlight);
+        connectionManager.setValidateAfterInactivity(2_000);
+
+        Gauge.builder("notification.sms.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Twilio HTTP connections in use")
+                .register(meterRegistry);
+        Gauge.builder("notification.sms.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Idle Twilio HTTP connections kept alive")
+                .register(meterRegistry);
+        return connectionManager;
+    }
+
+    @Bean
+    public TwilioRestClient twilioRestClient(PoolingHttpClientConnectionManager twilioConnectionManager) {
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(twilioConnectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) connectTimeout.toMillis())
+                        .setConnectionRequestTimeout((int) connectTimeout.toMillis())
+                        .setSocketTimeout((int) socketTimeout.toMillis())
+                        .build())
+                .useSystemProperties();
+        if (!apiBaseUrl.isEmpty()) {
+            HttpHost override = HttpHost.create(apiBaseUrl);
+            builder.setRoutePlanner((target, request, context) -> new HttpRoute(override));
+        }
+        HttpClient httpClient = new NetworkHttpClient(builder);
+        return new TwilioRestClient.Builder(twilioAccountSid, twilioAuthToken)
+                .httpClient(httpClient)
+                .build();
+    }
+}
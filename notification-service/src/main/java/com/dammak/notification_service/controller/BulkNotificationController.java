@@ -0,0 +1,101 @@
+package com.dammak.notification_service.controller;
+
+
+import com.dammak.notification_service.bulk.BulkIngestionJob;
+import com.dammak.notification_service.bulk.BulkIngestionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Bulk upload of newline-delimited notification requests, one JSON object per line.
+ * <p>
+ * The response is itself NDJSON: the first line carries the job id as soon as the upload starts, a
+ * progress line follows each published batch, and the last line is the final state with the
+ * per-line errors. {@code GET /api/notifications/bulk/{jobId}} returns the same view while the job
+ * runs and for a while after, on the instance that received the upload.
+ */
+@RestController
+@RequestMapping("/api/notifications/bulk")
+@Slf4j
+public class BulkNotificationController {
+
+    private static final MediaType NDJSON = MediaType.APPLICATION_NDJSON;
+
+    private final BulkIngestionService bulkIngestionService;
+    private final AsyncTaskExecutor bulkIngestExecutor;
+    private final ObjectMapper objectMapper;
+
+    @Value("${notification.bulk.response-timeout:2h}")
+    private Duration responseTimeout;
+
+    public BulkNotificationController(BulkIngestionService bulkIngestionService,
+                                      @Qualifier("bulkIngestExecutor") AsyncTaskExecutor bulkIngestExecutor,
+                                      ObjectMapper objectMapper) {
+        this.bulkIngestionService = bulkIngestionService;
+        this.bulkIngestExecutor = bulkIngestExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_NDJSON_VALUE, "application/jsonl"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> ingest(HttpServletRequest request) throws IOException {
+        BulkIngestionJob job = bulkIngestionService.start().orElse(null);
+        if (job == null) {
+            log.warn("Rejected bulk upload: too many uploads in progress");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+        log.info("Started bulk job {}", job.getId());
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(responseTimeout.toMillis());
+        InputStream body = request.getInputStream();
+        emit(emitter, job.snapshot(false));
+        bulkIngestExecutor.execute(() -> {
+            try {
+                bulkIngestionService.ingest(job, body, status -> emit(emitter, status));
+                emit(emitter, job.snapshot(true));
+                emitter.complete();
+            } catch (RuntimeException e) {
+                log.error("Bulk job {} failed", job.getId(), e);
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/notifications/bulk/" + job.getId()))
+                .contentType(NDJSON)
+                .body(emitter);
+    }
+
+    @GetMapping(value = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkIngestionJob.Status> getJob(@PathVariable UUID jobId) {
+        return bulkIngestionService.find(jobId)
+                .map(job -> ResponseEntity.ok(job.snapshot(true)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Progress is best effort: a client that stopped reading does not stop the upload it already sent
+    private void emit(ResponseBodyEmitter emitter, BulkIngestionJob.Status status) {
+        try {
+            emitter.send(objectMapper.writeValueAsString(status) + "\n", NDJSON);
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Could not send bulk progress for job {}: {}", status.jobId(), e.getMessage());
+        }
+    }
+}
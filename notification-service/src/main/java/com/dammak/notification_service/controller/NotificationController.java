@@ -1,26 +1,33 @@
 package com.dammak.notification_service.controller;
 
 
+import com.dammak.notification_service.correlation.StatusCorrelationRegistry;
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.model.NotificationStatusPage;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.service.NotificationLookupService;
 import com.dammak.notification_service.service.NotificationService;
-import io.netty.handler.timeout.TimeoutException;
+import com.dammak.notification_service.spool.NotificationSpool;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -29,47 +36,116 @@ import java.util.concurrent.TimeUnit;
 public class NotificationController {
 
     private final NotificationService notificationService;
-    private final Map<UUID, CompletableFuture<NotificationStatus>> pendingResponses = new ConcurrentHashMap<>();
-    private final KafkaTemplate<String, NotificationStatus> kafkaTemplate;
-
+    private final StatusCorrelationRegistry correlationRegistry;
+    private final PipelineMetrics pipelineMetrics;
+    private final NotificationLookupService lookupService;
+    private final NotificationSpool spool;
 
+    @Value("${notification.response.timeout:180s}")
+    private Duration responseTimeout;
 
     @PostMapping
-    public ResponseEntity<?> sendNotification(@Valid @RequestBody NotificationRequest request) throws ExecutionException, InterruptedException, TimeoutException {
+    public CompletableFuture<ResponseEntity<?>> sendNotification(@Valid @RequestBody NotificationRequest request,
+                                                                @RequestHeader(value = "Prefer", required = false) String prefer) {
+        long start = System.nanoTime();
 
         log.info("Received direct notification request: {}", request);
 
-        // Create a future to hold the response
-        CompletableFuture<NotificationStatus> responseFuture = new CompletableFuture<>();
-        pendingResponses.put(request.getId(), responseFuture);
+        boolean respondAsync = prefer != null && prefer.contains("respond-async");
+        if (spool.shouldSpool(request, respondAsync)) {
+            return accept(request, respondAsync, start);
+        }
 
-        // Send the notification
-        notificationService.sendNotification(request);
+        // Register for the response before publishing so a fast status can't be missed
+        CompletableFuture<NotificationStatus> responseFuture =
+                correlationRegistry.register(request.getId(), responseTimeout);
 
         try {
-            // Wait for the response with timeout
-            NotificationStatus response = responseFuture.get(180, TimeUnit.SECONDS);
-            return ResponseEntity.ok(response);
+            notificationService.sendNotification(request);
         } catch (Exception e) {
-            pendingResponses.remove(request.getId());
-            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT)
-                    .body("Notification processing timeout");
+            correlationRegistry.discard(request.getId());
+            throw e;
+        }
+        pipelineMetrics.recordSince(PipelineMetrics.Stage.HTTP_ACCEPT, request, start);
+
+        // The servlet thread is released here; the response is written when the status arrives
+        return responseFuture.<ResponseEntity<?>>thenApply(status -> {
+                    pipelineMetrics.recordSince(PipelineMetrics.Stage.END_TO_END, request, start);
+                    return ResponseEntity.ok(status);
+                })
+                .exceptionally(NotificationController::failedResponse);
+    }
+
+    // Only an expired registration is a timeout; superseded registrations and shutdown are not the caller's fault
+    private static ResponseEntity<?> failedResponse(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof TimeoutException) {
+            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).body("Notification processing timeout");
+        }
+        if (cause instanceof IllegalStateException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("message", cause.getMessage()));
+        }
+        log.error("Waiting for a notification status failed", cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("message", "Notification status could not be determined"));
+    }
+
+    // 202 once the request is durable in the local spool; the spool forwarder publishes it to Kafka
+    private CompletableFuture<ResponseEntity<?>> accept(NotificationRequest request, boolean respondAsync, long start) {
+        return spool.append(request).<ResponseEntity<?>>handle((ignored, ex) -> {
+            if (ex != null) {
+                log.warn("Could not spool notification {}: {}", request.getId(), ex.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(Map.of("message", "Notification could not be accepted, retry later"));
+            }
+            pipelineMetrics.recordSince(PipelineMetrics.Stage.HTTP_ACCEPT, request, start);
+            ResponseEntity.BodyBuilder accepted = ResponseEntity.accepted()
+                    .location(URI.create("/api/notifications/" + request.getId()));
+            if (respondAsync) {
+                accepted.header("Preference-Applied", "respond-async");
+            }
+            return accepted.body(Map.of("id", request.getId(), "message", "Accepted for delivery"));
+        });
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<NotificationStatus> getStatus(@PathVariable UUID id) {
+        return lookupService.findStatus(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Keyset paging: pass nextCursor from the previous page to continue
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getStatusesByRecipient(@RequestParam String recipient,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        try {
+            NotificationStatusPage page = lookupService.findByRecipient(recipient, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
     }
+
     @GetMapping("/")
         public String getHome() {
         return "Welcome to Notification Service";
         }
 
+    // Each instance is assigned only its own reply partition, so every status lands on the
+    // replica that holds the caller's future instead of whichever group member owns it.
     @KafkaListener(
-            topics = "${notification.kafka.topic.status-events}",
+            topicPartitions = @TopicPartition(
+                    topic = "${notification.kafka.topic.status-events}",
+                    partitions = "#{@replyPartitionRouter.localReplyPartition()}"),
             groupId = "${spring.kafka.consumer.group-id}-status",
             containerFactory = "responseListenerContainerFactory")
     public void handleNotificationResponse(NotificationStatus response) {
-        CompletableFuture<NotificationStatus> future = pendingResponses.remove(response.getId());
-        if (future != null) {
-            future.complete(response);
-        } else {
+        if (!correlationRegistry.complete(response)) {
             log.warn("Received response for unknown notification ID: {}", response.getId());
         }
     }
@@ -0,0 +1,60 @@
+package com.dammak.notification_service.correlation;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Request/reply routing for status events across replicas.
+ * <p>
+ * Every instance owns one partition of the status-events topic and only consumes that partition.
+ * Requests published by an instance carry its partition in the {@link KafkaHeaders#REPLY_PARTITION}
+ * header (same encoding as Spring's ReplyingKafkaTemplate), and whichever instance processes the
+ * request publishes the resulting status back to that partition.
+ * <p>
+ * The partition is set per instance with {@code notification.kafka.reply.partition}, for example from
+ * a StatefulSet ordinal. There is no default: replicas sharing a partition would consume each other's
+ * replies, so startup fails when it is missing or outside {@code notification.kafka.reply.partitions}.
+ */
+@Component
+public class ReplyPartitionRouter {
+
+    private final int localReplyPartition;
+
+    public ReplyPartitionRouter(@Value("${notification.kafka.reply.partition:#{null}}") Integer localReplyPartition,
+                                @Value("${notification.kafka.reply.partitions:8}") int replyPartitions) {
+        if (localReplyPartition == null) {
+            throw new IllegalStateException("notification.kafka.reply.partition is not set; give every instance"
+                    + " its own partition between 0 and " + (replyPartitions - 1));
+        }
+        if (localReplyPartition < 0 || localReplyPartition >= replyPartitions) {
+            throw new IllegalStateException("notification.kafka.reply.partition=" + localReplyPartition
+                    + " is outside the " + replyPartitions + " partitions of notification.kafka.reply.partitions");
+        }
+        this.localReplyPartition = localReplyPartition;
+    }
+
+    public int localReplyPartition() {
+        return localReplyPartition;
+    }
+
+    public Header replyHeader() {
+        return new RecordHeader(KafkaHeaders.REPLY_PARTITION,
+                ByteBuffer.allocate(Integer.BYTES).putInt(localReplyPartition).array());
+    }
+
+    /**
+     * Decode a reply partition header value; null when the request was not published by an instance
+     * waiting for the reply (e.g. produced straight to the topic by another system).
+     */
+    public static Integer decode(byte[] replyPartition) {
+        if (replyPartition == null || replyPartition.length != Integer.BYTES) {
+            return null;
+        }
+        return ByteBuffer.wrap(replyPartition).getInt();
+    }
+}
@@ -0,0 +1,147 @@
+package com.dammak.notification_service.correlation;
+
+import com.dammak.notification_service.model.NotificationStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks HTTP callers waiting for the {@link NotificationStatus} of a request they published.
+ * Every entry is armed on a hashed timer wheel, so it leaves the map either when its status
+ * arrives or when its deadline passes - nothing is left behind if a status never shows up.
+ */
+@Component
+@Slf4j
+public class StatusCorrelationRegistry {
+
+    private final Map<UUID, Pending> pending = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer;
+    private final Timer completedTimer;
+    private final Timer expiredTimer;
+
+    public StatusCorrelationRegistry(
+            @Value("${notification.correlation.tick-duration:100ms}") Duration tickDuration,
+            @Value("${notification.correlation.wheel-size:512}") int wheelSize,
+            @Value("#{@replyPartitionRouter.localReplyPartition()}") int replyPartition,
+            MeterRegistry meterRegistry) {
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("status-correlation", true),
+                tickDuration.toMillis(), TimeUnit.MILLISECONDS, wheelSize);
+        // Tagged with the reply partition so percentiles can be compared per replica
+        this.completedTimer = responseLatencyTimer(meterRegistry, replyPartition, "completed");
+        this.expiredTimer = responseLatencyTimer(meterRegistry, replyPartition, "expired");
+        Gauge.builder("notification.response.pending", pending, Map::size)
+                .description("Callers currently waiting for a notification status")
+                .register(meterRegistry);
+    }
+
+    private static Timer responseLatencyTimer(MeterRegistry registry, int replyPartition, String outcome) {
+        return Timer.builder("notification.response.latency")
+                .description("Time from request registration until its status arrives or it expires")
+                .tag("outcome", outcome)
+                .tag("reply.partition", String.valueOf(replyPartition))
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Register a caller waiting for the status of the given notification id.
+     * The returned future fails with a {@link TimeoutException} once the timeout elapses.
+     */
+    public CompletableFuture<NotificationStatus> register(UUID id, Duration timeout) {
+        CompletableFuture<NotificationStatus> future = new CompletableFuture<>();
+        Pending entry = new Pending(future, System.nanoTime());
+        Pending previous = pending.put(id, entry);
+        if (previous != null) {
+            previous.cancel();
+            previous.future().completeExceptionally(
+                    new IllegalStateException("Superseded by a newer request with the same id: " + id));
+        }
+        entry.timeout = timer.newTimeout(t -> expire(id, entry), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Complete the caller waiting for this status, if any.
+     *
+     * @return true if a waiting caller was found
+     */
+    public boolean complete(NotificationStatus status) {
+        Pending entry = pending.remove(status.getId());
+        if (entry == null) {
+            return false;
+        }
+        entry.cancel();
+        completedTimer.record(System.nanoTime() - entry.startNanos, TimeUnit.NANOSECONDS);
+        entry.future().complete(status);
+        return true;
+    }
+
+    /**
+     * Drop a registration without completing it, e.g. when the request could not be published.
+     */
+    public void discard(UUID id) {
+        Pending entry = pending.remove(id);
+        if (entry != null) {
+            entry.cancel();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void expire(UUID id, Pending entry) {
+        if (pending.remove(id, entry)) {
+            log.debug("Correlation for notification {} expired before a status arrived", id);
+            expiredTimer.record(System.nanoTime() - entry.startNanos, TimeUnit.NANOSECONDS);
+            entry.future().completeExceptionally(
+                    new TimeoutException("No status received for notification " + id));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+        pending.values().forEach(entry -> entry.future()
+                .completeExceptionally(new IllegalStateException("Service is shutting down")));
+        pending.clear();
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<NotificationStatus> future;
+        private final long startNanos;
+        private volatile Timeout timeout;
+
+        private Pending(CompletableFuture<NotificationStatus> future, long startNanos) {
+            this.future = future;
+            this.startNanos = startNanos;
+        }
+
+        CompletableFuture<NotificationStatus> future() {
+            return future;
+        }
+
+        void cancel() {
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+}
@@ -10,7 +10,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "failed_notifications")
+// Created by schema.sql as a table partitioned by day on created_at, with primary key (id, created_at)
+@Table(name = "failed_notifications",
+        indexes = @Index(name = "idx_failed_notifications_next_retry_at", columnList = "nextRetryAt"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -40,6 +42,9 @@ public class FailedNotification {
 
     private LocalDateTime lastRetry;
 
+    // When the row is next due; claiming a row pushes this out by the lease
+    private LocalDateTime nextRetryAt;
+
     @Column(length = 500)
     private String errorMessage;
 }
\ No newline at end of file
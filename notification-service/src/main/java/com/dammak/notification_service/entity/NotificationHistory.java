@@ -10,7 +10,13 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notification_history")
+// Created by schema.sql as a table partitioned by day on sent_at, with primary key (id, sent_at).
+// sent_at backs the dedupe filter warm-up; recipient, sent_at, id serves the keyset status listing
+@Table(name = "notification_history",
+        indexes = {
+                @Index(name = "idx_notification_history_sent_at", columnList = "sent_at"),
+                @Index(name = "idx_notification_history_recipient_sent_at", columnList = "recipient, sent_at DESC, id DESC")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
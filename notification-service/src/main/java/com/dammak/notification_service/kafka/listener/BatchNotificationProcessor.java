@@ -0,0 +1,199 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import com.dammak.notification_service.correlation.ReplyPartitionRouter;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.service.NotificationDeduplicator;
+import com.dammak.notification_service.service.NotificationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes a polled batch of notification requests concurrently.
+ * <p>
+ * Records are grouped by key; groups run in parallel on the batch executor while records inside a
+ * group run one after another in offset order, so per-key ordering is preserved. When the batch is
+ * done, each partition is committed up to (not including) its first record that did not complete, and
+ * only that partition is redelivered from there. Requests already processed once (redeliveries, rebalance
+ * replays) are dropped by the {@link NotificationDeduplicator} before reaching a provider.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BatchNotificationProcessor {
+
+    private final NotificationService notificationService;
+    private final Executor notificationBatchExecutor;
+    private final PipelineMetrics pipelineMetrics;
+    private final NotificationDeduplicator deduplicator;
+    private final ReplayWindow replayWindow;
+
+    @Value("${notification.kafka.batch.redelivery-backoff:1s}")
+    private Duration redeliveryBackoff;
+
+    /**
+     * Process the batch and commit the completed prefix of each partition.
+     * <p>
+     * A poll spans several partitions, so a failure only holds back its own partition: the others are
+     * committed in full, and only partitions with an incomplete record are sought back to it.
+     *
+     * @param redeliverFailures when false, failures are logged and the whole batch is committed
+     * @param retryOnce         retry a failed record inline once before giving up on it
+     */
+    public void processAndAcknowledge(List<ConsumerRecord<String, NotificationRequest>> records,
+                                      Acknowledgment acknowledgment,
+                                      Consumer<?, ?> consumer,
+                                      boolean redeliverFailures,
+                                      boolean retryOnce) {
+        boolean[] completed = run(records, retryOnce);
+        if (firstIncomplete(completed) == completed.length || !redeliverFailures) {
+            acknowledgment.acknowledge();
+            return;
+        }
+
+        // Records of a partition arrive in offset order, so the first incomplete one is where it resumes
+        Map<TopicPartition, Long> redeliverFrom = new LinkedHashMap<>();
+        Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, NotificationRequest> record = records.get(i);
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (!completed[i]) {
+                redeliverFrom.putIfAbsent(partition, record.offset());
+            }
+            if (!redeliverFrom.containsKey(partition)) {
+                commit.put(partition, new OffsetAndMetadata(record.offset() + 1));
+            }
+        }
+        redeliverFrom.forEach((partition, offset) -> commit.put(partition, new OffsetAndMetadata(offset)));
+
+        log.warn("Committing {}, redelivering {}", commit, redeliverFrom);
+        consumer.commitSync(commit);
+        redeliverFrom.forEach(consumer::seek);
+        try {
+            // As a nack would: the consumer does not poll again before the backoff
+            Thread.sleep(redeliveryBackoff.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return index of the first record that did not complete, or records.size() if all did
+     */
+    public int process(List<ConsumerRecord<String, NotificationRequest>> records, boolean retryOnce) {
+        return firstIncomplete(run(records, retryOnce));
+    }
+
+    private boolean[] run(List<ConsumerRecord<String, NotificationRequest>> records, boolean retryOnce) {
+        boolean[] completed = new boolean[records.size()];
+
+        List<CompletableFuture<Void>> groups = new ArrayList<>();
+        for (List<Integer> group : groupByKey(records).values()) {
+            groups.add(CompletableFuture.runAsync(() -> {
+                for (int index : group) {
+                    if (!processRecord(records.get(index), retryOnce)) {
+                        // Later records with the same key must not overtake this one
+                        return;
+                    }
+                    completed[index] = true;
+                }
+            }, notificationBatchExecutor));
+        }
+        CompletableFuture.allOf(groups.toArray(CompletableFuture[]::new)).join();
+        return completed;
+    }
+
+    private static int firstIncomplete(boolean[] completed) {
+        for (int i = 0; i < completed.length; i++) {
+            if (!completed[i]) {
+                return i;
+            }
+        }
+        return completed.length;
+    }
+
+    private Map<Object, List<Integer>> groupByKey(List<ConsumerRecord<String, NotificationRequest>> records) {
+        Map<Object, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, NotificationRequest> record = records.get(i);
+            // Records without a key carry no ordering, so each one gets its own group
+            Object key = record.key() != null ? record.key() : new Object();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    // Also used per record by ParallelNotificationConsumer
+    boolean processRecord(ConsumerRecord<String, NotificationRequest> record, boolean retryOnce) {
+        NotificationRequest request = record.value();
+        if (request == null) {
+            log.warn("Skipping empty notification record at {}-{}@{}", record.topic(), record.partition(), record.offset());
+            return true;
+        }
+        if (record.timestamp() >= 0) {
+            // From the record timestamp, so it covers time in the topic and behind earlier records
+            pipelineMetrics.record(PipelineMetrics.Stage.QUEUE_WAIT, request,
+                    TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - record.timestamp())));
+        }
+        if (!deduplicator.tryClaim(request.getId(), replayWindow.mayBeReplay(record))) {
+            log.info("Skipping duplicate notification {} at {}-{}@{}",
+                    request.getId(), record.topic(), record.partition(), record.offset());
+            return true;
+        }
+        boolean processed = send(request, replyPartitionOf(record), retryOnce);
+        if (processed) {
+            deduplicator.complete(request.getId());
+        } else {
+            // It will be redelivered (or dropped for normal priority); either way the next copy may go through
+            deduplicator.release(request.getId());
+        }
+        return processed;
+    }
+
+    private boolean send(NotificationRequest request, Integer replyPartition, boolean retryOnce) {
+        try {
+            NotificationStatus status = notificationService.processNotification(request, replyPartition);
+            log.info("Notification processed: {}", status);
+            return true;
+        } catch (Exception e) {
+            log.error("Error processing notification {}: {}", request.getId(), e.getMessage(), e);
+        }
+        if (retryOnce) {
+            try {
+                log.info("Immediate retry for notification {}", request.getId());
+                NotificationStatus status = notificationService.processNotification(request, replyPartition);
+                log.info("Notification processed on retry: {}", status);
+                return true;
+            } catch (Exception retryEx) {
+                log.error("Error on immediate retry for notification {}: {}", request.getId(), retryEx.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private static Integer replyPartitionOf(ConsumerRecord<String, NotificationRequest> record) {
+        Header header = record.headers().lastHeader(KafkaHeaders.REPLY_PARTITION);
+        return header == null ? null : ReplyPartitionRouter.decode(header.value());
+    }
+}
@@ -3,89 +3,99 @@ package com.dammak.notification_service.kafka.listener;
 
 
 import com.dammak.notification_service.model.NotificationRequest;
-import com.dammak.notification_service.model.NotificationStatus;
-import com.dammak.notification_service.service.NotificationService;
+import com.dammak.notification_service.model.NotificationRequest.Priority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class KafkaNotificationListener {
 
-    private final NotificationService notificationService;
-    private final KafkaTemplate<String, NotificationStatus> kafkaTemplate;
+    public static final String LOW_LISTENER_ID = "low-priority-listener";
+    public static final String NORMAL_LISTENER_ID = "normal-priority-listener";
+    public static final String HIGH_LISTENER_ID = "high-priority-listener";
+    public static final String CRITICAL_LISTENER_ID = "critical-priority-listener";
+
+    private final BatchNotificationProcessor batchProcessor;
+    private final ParallelNotificationConsumer parallelConsumer;
+
+    // batch: each poll is processed whole before the next; parallel: see ParallelNotificationConsumer
+    @Value("${notification.kafka.consumer.mode:batch}")
+    private String consumerMode;
+
+    public static String listenerId(Priority priority) {
+        return switch (priority) {
+            case LOW -> LOW_LISTENER_ID;
+            case NORMAL -> NORMAL_LISTENER_ID;
+            case HIGH -> HIGH_LISTENER_ID;
+            case CRITICAL -> CRITICAL_LISTENER_ID;
+        };
+    }
 
 
     @KafkaListener(
-            topics = "${notification.kafka.topic.normal}",
-            groupId = "${spring.kafka.consumer.group-id}",
-            containerFactory = "kafkaListenerContainerFactory")
-    public void listenNormalPriority(NotificationRequest request) {
-        log.info("Received normal priority notification request: {}", request);
-        try {
-            processNotification(request);
-        } catch (Exception e) {
-            log.error("Error processing normal priority notification: {}", e.getMessage(), e);
-        }
+            id = LOW_LISTENER_ID,
+            topics = "${notification.kafka.topic.low:notification-requests-low}",
+            groupId = "${spring.kafka.consumer.group-id}-low",
+            containerFactory = "lowPriorityBatchListenerContainerFactory")
+    public void listenLowPriority(List<ConsumerRecord<String, NotificationRequest>> records, Acknowledgment acknowledgment,
+                                  Consumer<?, ?> consumer) {
+        log.info("Received batch of {} low priority notification requests", records.size());
+        // Handled like normal priority: failures are already recorded for retry by the channel services
+        handle(records, acknowledgment, consumer, false, false);
     }
 
-    private void processNotification(NotificationRequest request) {
-        log.info("Received notification request: {}", request);
-        try {
-            NotificationStatus status = notificationService.processNotification(request);
-            log.info("Notification processed: {}", status);
-        } catch (Exception e) {
-            log.error("Error processing notification: {}", e.getMessage(), e);
-        }
+    @KafkaListener(
+            id = NORMAL_LISTENER_ID,
+            topics = "${notification.kafka.topic.normal}",
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "normalPriorityBatchListenerContainerFactory")
+    public void listenNormalPriority(List<ConsumerRecord<String, NotificationRequest>> records, Acknowledgment acknowledgment,
+                                     Consumer<?, ?> consumer) {
+        log.info("Received batch of {} normal priority notification requests", records.size());
+        // Normal priority failures are logged and skipped; the channel services already record them for retry
+        handle(records, acknowledgment, consumer, false, false);
     }
 
     @KafkaListener(
+            id = HIGH_LISTENER_ID,
             topics = "${notification.kafka.topic.high}",
             groupId = "${spring.kafka.consumer.group-id}-high",
-            containerFactory = "highPriorityKafkaListenerContainerFactory")
-    public void listenHighPriority(NotificationRequest request, Acknowledgment acknowledgment) {
-        log.info("Received high priority notification request: {}", request);
-        try {
-            NotificationStatus status = notificationService.processNotification(request);
-            log.info("High priority notification processed: {}", status);
-            acknowledgment.acknowledge();
-        } catch (Exception e) {
-            log.error("Error processing high priority notification: {}", e.getMessage(), e);
-            // Don't acknowledge to allow reprocessing
-        }
+            containerFactory = "highPriorityBatchListenerContainerFactory")
+    public void listenHighPriority(List<ConsumerRecord<String, NotificationRequest>> records, Acknowledgment acknowledgment,
+                                   Consumer<?, ?> consumer) {
+        log.info("Received batch of {} high priority notification requests", records.size());
+        // Failed records are not acknowledged so Kafka redelivers them
+        handle(records, acknowledgment, consumer, true, false);
     }
 
     @KafkaListener(
+            id = CRITICAL_LISTENER_ID,
             topics = "${notification.kafka.topic.critical}",
             groupId = "${spring.kafka.consumer.group-id}-critical",
-            containerFactory = "criticalPriorityKafkaListenerContainerFactory")
-    public void listenCriticalPriority(NotificationRequest request, Acknowledgment acknowledgment) {
-        log.info("Received CRITICAL priority notification request: {}", request);
-        try {
-            NotificationStatus status = notificationService.processNotification(request);
-            log.info("Critical priority notification processed: {}", status);
-            acknowledgment.acknowledge();
-            acknowledgment.acknowledge();
-        } catch (Exception e) {
-            log.error("Error processing critical priority notification: {}", e.getMessage(), e);
-            // Retry immediately once before returning to Kafka
-            try {
-                log.info("Immediate retry for critical notification");
-                NotificationStatus status = notificationService.processNotification(request);
-                log.info("Critical priority notification processed on retry: {}", status);
-                acknowledgment.acknowledge();
-            } catch (Exception retryEx) {
-                log.error("Error on immediate retry for critical notification: {}", retryEx.getMessage());
-                // Don't acknowledge to allow reprocessing by Kafka
-            }
-        }
+            containerFactory = "criticalPriorityBatchListenerContainerFactory")
+    public void listenCriticalPriority(List<ConsumerRecord<String, NotificationRequest>> records, Acknowledgment acknowledgment,
+                                       Consumer<?, ?> consumer) {
+        log.info("Received batch of {} CRITICAL priority notification requests", records.size());
+        // Retry immediately once before returning failed records to Kafka
+        handle(records, acknowledgment, consumer, true, true);
     }
 
-
-}
\ No newline at end of file
+    private void handle(List<ConsumerRecord<String, NotificationRequest>> records, Acknowledgment acknowledgment,
+                        Consumer<?, ?> consumer, boolean redeliverFailures, boolean retryOnce) {
+        if ("parallel".equalsIgnoreCase(consumerMode)) {
+            parallelConsumer.dispatch(records, consumer, redeliverFailures, retryOnce);
+        } else {
+            batchProcessor.processAndAcknowledge(records, acknowledgment, consumer, redeliverFailures, retryOnce);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks on a shared executor, one at a time and in submission order per key, with different
+ * keys running in parallel. A key only occupies a thread while one of its tasks runs; the next task
+ * of the key is submitted when the previous one finishes. Tasks given to {@link #executeAsync} finish
+ * when the stage they return completes, so they can hold their key without holding a thread.
+ */
+@Slf4j
+public class KeyOrderedExecutor {
+
+    private final Executor delegate;
+    // Keys with a task running; the queue holds the ones waiting behind it
+    private final Map<Object, ArrayDeque<Supplier<? extends CompletionStage<?>>>> queues = new HashMap<>();
+
+    public KeyOrderedExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    public void execute(Object key, Runnable task) {
+        executeAsync(key, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Run a task that finishes when the stage it returns completes; the key's next task waits for it.
+     */
+    public void executeAsync(Object key, Supplier<? extends CompletionStage<?>> task) {
+        synchronized (queues) {
+            ArrayDeque<Supplier<? extends CompletionStage<?>>> queue = queues.get(key);
+            if (queue != null) {
+                queue.add(task);
+                return;
+            }
+            queues.put(key, new ArrayDeque<>());
+        }
+        submit(key, task);
+    }
+
+    private void submit(Object key, Supplier<? extends CompletionStage<?>> task) {
+        try {
+            delegate.execute(() -> run(key, task));
+        } catch (RuntimeException e) {
+            synchronized (queues) {
+                queues.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    private void run(Object key, Supplier<? extends CompletionStage<?>> task) {
+        CompletionStage<?> finished;
+        try {
+            finished = task.get();
+        } catch (RuntimeException e) {
+            finished = CompletableFuture.failedFuture(e);
+        }
+        finished.whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Task for key {} failed: {}", key, e.getMessage(), e);
+            }
+            next(key);
+        });
+    }
+
+    private void next(Object key) {
+        Supplier<? extends CompletionStage<?>> next;
+        synchronized (queues) {
+            next = queues.get(key).poll();
+            if (next == null) {
+                queues.remove(key);
+            }
+        }
+        if (next != null) {
+            submit(key, next);
+        }
+    }
+
+    /**
+     * Number of keys with a task running or waiting.
+     */
+    public int activeKeys() {
+        synchronized (queues) {
+            return queues.size();
+        }
+    }
+}
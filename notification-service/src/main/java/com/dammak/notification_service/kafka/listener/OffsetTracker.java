@@ -0,0 +1,128 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Committable offsets of partitions whose records complete out of order.
+ * <p>
+ * Records are tracked in offset order on the consumer thread and completed from any thread. The
+ * committable offset of a partition is its lowest offset still in flight, or the offset after the
+ * last tracked record once none is: everything before it has completed, so a restart from there
+ * redelivers only records that may not have. Records completed beyond a gap are redelivered too and
+ * dropped by the deduplicator.
+ */
+public class OffsetTracker {
+
+    /**
+     * Offsets of one assignment of a partition. A record keeps the instance it was tracked in, so
+     * records completing after the partition was revoked (and maybe assigned back) change nothing.
+     */
+    public static final class PartitionOffsets {
+
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+        private long next = -1;
+        private long committed = -1;
+        private volatile boolean revoked;
+
+        private synchronized void track(long offset) {
+            if (next < 0) {
+                // The consumer started here, so committing this offset would change nothing
+                committed = offset;
+            }
+            inFlight.add(offset);
+            next = Math.max(next, offset + 1);
+        }
+
+        public synchronized void complete(long offset) {
+            inFlight.remove(offset);
+        }
+
+        // -1 if there is nothing new to commit
+        private synchronized long committable() {
+            long offset = inFlight.isEmpty() ? next : inFlight.first();
+            return offset > committed ? offset : -1;
+        }
+
+        private synchronized void committed(long offset) {
+            committed = Math.max(committed, offset);
+        }
+
+        private synchronized int size() {
+            return inFlight.size();
+        }
+
+        /**
+         * Whether the partition has been revoked since this record was tracked; its new owner will
+         * redeliver the record, so there is no point retrying it here.
+         */
+        public boolean isRevoked() {
+            return revoked;
+        }
+    }
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+    public PartitionOffsets track(ConsumerRecord<?, ?> record) {
+        PartitionOffsets offsets = partitions.computeIfAbsent(
+                new TopicPartition(record.topic(), record.partition()), p -> new PartitionOffsets());
+        offsets.track(record.offset());
+        return offsets;
+    }
+
+    /**
+     * Offsets to commit for the given partitions, only those that advanced since the last commit.
+     */
+    public Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> assigned) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : assigned) {
+            PartitionOffsets state = partitions.get(partition);
+            long offset = state != null ? state.committable() : -1;
+            if (offset >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(offset));
+            }
+        }
+        return offsets;
+    }
+
+    public void committed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            PartitionOffsets state = partitions.get(partition);
+            if (state != null) {
+                state.committed(offset.offset());
+            }
+        });
+    }
+
+    public int inFlight(Collection<TopicPartition> assigned) {
+        int count = 0;
+        for (TopicPartition partition : assigned) {
+            PartitionOffsets state = partitions.get(partition);
+            if (state != null) {
+                count += state.size();
+            }
+        }
+        return count;
+    }
+
+    public int inFlight() {
+        return inFlight(partitions.keySet());
+    }
+
+    public void revoke(Collection<TopicPartition> revoked) {
+        for (TopicPartition partition : revoked) {
+            PartitionOffsets state = partitions.remove(partition);
+            if (state != null) {
+                state.revoked = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parallel consumer mode ({@code notification.kafka.consumer.mode=parallel}): records of a partition
+ * are processed concurrently, ordered only per recipient within their lane, instead of one poll at a
+ * time. Each lane (topic) orders its own keys, so a critical notification never waits for a low
+ * priority one to the same recipient.
+ * <p>
+ * The listener hands each poll over and returns, so the next poll does not wait for the slowest
+ * record of the previous one, and throughput scales with the executor and the channel limits rather
+ * than the partition count. Offsets are committed by the {@link OffsetTracker} up to the first record
+ * still in flight, always on the consumer thread: at each poll, on the container's idle events, and
+ * before partitions are revoked. At most {@code max-in-flight} records per consumer are outstanding;
+ * beyond that the consumer thread waits, committing as records complete.
+ * <p>
+ * Failed records of lanes that redeliver are retried in place with backoff instead, holding back
+ * their key and their partition's committed offset, just as a redelivery would. The backoff runs on
+ * a timer, so a waiting retry does not occupy a thread of the shared executor.
+ */
+@Component
+@Slf4j
+public class ParallelNotificationConsumer implements ConsumerAwareRebalanceListener {
+
+    private static final long CAPACITY_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final BatchNotificationProcessor batchProcessor;
+    private final ReplayWindow replayWindow;
+    private final Executor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final Map<String, KeyOrderedExecutor> lanes = new ConcurrentHashMap<>();
+    private final OffsetTracker tracker = new OffsetTracker();
+    private final int maxInFlight;
+    private final boolean orderByRecipient;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    private final Duration revokeDrainTimeout;
+    private final Counter commitFailures;
+
+    private volatile boolean running = true;
+
+    public ParallelNotificationConsumer(BatchNotificationProcessor batchProcessor,
+                                        ReplayWindow replayWindow,
+                                        Executor notificationBatchExecutor,
+                                        ScheduledExecutorService kafkaConsumerRetryScheduler,
+                                        @Value("${notification.kafka.parallel.max-in-flight:1000}") int maxInFlight,
+                                        @Value("${notification.kafka.parallel.ordering:recipient}") String ordering,
+                                        @Value("${notification.kafka.batch.redelivery-backoff:1s}") Duration retryBackoff,
+                                        @Value("${notification.kafka.parallel.max-retry-backoff:30s}") Duration maxRetryBackoff,
+                                        @Value("${notification.kafka.parallel.revoke-drain-timeout:5s}") Duration revokeDrainTimeout,
+                                        MeterRegistry meterRegistry) {
+        this.batchProcessor = batchProcessor;
+        this.replayWindow = replayWindow;
+        this.executor = notificationBatchExecutor;
+        this.retryScheduler = kafkaConsumerRetryScheduler;
+        this.maxInFlight = maxInFlight;
+        this.orderByRecipient = "recipient".equalsIgnoreCase(ordering);
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.revokeDrainTimeout = revokeDrainTimeout;
+        this.commitFailures = Counter.builder("notification.kafka.parallel.commit.failures")
+                .description("Failed offset commits of the parallel consumer; retried on the next commit")
+                .register(meterRegistry);
+        Gauge.builder("notification.kafka.parallel.in-flight", tracker, OffsetTracker::inFlight)
+                .description("Records handed to the parallel consumer and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("notification.kafka.parallel.active-keys", lanes,
+                        l -> l.values().stream().mapToInt(KeyOrderedExecutor::activeKeys).sum())
+                .description("Ordering keys, across lanes, with a record in progress, queued or awaiting a retry")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hand over a poll. Runs on the consumer thread, which is the only one allowed to commit.
+     *
+     * @param retryFailures retry failed records in place until they succeed
+     * @param retryOnce     retry a failed record inline once before backing off
+     */
+    public void dispatch(List<ConsumerRecord<String, NotificationRequest>> records, Consumer<?, ?> consumer,
+                         boolean retryFailures, boolean retryOnce) {
+        commit(consumer, consumer.assignment());
+        for (ConsumerRecord<String, NotificationRequest> record : records) {
+            awaitCapacity(consumer);
+            OffsetTracker.PartitionOffsets offsets = tracker.track(record);
+            lane(record.topic()).executeAsync(orderingKey(record), () -> {
+                CompletableFuture<Void> processed = new CompletableFuture<>();
+                process(record, offsets, retryFailures, retryOnce, retryBackoff.toNanos(), processed);
+                return processed.whenComplete((result, e) -> offsets.complete(record.offset()));
+            });
+        }
+    }
+
+    private KeyOrderedExecutor lane(String topic) {
+        return lanes.computeIfAbsent(topic, t -> new KeyOrderedExecutor(executor));
+    }
+
+    // Completes processed once the record succeeds or is given up; a retry is scheduled rather than
+    // waited for, and runs on the executor again
+    private void process(ConsumerRecord<String, NotificationRequest> record, OffsetTracker.PartitionOffsets offsets,
+                         boolean retryFailures, boolean retryOnce, long backoffNanos,
+                         CompletableFuture<Void> processed) {
+        try {
+            if (batchProcessor.processRecord(record, retryOnce) || !retryFailures || !running || offsets.isRevoked()) {
+                processed.complete(null);
+                return;
+            }
+            log.warn("Retrying notification at {}-{}@{} in {} ms", record.topic(), record.partition(),
+                    record.offset(), TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+            long nextBackoffNanos = Math.min(backoffNanos * 2, maxRetryBackoff.toNanos());
+            retryScheduler.schedule(() -> retry(record, offsets, retryOnce, nextBackoffNanos, processed),
+                    backoffNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            processed.completeExceptionally(e);
+        }
+    }
+
+    private void retry(ConsumerRecord<String, NotificationRequest> record, OffsetTracker.PartitionOffsets offsets,
+                       boolean retryOnce, long backoffNanos, CompletableFuture<Void> processed) {
+        if (!running || offsets.isRevoked()) {
+            // The record is redelivered to whoever owns the partition next
+            processed.complete(null);
+            return;
+        }
+        try {
+            executor.execute(() -> process(record, offsets, true, retryOnce, backoffNanos, processed));
+        } catch (RuntimeException e) {
+            processed.completeExceptionally(e);
+        }
+    }
+
+    // Request ids are random, so the record key orders nothing; a recipient's notifications stay in order
+    private Object orderingKey(ConsumerRecord<String, NotificationRequest> record) {
+        Object key = orderByRecipient && record.value() != null ? record.value().getRecipient() : record.key();
+        // Records without a key carry no ordering
+        return key != null ? key : new Object();
+    }
+
+    private void awaitCapacity(Consumer<?, ?> consumer) {
+        Collection<TopicPartition> assignment = consumer.assignment();
+        while (tracker.inFlight(assignment) >= maxInFlight) {
+            LockSupport.parkNanos(this, CAPACITY_WAIT_NANOS);
+            commit(consumer, assignment);
+        }
+    }
+
+    private void commit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.committable(partitions);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(offsets);
+            tracker.committed(offsets);
+            log.debug("Committed {}", offsets);
+        } catch (KafkaException e) {
+            commitFailures.increment();
+            log.warn("Failed to commit offsets {}: {}", offsets, e.getMessage());
+        }
+    }
+
+    /**
+     * Commits completions while no records arrive; idle events are published on the consumer thread.
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        Consumer<?, ?> consumer = event.getConsumer();
+        if (consumer != null) {
+            commit(consumer, consumer.assignment());
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        replayWindow.onPartitionsAssigned(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Give records in flight a moment to finish, so the new owner redelivers as few as possible
+        long deadline = System.nanoTime() + revokeDrainTimeout.toNanos();
+        while (tracker.inFlight(partitions) > 0 && deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(this, CAPACITY_WAIT_NANOS);
+        }
+        commit(consumer, partitions);
+        tracker.revoke(partitions);
+        replayWindow.onPartitionsRevokedAfterCommit(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        tracker.revoke(partitions);
+        replayWindow.onPartitionsLost(consumer, partitions);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+}
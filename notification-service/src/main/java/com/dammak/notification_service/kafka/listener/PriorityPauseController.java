@@ -0,0 +1,93 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import com.dammak.notification_service.model.NotificationRequest.Priority;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Stops lower-priority listeners from fetching more work while higher-priority requests are waiting
+ * for a channel permit, so their batches do not pile up in front of the more urgent ones.
+ * <p>
+ * A listener stays paused at most {@code max-duration} at a time and then runs for at least
+ * {@code resume-window}, which keeps its lag bounded under a sustained high-priority flood. Pausing
+ * takes effect at the next poll; the batch in hand is still processed.
+ */
+@Component
+@Slf4j
+public class PriorityPauseController {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final ChannelConcurrencyLimiter channelLimiter;
+    private final boolean enabled;
+    private final long maxPauseNanos;
+    private final long resumeWindowNanos;
+
+    // Only touched from the scheduler thread; 0 means not paused / not exempt
+    private final long[] pausedSince = new long[PRIORITIES.length];
+    private final long[] exemptUntil = new long[PRIORITIES.length];
+
+    public PriorityPauseController(KafkaListenerEndpointRegistry registry,
+                                   ChannelConcurrencyLimiter channelLimiter,
+                                   @Value("${notification.dispatch.pause.enabled:true}") boolean enabled,
+                                   @Value("${notification.dispatch.pause.max-duration:10s}") Duration maxPause,
+                                   @Value("${notification.dispatch.pause.resume-window:2s}") Duration resumeWindow,
+                                   MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.channelLimiter = channelLimiter;
+        this.enabled = enabled;
+        this.maxPauseNanos = maxPause.toNanos();
+        this.resumeWindowNanos = resumeWindow.toNanos();
+        for (Priority priority : PRIORITIES) {
+            Gauge.builder("notification.dispatch.paused", this, c -> c.isPaused(priority) ? 1 : 0)
+                    .description("Whether the listener for this priority is paused for higher-priority work")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notification.dispatch.pause.check-interval:PT0.2S}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        Priority highestWaiting = channelLimiter.highestWaitingPriority();
+        long now = System.nanoTime();
+        for (Priority priority : PRIORITIES) {
+            MessageListenerContainer container = registry.getListenerContainer(KafkaNotificationListener.listenerId(priority));
+            if (container == null || !container.isRunning()) {
+                continue;
+            }
+            int i = priority.ordinal();
+            boolean outranked = highestWaiting != null && highestWaiting.compareTo(priority) > 0;
+            if (outranked && pausedSince[i] == 0 && (exemptUntil[i] == 0 || now - exemptUntil[i] >= 0)) {
+                container.pause();
+                pausedSince[i] = now;
+                log.debug("Paused {} priority listener, {} priority work is waiting", priority, highestWaiting);
+            } else if (pausedSince[i] != 0 && (!outranked || now - pausedSince[i] >= maxPauseNanos)) {
+                container.resume();
+                if (outranked) {
+                    exemptUntil[i] = now + resumeWindowNanos;
+                    log.debug("Resumed {} priority listener after the maximum pause", priority);
+                }
+                pausedSince[i] = 0;
+            }
+        }
+    }
+
+    public boolean isPaused(Priority priority) {
+        MessageListenerContainer container = registry.getListenerContainer(KafkaNotificationListener.listenerId(priority));
+        return container != null && container.isPauseRequested();
+    }
+}
@@ -0,0 +1,53 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells which records may have been processed before their partition was assigned here: those below
+ * the partition's log-end offset at assignment. Only they can have reached a provider through the
+ * previous owner, or through this instance before a restart, without their offset being committed.
+ * Records appended later are delivered here first, so the deduplicator skips its history lookup for
+ * them. Partitions assigned before this listener saw them count as replays throughout.
+ */
+@Component
+@Slf4j
+public class ReplayWindow implements ConsumerAwareRebalanceListener {
+
+    private final Map<TopicPartition, Long> endOffsetsAtAssignment = new ConcurrentHashMap<>();
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        try {
+            endOffsetsAtAssignment.putAll(consumer.endOffsets(partitions));
+        } catch (KafkaException e) {
+            log.warn("Could not read end offsets of {}, treating their records as replays: {}", partitions, e.getMessage());
+            partitions.forEach(endOffsetsAtAssignment::remove);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(endOffsetsAtAssignment::remove);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(endOffsetsAtAssignment::remove);
+    }
+
+    public boolean mayBeReplay(ConsumerRecord<?, ?> record) {
+        Long endOffset = endOffsetsAtAssignment.get(new TopicPartition(record.topic(), record.partition()));
+        return endOffset == null || record.offset() < endOffset;
+    }
+}
@@ -0,0 +1,38 @@
+package com.dammak.notification_service.kafka.listener;
+
+
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.service.NotificationStatusCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Feeds {@link NotificationStatusCache} from every partition of the status-events topic, unlike the
+ * reply listener which only reads this instance's own partition. Partitions are assigned directly
+ * rather than through the consumer group, so every instance sees every status, and offsets are never
+ * committed: a restarted instance starts from the latest status and lookups fall back to Postgres.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StatusCacheListener {
+
+    private final NotificationStatusCache statusCache;
+
+    @KafkaListener(
+            id = "status-cache-listener",
+            topicPartitions = @TopicPartition(
+                    topic = "${notification.kafka.topic.status-events}",
+                    partitions = "0-#{${notification.kafka.reply.partitions:8} - 1}"),
+            groupId = "${spring.kafka.consumer.group-id}-status-cache",
+            containerFactory = "statusCacheListenerContainerFactory")
+    public void cacheStatuses(List<NotificationStatus> statuses) {
+        log.debug("Caching {} notification statuses", statuses.size());
+        statuses.forEach(statusCache::put);
+    }
+}
@@ -2,38 +2,53 @@ package com.dammak.notification_service.kafka.producer;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
-import io.github.resilience4j.retry.RetryRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 
-import javax.annotation.PostConstruct;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Supplier;
 
+/**
+ * Resilient, fully asynchronous Kafka sender.
+ * <p>
+ * Resilience components are built once: one circuit breaker per producer and one {@link Retry} per
+ * topic and policy, cached on first use. Each attempt is wrapped by the circuit breaker as a
+ * completion stage, so outcomes are recorded when the broker acknowledges (or rejects) the record,
+ * and retries are re-scheduled with exponential backoff on the shared scheduler instead of blocking
+ * the calling thread.
+ */
 @Slf4j
 public class KafkaProducer<T> {
 
-    @Value("${spring.kafka.bootstrap-servers}")
-    private String bootstrapServers;
-
     private final KafkaTemplate<String, T> kafkaTemplate;
+    private final ScheduledExecutorService retryScheduler;
 
     private CircuitBreaker circuitBreaker;
     private RetryConfig standardRetryConfig;
     private RetryConfig criticalRetryConfig;
 
+    // Cached per topic so no resilience objects are allocated on the send path
+    private final Map<String, Retry> standardRetries = new ConcurrentHashMap<>();
+    private final Map<String, Retry> criticalRetries = new ConcurrentHashMap<>();
+
     // Dynamic name to support multiple circuit breakers for different event types
     private final String circuitBreakerName;
 
-    public KafkaProducer(KafkaTemplate<String, T> kafkaTemplate, String circuitBreakerName) {
+    public KafkaProducer(KafkaTemplate<String, T> kafkaTemplate, String circuitBreakerName,
+                         ScheduledExecutorService retryScheduler) {
         this.kafkaTemplate = kafkaTemplate;
         this.circuitBreakerName = circuitBreakerName;
+        this.retryScheduler = retryScheduler;
         initResilienceComponents();
     }
 
@@ -47,13 +62,12 @@ public class KafkaProducer<T> {
                 .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
                 .build();
 
-        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(circuitBreakerName);
+        this.circuitBreaker = CircuitBreaker.of(circuitBreakerName, circuitBreakerConfig);
 
         // Standard retry configuration
         this.standardRetryConfig = RetryConfig.custom()
                 .maxAttempts(3)
-                .waitDuration(Duration.ofMillis(500))
+                .intervalFunction(IntervalFunction.ofExponentialBackoff(Duration.ofMillis(500), 2))
                 .retryExceptions(org.apache.kafka.common.errors.RetriableException.class,
                         org.springframework.kafka.KafkaException.class)
                 .build();
@@ -61,7 +75,7 @@ public class KafkaProducer<T> {
         // Critical retry configuration - more aggressive
         this.criticalRetryConfig = RetryConfig.custom()
                 .maxAttempts(5)
-                .waitDuration(Duration.ofMillis(200))
+                .intervalFunction(IntervalFunction.ofExponentialBackoff(Duration.ofMillis(200), 2))
                 .retryExceptions(Exception.class) // Retry on any exception for critical notifications
                 .build();
 
@@ -74,81 +88,99 @@ public class KafkaProducer<T> {
      * Send event to a topic with standard retry policy
      */
     public CompletableFuture<SendResult<String, T>> sendEvent(String topic, T event) {
-        return sendEvent(topic, null, event, standardRetryConfig);
+        return sendEvent(topic, null, event, false);
     }
 
     /**
      * Send event to a topic with standard retry policy and specific key
      */
     public CompletableFuture<SendResult<String, T>> sendEvent(String topic, String key, T event) {
-        return sendEvent(topic, key, event, standardRetryConfig);
+        return sendEvent(topic, key, event, false);
     }
 
     /**
      * Send event to a topic with critical retry policy
      */
     public CompletableFuture<SendResult<String, T>> sendCriticalEvent(String topic, T event) {
-        return sendEvent(topic, null, event, criticalRetryConfig);
+        return sendEvent(topic, null, event, true);
     }
 
     /**
      * Send event to a topic with critical retry policy and specific key
      */
     public CompletableFuture<SendResult<String, T>> sendCriticalEvent(String topic, String key, T event) {
-        return sendEvent(topic, key, event, criticalRetryConfig);
+        return sendEvent(topic, key, event, true);
+    }
+
+    /**
+     * Send a prepared record (explicit partition and/or headers) with standard retry policy
+     */
+    public CompletableFuture<SendResult<String, T>> sendEvent(ProducerRecord<String, T> record) {
+        return sendRecord(record, false);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
     }
 
     /**
      * Generic method to send an event with key to any topic with specified retry policy
      */
-    private CompletableFuture<SendResult<String, T>> sendEvent(
-            String topic, String key, T event, RetryConfig retryConfig) {
+    private CompletableFuture<SendResult<String, T>> sendEvent(String topic, String key, T event, boolean critical) {
+        return sendRecord(new ProducerRecord<>(topic, key, event), critical);
+    }
+
+    private CompletableFuture<SendResult<String, T>> sendRecord(ProducerRecord<String, T> record, boolean critical) {
+        String topic = record.topic();
+        log.debug("Sending event to topic {}: {}", topic, record.value());
+
+        Retry retry = critical
+                ? criticalRetries.computeIfAbsent(topic, t -> Retry.of("send-critical-" + t, criticalRetryConfig))
+                : standardRetries.computeIfAbsent(topic, t -> Retry.of("send-" + t, standardRetryConfig));
+
+        // Circuit breaker records the outcome of each attempt when its future completes;
+        // the retry re-schedules failed attempts on the scheduler with backoff.
+        CompletionStage<SendResult<String, T>> result = retry.executeCompletionStage(retryScheduler,
+                circuitBreaker.decorateCompletionStage(new SendAttempt(record)));
+
+        return result.toCompletableFuture().whenComplete((sendResult, ex) -> {
+            if (ex == null) {
+                log.debug("Event successfully sent to topic={}, partition={}, offset={}",
+                        topic,
+                        sendResult.getRecordMetadata().partition(),
+                        sendResult.getRecordMetadata().offset());
+            } else {
+                log.error("Failed to send event to topic={}, error={}", topic, ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * One logical send. The first attempt uses the caller's record; retries send a copy because the
+     * producer closes a record's headers once it has been sent.
+     */
+    private final class SendAttempt implements Supplier<CompletionStage<SendResult<String, T>>> {
 
-        log.info("Sending event to topic {}: {}", topic, event);
+        private final ProducerRecord<String, T> record;
+        private boolean retry;
 
-        // Create a retry instance for this specific operation
-        RetryRegistry retryRegistry = RetryRegistry.of(retryConfig);
-        Retry retry = retryRegistry.retry("send-" + topic);
+        private SendAttempt(ProducerRecord<String, T> record) {
+            this.record = record;
+        }
 
-        // Create a supplier that executes the Kafka send operation
-        Supplier<CompletableFuture<SendResult<String, T>>> sendOperation = () -> {
+        @Override
+        public CompletionStage<SendResult<String, T>> get() {
+            ProducerRecord<String, T> toSend = retry
+                    ? new ProducerRecord<>(record.topic(), record.partition(), record.timestamp(),
+                            record.key(), record.value(), record.headers())
+                    : record;
+            retry = true;
             try {
-                return kafkaTemplate.send(topic, key, event)
-                        .whenComplete((result, ex) -> {
-                            if (ex == null) {
-                                log.info("Event successfully sent to topic={}, partition={}, offset={}",
-                                        topic,
-                                        result.getRecordMetadata().partition(),
-                                        result.getRecordMetadata().offset());
-                            } else {
-                                log.error("Failed to send event to topic={}, error={}",
-                                        topic, ex.getMessage(), ex);
-                                // Re-throw to trigger retry if configured
-                                throw new RuntimeException("Failed to send event", ex);
-                            }
-                        });
+                return kafkaTemplate.send(toSend);
             } catch (Exception e) {
-                log.error("Exception caught while sending to Kafka: {}", e.getMessage(), e);
-                CompletableFuture<SendResult<String, T>> failedFuture = new CompletableFuture<>();
-                failedFuture.completeExceptionally(e);
-                return failedFuture;
+                // Synchronous failures (serialization, metadata timeout) become a failed attempt
+                return CompletableFuture.failedFuture(e);
             }
-        };
-
-        // Apply circuit breaker first
-        Supplier<CompletableFuture<SendResult<String, T>>> circuitBreakerProtectedSupplier =
-                CircuitBreaker.decorateSupplier(circuitBreaker, sendOperation);
-
-        // Then apply retry
-        try {
-            return retry.executeSupplier(circuitBreakerProtectedSupplier);
-        } catch (Exception e) {
-            log.error("Failed to execute send operation with resilience patterns: {}", e.getMessage(), e);
-            CompletableFuture<SendResult<String, T>> failedFuture = new CompletableFuture<>();
-            failedFuture.completeExceptionally(e);
-            return failedFuture;
         }
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.dammak.notification_service.kafka.producer;
+
+import com.dammak.notification_service.model.NotificationRequest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The request producer of each priority lane. Every lane has its own producer instance, so a
+ * critical request never waits in the accumulator behind a campaign's batches, and each lane's
+ * batching can be tuned on its own (see {@link ProducerProfile}).
+ */
+public class PriorityProducerRouter {
+
+    private final EnumMap<NotificationRequest.Priority, KafkaProducer<NotificationRequest>> producers;
+
+    public PriorityProducerRouter(Map<NotificationRequest.Priority, KafkaProducer<NotificationRequest>> producers) {
+        this.producers = new EnumMap<>(NotificationRequest.Priority.class);
+        for (NotificationRequest.Priority priority : NotificationRequest.Priority.values()) {
+            KafkaProducer<NotificationRequest> producer = producers.get(priority);
+            if (producer == null) {
+                throw new IllegalArgumentException("No producer for priority " + priority);
+            }
+            this.producers.put(priority, producer);
+        }
+    }
+
+    public KafkaProducer<NotificationRequest> producerFor(NotificationRequest.Priority priority) {
+        return producers.get(priority);
+    }
+}
@@ -0,0 +1,51 @@
+package com.dammak.notification_service.kafka.producer;
+
+import com.dammak.notification_service.model.NotificationRequest;
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Batching and compression settings of one producer instance. Records of a lane share the lane's
+ * batches, so the settings trade the time a record waits for company against the size of what is
+ * sent: latency lanes send at once, bulk lanes wait to fill large, well-compressed batches.
+ */
+public record ProducerProfile(int batchSize, Duration linger, String compression, long bufferMemory) {
+
+    /**
+     * Sent as soon as the sender thread picks the record up; compression would only add CPU time
+     * to batches that rarely hold more than a few records.
+     */
+    public static final ProducerProfile LATENCY = new ProducerProfile(16 * 1024, Duration.ZERO, "none", 32 * 1024 * 1024);
+
+    /**
+     * A short linger that still coalesces bursts, with cheap compression.
+     */
+    public static final ProducerProfile BALANCED = new ProducerProfile(64 * 1024, Duration.ofMillis(2), "lz4", 32 * 1024 * 1024);
+
+    /**
+     * Large batches and zstd for campaign traffic, where a few milliseconds of linger are invisible
+     * and bytes on the wire and on the broker's disks are not.
+     */
+    public static final ProducerProfile THROUGHPUT = new ProducerProfile(256 * 1024, Duration.ofMillis(20), "zstd", 64 * 1024 * 1024);
+
+    /**
+     * Default profile of a priority lane's producer.
+     */
+    public static ProducerProfile forPriority(NotificationRequest.Priority priority) {
+        return switch (priority) {
+            case CRITICAL -> LATENCY;
+            case HIGH -> BALANCED;
+            case NORMAL, LOW -> THROUGHPUT;
+        };
+    }
+
+    public Map<String, Object> producerConfigs() {
+        return Map.of(
+                ProducerConfig.BATCH_SIZE_CONFIG, batchSize,
+                ProducerConfig.LINGER_MS_CONFIG, (int) linger.toMillis(),
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, compression,
+                ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+    }
+}
@@ -0,0 +1,27 @@
+package com.dammak.notification_service.kafka.serialization;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Writes {@link NotificationRequest} and {@link NotificationStatus} values with {@link NotificationCodec}.
+ */
+public class NotificationBinarySerializer<T> implements Serializer<T> {
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+        if (data instanceof NotificationRequest request) {
+            return NotificationCodec.encode(request);
+        }
+        if (data instanceof NotificationStatus status) {
+            return NotificationCodec.encode(status);
+        }
+        throw new SerializationException("No binary encoding for " + data.getClass().getName());
+    }
+}
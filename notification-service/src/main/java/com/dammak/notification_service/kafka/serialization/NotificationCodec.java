@@ -0,0 +1,298 @@
+package com.dammak.notification_service.kafka.serialization;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Versioned binary encoding of {@link NotificationRequest} and {@link NotificationStatus}.
+ * <p>
+ * Layout: {@code MAGIC, VERSION, kind} followed by the fields in declaration order. Strings are a
+ * varint of {@code length + 1} (0 means null) and UTF-8 bytes, enums are their ordinal + 1 (0 means
+ * null), UUIDs are a presence byte and two longs, and timestamps are varint epoch seconds (UTC) and
+ * nanos. The magic byte can never start a JSON document, so readers can tell the formats apart
+ * without headers.
+ * <p>
+ * Compatibility: new fields go at the end under a new VERSION, read only from records of that
+ * version or later, so fields a record predates keep their defaults; readers accept every version
+ * from 1 to {@link #VERSION}. Records from a newer VERSION are rejected, so readers must be deployed before
+ * writers. Enum constants may only be appended.
+ */
+public final class NotificationCodec {
+
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    static final byte KIND_REQUEST = 1;
+    static final byte KIND_STATUS = 2;
+
+    private static final NotificationRequest.NotificationType[] TYPES = NotificationRequest.NotificationType.values();
+    private static final NotificationRequest.Priority[] PRIORITIES = NotificationRequest.Priority.values();
+
+    private NotificationCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(NotificationRequest request) {
+        Writer out = new Writer(128);
+        out.header(KIND_REQUEST);
+        out.uuid(request.getId());
+        out.enumValue(request.getPriority());
+        out.enumValue(request.getType());
+        out.string(request.getRecipient());
+        out.string(request.getSubject());
+        out.string(request.getContent());
+        out.string(request.getTemplateName());
+        Map<String, String> templateData = request.getTemplateData();
+        if (templateData == null) {
+            out.varint(0);
+        } else {
+            out.varint(templateData.size() + 1);
+            templateData.forEach((key, value) -> {
+                out.string(key);
+                out.string(value);
+            });
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(NotificationStatus status) {
+        Writer out = new Writer(96);
+        out.header(KIND_STATUS);
+        out.uuid(status.getId());
+        out.enumValue(status.getType());
+        out.string(status.getRecipient());
+        out.bool(status.isSuccess());
+        out.string(status.getMessage());
+        out.dateTime(status.getSentAt());
+        return out.toByteArray();
+    }
+
+    public static NotificationRequest decodeRequest(byte[] data) {
+        Reader in = new Reader(data, KIND_REQUEST);
+        NotificationRequest request = new NotificationRequest();
+        request.setId(in.uuid());
+        request.setPriority(in.enumValue(PRIORITIES));
+        request.setType(in.enumValue(TYPES));
+        request.setRecipient(in.string());
+        request.setSubject(in.string());
+        request.setContent(in.string());
+        request.setTemplateName(in.string());
+        int entries = in.varint();
+        if (entries > 0) {
+            Map<String, String> templateData = new HashMap<>(Math.max(4, (entries - 1) * 4 / 3 + 1));
+            for (int i = 1; i < entries; i++) {
+                templateData.put(in.string(), in.string());
+            }
+            request.setTemplateData(templateData);
+        } else {
+            request.setTemplateData(null);
+        }
+        return request;
+    }
+
+    public static NotificationStatus decodeStatus(byte[] data) {
+        Reader in = new Reader(data, KIND_STATUS);
+        NotificationStatus status = new NotificationStatus();
+        status.setId(in.uuid());
+        status.setType(in.enumValue(TYPES));
+        status.setRecipient(in.string());
+        status.setSuccess(in.bool());
+        status.setMessage(in.string());
+        status.setSentAt(in.dateTime());
+        return status;
+    }
+
+    private static final class Writer {
+
+        private byte[] buf;
+        private int pos;
+
+        private Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        private void header(byte kind) {
+            ensure(3);
+            buf[pos++] = MAGIC;
+            buf[pos++] = VERSION;
+            buf[pos++] = kind;
+        }
+
+        private void bool(boolean value) {
+            ensure(1);
+            buf[pos++] = (byte) (value ? 1 : 0);
+        }
+
+        private void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        private void longValue(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void uuid(UUID id) {
+            bool(id != null);
+            if (id != null) {
+                longValue(id.getMostSignificantBits());
+                longValue(id.getLeastSignificantBits());
+            }
+        }
+
+        private void enumValue(Enum<?> value) {
+            varint(value == null ? 0 : value.ordinal() + 1);
+        }
+
+        private void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void dateTime(LocalDateTime value) {
+            bool(value != null);
+            if (value != null) {
+                varint(zigZag(value.toEpochSecond(ZoneOffset.UTC)));
+                varint(value.getNano());
+            }
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        private Reader(byte[] data, byte expectedKind) {
+            if (data == null || data.length < 3 || data[0] != MAGIC) {
+                throw new SerializationException("Not a binary notification record");
+            }
+            if (data[1] < 1 || data[1] > VERSION) {
+                throw new SerializationException("Unsupported notification codec version " + data[1]);
+            }
+            if (data[2] != expectedKind) {
+                throw new SerializationException("Expected record kind " + expectedKind + " but found " + data[2]);
+            }
+            this.buf = data;
+            this.pos = 3;
+        }
+
+        private void require(int bytes) {
+            if (pos + bytes > buf.length) {
+                throw new SerializationException("Truncated binary notification record");
+            }
+        }
+
+        private boolean bool() {
+            require(1);
+            return buf[pos++] != 0;
+        }
+
+        private long varlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                require(1);
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in binary notification record");
+        }
+
+        private int varint() {
+            long value = varlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new SerializationException("Length out of range in binary notification record");
+            }
+            return (int) value;
+        }
+
+        private long longValue() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        private UUID uuid() {
+            return bool() ? new UUID(longValue(), longValue()) : null;
+        }
+
+        private <E extends Enum<E>> E enumValue(E[] values) {
+            int ordinal = varint();
+            if (ordinal == 0) {
+                return null;
+            }
+            if (ordinal > values.length) {
+                throw new SerializationException("Unknown enum ordinal " + (ordinal - 1));
+            }
+            return values[ordinal - 1];
+        }
+
+        private String string() {
+            int length = varint();
+            if (length == 0) {
+                return null;
+            }
+            int bytes = length - 1;
+            require(bytes);
+            String value = new String(buf, pos, bytes, StandardCharsets.UTF_8);
+            pos += bytes;
+            return value;
+        }
+
+        private LocalDateTime dateTime() {
+            if (!bool()) {
+                return null;
+            }
+            long zigZagged = varlong();
+            long epochSecond = (zigZagged >>> 1) ^ -(zigZagged & 1);
+            return LocalDateTime.ofEpochSecond(epochSecond, varint(), ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dammak.notification_service.kafka.serialization;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Reads both wire formats: records starting with {@link NotificationCodec#MAGIC} are decoded as
+ * binary, anything else goes to the JSON deserializer. Consumers always use this, so producers can be
+ * switched to binary one at a time while JSON records are still in the topics.
+ */
+public class NotificationDeserializer<T> implements Deserializer<T> {
+
+    private final Class<T> type;
+    private final JsonDeserializer<T> json;
+
+    public NotificationDeserializer(Class<T> type) {
+        if (type != NotificationRequest.class && type != NotificationStatus.class) {
+            throw new IllegalArgumentException("No binary decoding for " + type.getName());
+        }
+        this.type = type;
+        this.json = new JsonDeserializer<>(type);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!NotificationCodec.isBinary(data)) {
+            return headers != null ? json.deserialize(topic, headers, data) : json.deserialize(topic, data);
+        }
+        if (type == NotificationRequest.class) {
+            return type.cast(NotificationCodec.decodeRequest(data));
+        }
+        if (type == NotificationStatus.class) {
+            return type.cast(NotificationCodec.decodeStatus(data));
+        }
+        throw new SerializationException("No binary decoding for " + type.getName());
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
@@ -0,0 +1,263 @@
+package com.dammak.notification_service.mail;
+
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link JavaMailSenderImpl} that keeps authenticated SMTP connections open between sends instead of
+ * paying for connect, STARTTLS and AUTH on every message.
+ * <p>
+ * The pool belongs to the one relay this sender is configured for ({@link #getHost()}); pooling
+ * connections to several relays takes one sender per relay. Up to {@code maxSize} transports exist.
+ * Each send borrows one exclusively, pushes every message of the call through it and hands it back;
+ * since {@code EmailService} sends one message per call, a session carries several messages by being
+ * reused across sends rather than within one. Idle transports are reused most-recently-used
+ * first, re-validated with a NOOP once they have been idle for the validation interval, and closed by
+ * a background sweep after the idle timeout. A transport is retired after {@code maxMessagesPerConnection}
+ * messages (relays commonly cap this) or as soon as a send leaves it disconnected.
+ * <p>
+ * The time each message spends in {@code Transport.sendMessage} is reported to the
+ * {@linkplain #setSendLatencyListener send latency listener}. It starts once a connection is
+ * borrowed, so waiting for the pool or connecting to the relay does not count as relay latency.
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private final int maxSize;
+    private final Duration idleTimeout;
+    private final Duration validationInterval;
+    private final Duration maxWait;
+    private final int maxMessagesPerConnection;
+
+    private final Deque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+    private volatile LongConsumer sendLatencyListener = nanos -> {
+    };
+    private volatile boolean closed;
+
+    public PooledJavaMailSender(int maxSize, Duration idleTimeout, Duration validationInterval,
+                                Duration maxWait, int maxMessagesPerConnection) {
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.maxWait = maxWait;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "smtp-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMillis = Math.max(idleTimeout.toMillis() / 2, 100);
+        evictor.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                if (transport == null) {
+                    try {
+                        transport = borrow();
+                    } catch (AuthenticationFailedException ex) {
+                        throw new MailAuthenticationException(ex);
+                    } catch (Exception ex) {
+                        // Without a connection the rest of the batch cannot go out either
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], ex);
+                        }
+                        throw new MailSendException("Mail server connection failed", ex, failedMessages);
+                    }
+                }
+                try {
+                    transport.send(mimeMessages[i], sendLatencyListener);
+                } catch (Exception ex) {
+                    failedMessages.put(original, ex);
+                    if (!transport.isConnected()) {
+                        release(transport, false);
+                        transport = null;
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                release(transport, true);
+            }
+        }
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    private PooledTransport borrow() throws MessagingException, InterruptedException {
+        if (closed) {
+            throw new MessagingException("SMTP connection pool is closed");
+        }
+        if (!permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new MessagingException("Timed out after " + maxWait + " waiting for an SMTP connection");
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.idleFor() >= idleTimeout.toMillis()) {
+                    pooled.close();
+                } else if (pooled.sinceValidated() >= validationInterval.toMillis() && !pooled.validate()) {
+                    log.debug("Discarding stale SMTP connection to {}", getHost());
+                    pooled.close();
+                } else {
+                    return pooled;
+                }
+            }
+            PooledTransport opened = new PooledTransport(connectTransport());
+            connectionsOpened.incrementAndGet();
+            return opened;
+        } catch (MessagingException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private void release(PooledTransport transport, boolean reusable) {
+        try {
+            if (reusable && !closed && transport.messagesSent < maxMessagesPerConnection) {
+                transport.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(transport);
+            } else {
+                transport.close();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long timeout = idleTimeout.toMillis();
+        for (PooledTransport pooled : idle) {
+            // remove() only succeeds if no sender has borrowed it in the meantime
+            if (pooled.idleFor() >= timeout && idle.remove(pooled)) {
+                pooled.close();
+            }
+        }
+    }
+
+    /**
+     * Receives the nanoseconds each message took on the wire, failed ones included.
+     */
+    public void setSendLatencyListener(LongConsumer sendLatencyListener) {
+        this.sendLatencyListener = sendLatencyListener;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.close();
+        }
+    }
+
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private long lastUsed = System.currentTimeMillis();
+        private long lastValidated = lastUsed;
+        private int messagesSent;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void send(MimeMessage mimeMessage, LongConsumer sendLatency) throws MessagingException {
+            // Same preparation JavaMailSenderImpl does before handing a message to its transport
+            if (mimeMessage.getSentDate() == null) {
+                mimeMessage.setSentDate(new Date());
+            }
+            String messageId = mimeMessage.getMessageID();
+            mimeMessage.saveChanges();
+            if (messageId != null) {
+                mimeMessage.setHeader("Message-ID", messageId);
+            }
+            Address[] addresses = mimeMessage.getAllRecipients();
+            long start = System.nanoTime();
+            try {
+                transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+            } finally {
+                sendLatency.accept(System.nanoTime() - start);
+            }
+            messagesSent++;
+            lastValidated = System.currentTimeMillis();
+        }
+
+        private boolean isConnected() {
+            return transport.isConnected();
+        }
+
+        private boolean validate() {
+            // SMTPTransport.isConnected() issues a NOOP and reports whether the server answered
+            boolean alive = transport.isConnected();
+            lastValidated = System.currentTimeMillis();
+            return alive;
+        }
+
+        private long idleFor() {
+            return System.currentTimeMillis() - lastUsed;
+        }
+
+        private long sinceValidated() {
+            return System.currentTimeMillis() - lastValidated;
+        }
+
+        private void close() {
+            try {
+                transport.close();
+            } catch (MessagingException ex) {
+                log.debug("Error closing SMTP connection: {}", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.dammak.notification_service.model;
+
+
+import java.util.List;
+
+/**
+ * One page of a recipient's notifications, newest first. {@code nextCursor} is passed back to fetch
+ * the following page and is null on the last one.
+ */
+public record NotificationStatusPage(List<NotificationStatus> items, String nextCursor) {
+}
@@ -0,0 +1,87 @@
+package com.dammak.notification_service.monitoring;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency of each stage a notification passes through, tagged by channel and priority, so slow
+ * requests can be traced to the stage that spent the budget. Every stage shares the
+ * {@code notification.pipeline.stage} timer and differs by its {@code stage} tag; timers are created
+ * on first use and cached by index, so recording allocates nothing.
+ */
+@Component
+public class PipelineMetrics {
+
+    public enum Stage {
+        HTTP_ACCEPT("http.accept"),
+        PRODUCE_ACK("produce.ack"),
+        QUEUE_WAIT("queue.wait"),
+        TEMPLATE_RENDER("template.render"),
+        PROVIDER_CALL("provider.call"),
+        HISTORY_PERSIST("history.persist"),
+        STATUS_PUBLISH("status.publish"),
+        END_TO_END("end.to.end");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final NotificationRequest.NotificationType[] CHANNELS = NotificationRequest.NotificationType.values();
+    private static final NotificationRequest.Priority[] PRIORITIES = NotificationRequest.Priority.values();
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicReferenceArray<Timer> timers =
+            new AtomicReferenceArray<>(STAGES.length * CHANNELS.length * PRIORITIES.length);
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Timer timer(Stage stage, NotificationRequest.NotificationType channel, NotificationRequest.Priority priority) {
+        int index = (stage.ordinal() * CHANNELS.length + channel.ordinal()) * PRIORITIES.length + priority.ordinal();
+        Timer timer = timers.get(index);
+        if (timer == null) {
+            // Registration is idempotent, so a racing thread just gets the same timer back
+            timer = Timer.builder("notification.pipeline.stage")
+                    .description("Time spent in one stage of the notification pipeline")
+                    .tag("stage", stage.tag())
+                    .tag("channel", channel.name())
+                    .tag("priority", priority.name())
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            timers.set(index, timer);
+        }
+        return timer;
+    }
+
+    public void record(Stage stage, NotificationRequest request, long elapsedNanos) {
+        if (request == null || request.getType() == null) {
+            return;
+        }
+        NotificationRequest.Priority priority = request.getPriority() != null
+                ? request.getPriority() : NotificationRequest.Priority.NORMAL;
+        timer(stage, request.getType(), priority).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the time since {@code startNanos}, a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(Stage stage, NotificationRequest request, long startNanos) {
+        record(stage, request, System.nanoTime() - startNanos);
+    }
+}
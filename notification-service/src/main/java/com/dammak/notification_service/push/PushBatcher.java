@@ -0,0 +1,237 @@
+package com.dammak.notification_service.push;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import com.dammak.notification_service.service.ProviderThrottling;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.Notification;
+import com.google.firebase.messaging.SendResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects push requests for up to {@code window} or {@code maxBatchSize} messages (FCM's limit is
+ * 500) and hands each batch to {@link FirebaseMessaging#sendEachAsync(List)}, which sends one HTTP
+ * request per message, concurrently. Every {@link SendResponse} is mapped back to the
+ * {@link NotificationStatus} of the request it came from.
+ * <p>
+ * Batches are dispatched asynchronously, so the collector thread goes straight back to filling the
+ * next one while the previous batch is on the wire. A batch only grows as large as the number of
+ * requests submitted within the window; see {@link com.dammak.notification_service.service.PushNotificationService}.
+ * <p>
+ * FCM does not report per-message timings, so the latency given to the PUSH limit is the batch
+ * completion time: how long the slowest of the batch's concurrent requests took.
+ */
+@Component
+@Slf4j
+public class PushBatcher implements SmartLifecycle {
+
+    public static final int FCM_MAX_BATCH_SIZE = 500;
+
+    private final FirebaseMessaging firebaseMessaging;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final BlockingQueue<PendingPush> queue;
+    private final DistributionSummary batchSizes;
+    private final Timer batchLatency;
+    private final ChannelConcurrencyLimiter channelLimiter;
+
+    private volatile boolean running;
+    private Thread collector;
+
+    public PushBatcher(FirebaseMessaging firebaseMessaging,
+                       @Value("${notification.push.batch.max-size:500}") int maxBatchSize,
+                       @Value("${notification.push.batch.window:20ms}") Duration window,
+                       @Value("${notification.push.batch.queue-capacity:10000}") int queueCapacity,
+                       MeterRegistry meterRegistry,
+                       ChannelConcurrencyLimiter channelLimiter) {
+        this.firebaseMessaging = firebaseMessaging;
+        this.channelLimiter = channelLimiter;
+        this.maxBatchSize = Math.min(maxBatchSize, FCM_MAX_BATCH_SIZE);
+        this.windowNanos = window.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSizes = DistributionSummary.builder("notification.push.batch.size")
+                .description("Messages per FCM batch")
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("notification.push.batch.latency")
+                .description("Batch completion time: until FCM answered every message of a batch")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a push notification for the next batch. The future completes with the per-message outcome.
+     */
+    public CompletableFuture<NotificationStatus> submit(NotificationRequest request) {
+        CompletableFuture<NotificationStatus> result = new CompletableFuture<>();
+        if (!running) {
+            result.complete(NotificationStatus.getError(request, "Push batcher is not running"));
+            return result;
+        }
+        if (!queue.offer(new PendingPush(request, toMessage(request), result))) {
+            result.complete(NotificationStatus.getError(request, "Push queue is full"));
+        }
+        return result;
+    }
+
+    private static Message toMessage(NotificationRequest request) {
+        Message.Builder message = Message.builder()
+                .setToken(request.getRecipient())
+                .setNotification(Notification.builder()
+                        .setTitle(request.getSubject())
+                        .setBody(request.getContent())
+                        .build());
+        if (request.getTemplateData() != null) {
+            message.putAllData(request.getTemplateData());
+        }
+        return message.build();
+    }
+
+    private void collect() {
+        List<PendingPush> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPush first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingPush next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(List.copyOf(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to dispatch push batch of {}: {}", batch.size(), e.getMessage(), e);
+                batch.forEach(pending -> pending.fail(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<PendingPush> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingPush pending : batch) {
+            messages.add(pending.message());
+        }
+        batchSizes.record(batch.size());
+        Timer.Sample sample = Timer.start();
+
+        ApiFutures.addCallback(firebaseMessaging.sendEachAsync(messages), new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(BatchResponse response) {
+                // Completion of the slowest request of the batch, without the window spent collecting it
+                channelLimiter.recordLatency(NotificationRequest.NotificationType.PUSH, sample.stop(batchLatency));
+                List<SendResponse> responses = response.getResponses();
+                boolean throttled = false;
+                for (int i = 0; i < batch.size(); i++) {
+                    SendResponse sendResponse = responses.get(i);
+                    throttled |= !sendResponse.isSuccessful() && ProviderThrottling.isThrottled(sendResponse.getException());
+                    batch.get(i).complete(sendResponse);
+                }
+                if (throttled) {
+                    // One signal per batch: its requests went out together, so several throttled
+                    // replies describe the same moment of provider load
+                    channelLimiter.reportThrottled(NotificationRequest.NotificationType.PUSH);
+                }
+                log.debug("Push batch of {} sent: {} succeeded, {} failed",
+                        batch.size(), response.getSuccessCount(), response.getFailureCount());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                channelLimiter.recordLatency(NotificationRequest.NotificationType.PUSH, sample.stop(batchLatency));
+                log.error("Push batch of {} failed: {}", batch.size(), t.getMessage());
+                if (ProviderThrottling.isThrottled(t)) {
+                    channelLimiter.reportThrottled(NotificationRequest.NotificationType.PUSH);
+                }
+                batch.forEach(pending -> pending.fail(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        collector = new Thread(this::collect, "fcm-batcher");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    @Override
+    public void stop() {
+        // The collector drains what is already queued before it exits
+        running = false;
+        try {
+            collector.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Starts before and stops after the listener containers, whose callers wait on its batches,
+        // and stops before NotificationHistoryService so drained results can still be recorded
+        return Integer.MAX_VALUE - 500;
+    }
+
+    private record PendingPush(NotificationRequest request, Message message,
+                               CompletableFuture<NotificationStatus> result) {
+
+        void complete(SendResponse response) {
+            if (response.isSuccessful()) {
+                log.info("Push notification sent successfully to {}, response: {}",
+                        request.getRecipient(), response.getMessageId());
+                result.complete(NotificationStatus.getSuccess(request, "Push notification sent successfully"));
+            } else {
+                FirebaseMessagingException e = response.getException();
+                log.error("Failed to send push notification to {}: {} ({})",
+                        request.getRecipient(), e.getMessage(), e.getMessagingErrorCode());
+                result.complete(NotificationStatus.getError(request, "Failed to send push notification: " + e.getMessage()));
+            }
+        }
+
+        void fail(Throwable t) {
+            result.complete(NotificationStatus.getError(request, "Failed to send push notification: " + t.getMessage()));
+        }
+    }
+}
@@ -2,9 +2,38 @@ package com.dammak.notification_service.repository;
 
 
 import com.dammak.notification_service.entity.NotificationHistory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface NotificationHistoryRepository extends JpaRepository<NotificationHistory, String> {
-}
\ No newline at end of file
+
+    // The bound on sentAt lets Postgres look only at the partitions it can fall in
+    boolean existsByIdAndSentAtAfter(String id, LocalDateTime sentAt);
+
+    // Rows are only unique per (id, sent_at), and an id can have several beyond the dedupe window;
+    // the newest holds its latest status
+    Optional<NotificationHistory> findFirstByIdOrderBySentAtDesc(String id);
+
+    // Newest first; both walk idx_notification_history_recipient_sent_at and stop after the limit
+    @Query("SELECT h FROM NotificationHistory h WHERE h.recipient = :recipient "
+            + "ORDER BY h.sentAt DESC, h.id DESC")
+    List<NotificationHistory> findLatestByRecipient(@Param("recipient") String recipient, Limit limit);
+
+    // Rows strictly after the (sentAt, id) of the last row of the previous page. The plain bound on
+    // sentAt is redundant for the result but lets Postgres skip the partitions of newer days
+    @Query("SELECT h FROM NotificationHistory h WHERE h.recipient = :recipient "
+            + "AND h.sentAt <= :sentAt AND (h.sentAt < :sentAt OR h.id < :id) "
+            + "ORDER BY h.sentAt DESC, h.id DESC")
+    List<NotificationHistory> findByRecipientBefore(@Param("recipient") String recipient,
+                                                    @Param("sentAt") LocalDateTime sentAt,
+                                                    @Param("id") String id,
+                                                    Limit limit);
+}
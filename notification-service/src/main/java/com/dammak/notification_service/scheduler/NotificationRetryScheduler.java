@@ -1,79 +1,116 @@
-//package com.dammak.notification_service.scheduler;
-//
-//
-//
-//import com.dammak.notification_service.entity.FailedNotification;
-//import com.dammak.notification_service.model.NotificationRequest;
-//import com.dammak.notification_service.model.NotificationStatus;
-//import com.dammak.notification_service.repository.FailedNotificationRepository;
-//import com.dammak.notification_service.service.FailedNotificationService;
-//import com.dammak.notification_service.service.NotificationService;
-//import lombok.RequiredArgsConstructor;
-//import lombok.extern.slf4j.Slf4j;
-//import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
-//import org.springframework.beans.factory.annotation.Value;
-//import org.springframework.jdbc.core.JdbcTemplate;
-//import org.springframework.scheduling.annotation.Scheduled;
-//import org.springframework.stereotype.Component;
-//
-//import java.util.List;
-//import java.util.Map;
-//
-//@Component
-//@RequiredArgsConstructor
-//@Slf4j
-//public class NotificationRetryScheduler {
-//
-//
-//    private final FailedNotificationRepository failedNotificationRepository;
-//    private final FailedNotificationService failedNotificationService;
-//    private final NotificationService notificationService;
-//
-//    @Value("${notification.retry.max-attempts}")
-//    private int maxRetryAttempts;
-//
-//    @Value("${notification.retry.batch-size:50}")
-//    private int batchSize;
-////
-////    @Scheduled(fixedDelayString = "${notification.retry.interval}")
-////    @SchedulerLock(name = "retryFailedNotifications", lockAtMostFor = "PT5M")
-//    public void retryFailedNotifications() {
-//        log.info("Starting scheduled retry for failed notifications");
-//
-//        List<FailedNotification> failedNotifications =
-//                failedNotificationRepository.findNotificationsToRetry(maxRetryAttempts, batchSize);
-//
-//        log.info("Found {} failed notifications to retry", failedNotifications.size());
-//
-//        for (FailedNotification failedNotification : failedNotifications) {
-//            try {
-//                NotificationRequest request = failedNotificationService.mapToNotificationRequest(failedNotification);
-//                NotificationStatus status = notificationService.processNotification(request);
-//
-//                if (status.isSuccess()) {
-//                    // If successful, delete from failed notifications
-//                    failedNotificationRepository.deleteById(failedNotification.getId());
-//                    log.info("Successfully retried notification {}", failedNotification.getId());
-//                } else {
-//                    // Update retry count
-//                    failedNotificationService.updateRetryAttempt(failedNotification.getId());
-//                    log.warn("Retry attempt failed for notification {}: {}",
-//                            failedNotification.getId(), status.getMessage());
-//                }
-//            } catch (Exception e) {
-//                failedNotificationService.updateRetryAttempt(failedNotification.getId());
-//                log.error("Error retrying notification {}: {}",
-//                        failedNotification.getId(), e.getMessage());
-//            }
-//        }
-//
-//        // Clean up notifications that exceeded max retry attempts
-//        int deleted = failedNotificationRepository.deleteByRetryCountGreaterThanEqual(maxRetryAttempts);
-//
-//        if (deleted > 0) {
-//            log.info("Deleted {} notifications that exceeded maximum retry attempts", deleted);
-//        }
-//
-//        log.info("Completed scheduled retry for failed notifications");
-//    }
-//}
\ No newline at end of file
+package com.dammak.notification_service.scheduler;
+
+
+
+import com.dammak.notification_service.entity.FailedNotification;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.service.FailedNotificationService;
+import com.dammak.notification_service.service.NotificationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drains the failed-notification queue. Every node polls independently: each pass claims due rows
+ * with {@code SKIP LOCKED}, re-dispatches the batch in parallel and keeps claiming while full batches
+ * come back, so no cluster-wide lock is needed and throughput grows with the number of nodes.
+ * Failed retries are rescheduled with exponential backoff; rows that run out of attempts are dropped.
+ */
+@Component
+@Slf4j
+public class NotificationRetryScheduler {
+
+    private final FailedNotificationService failedNotificationService;
+    private final NotificationService notificationService;
+    private final Executor retryExecutor;
+
+    @Value("${notification.retry.max-attempts}")
+    private int maxRetryAttempts;
+
+    @Value("${notification.retry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notification.retry.interval:PT10M}")
+    private Duration initialBackoff;
+
+    @Value("${notification.retry.max-backoff:PT6H}")
+    private Duration maxBackoff;
+
+    // Long enough for one batch to finish; after that the rows are due again for any node
+    @Value("${notification.retry.lease:PT5M}")
+    private Duration lease;
+
+    public NotificationRetryScheduler(FailedNotificationService failedNotificationService,
+                                      NotificationService notificationService,
+                                      @Qualifier("notificationBatchExecutor") Executor retryExecutor) {
+        this.failedNotificationService = failedNotificationService;
+        this.notificationService = notificationService;
+        this.retryExecutor = retryExecutor;
+    }
+
+    @Scheduled(fixedDelayString = "${notification.retry.poll-interval:PT5S}")
+    public void retryFailedNotifications() {
+        int claimed;
+        int total = 0;
+        do {
+            List<FailedNotification> batch = failedNotificationService.claimDue(maxRetryAttempts, batchSize, lease);
+            claimed = batch.size();
+            total += claimed;
+            if (claimed > 0) {
+                CompletableFuture.allOf(batch.stream()
+                        .map(notification -> CompletableFuture.runAsync(() -> retry(notification), retryExecutor))
+                        .toArray(CompletableFuture[]::new)).join();
+            }
+        } while (claimed == batchSize);
+
+        if (total > 0) {
+            log.info("Retried {} failed notifications", total);
+        }
+    }
+
+    private void retry(FailedNotification failedNotification) {
+        String error;
+        try {
+            NotificationRequest request = failedNotificationService.mapToNotificationRequest(failedNotification);
+            NotificationStatus status = notificationService.processNotification(request);
+
+            if (status.isSuccess()) {
+                failedNotificationService.delete(failedNotification.getId());
+                log.info("Successfully retried notification {}", failedNotification.getId());
+                return;
+            }
+            error = status.getMessage();
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+
+        int attempts = failedNotification.getRetryCount() + 1;
+        if (attempts >= maxRetryAttempts) {
+            failedNotificationService.delete(failedNotification.getId());
+            log.warn("Giving up on notification {} after {} retries: {}", failedNotification.getId(), attempts, error);
+        } else {
+            failedNotificationService.reschedule(failedNotification, backoff(attempts), error);
+            log.warn("Retry attempt {} failed for notification {}: {}", attempts, failedNotification.getId(), error);
+        }
+    }
+
+    /**
+     * Delay before retry number {@code attempts + 1}: the initial backoff doubled per attempt, capped,
+     * with +/-20% jitter so rows that failed together don't come due together.
+     */
+    public Duration backoff(int attempts) {
+        long base = initialBackoff.toMillis() << Math.min(attempts, 20);
+        long capped = Math.min(base, maxBackoff.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+}
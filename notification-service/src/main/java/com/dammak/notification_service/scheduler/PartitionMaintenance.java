@@ -0,0 +1,151 @@
+package com.dammak.notification_service.scheduler;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Lifecycle of the daily partitions of {@code notification_history} and {@code failed_notifications}
+ * (see schema.sql). Each run creates the partitions for yesterday through the next {@code premakeDays}
+ * days, and drops partitions whose whole range is older than the table's retention; dropping a
+ * partition removes a day of rows without a DELETE or the vacuum that would follow it.
+ * <p>
+ * "Today" is taken in the configured {@code zone} rather than each JVM's default, so all nodes agree
+ * on the bounds. Timestamps are written in the writer's local time, which may be up to a day behind
+ * that zone; starting a day early keeps those rows out of the default partition.
+ * <p>
+ * Runs once at startup, before any listener can write, and then periodically. Every statement is
+ * idempotent, so all nodes can run it without coordination.
+ */
+@Component
+@Slf4j
+public class PartitionMaintenance implements InitializingBean {
+
+    /**
+     * A table partitioned by day; partitions are named {@code <table>_pYYYYMMDD}.
+     */
+    record PartitionedTable(String name, Duration retention) {
+    }
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyyMMdd");
+
+    private static final String PARTITIONS_SQL = "SELECT child.relname FROM pg_inherits "
+            + "JOIN pg_class parent ON parent.oid = pg_inherits.inhparent "
+            + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+            + "WHERE parent.relname = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int premakeDays;
+    private final ZoneId zone;
+    private final List<PartitionedTable> tables;
+    private final Counter created;
+    private final Counter dropped;
+
+    public PartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                @Value("${notification.partitions.enabled:true}") boolean enabled,
+                                @Value("${notification.partitions.premake-days:7}") int premakeDays,
+                                @Value("${notification.partitions.zone:UTC}") ZoneId zone,
+                                @Value("${notification.partitions.history-retention:90d}") Duration historyRetention,
+                                @Value("${notification.partitions.failed-retention:30d}") Duration failedRetention,
+                                MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.premakeDays = premakeDays;
+        this.zone = zone;
+        this.tables = List.of(
+                new PartitionedTable("notification_history", historyRetention),
+                new PartitionedTable("failed_notifications", failedRetention));
+        this.created = Counter.builder("notification.partitions.created")
+                .description("Daily partitions created ahead of time")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("notification.partitions.dropped")
+                .description("Daily partitions dropped after their retention")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${notification.partitions.check-interval:PT1H}",
+            initialDelayString = "${notification.partitions.check-interval:PT1H}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now(zone);
+        for (PartitionedTable table : tables) {
+            try {
+                createAhead(table, today);
+                dropExpired(table, today);
+            } catch (DataAccessException e) {
+                log.error("Partition maintenance of {} failed: {}", table.name(), e.getMessage());
+            }
+        }
+    }
+
+    private void createAhead(PartitionedTable table, LocalDate today) {
+        List<String> existing = partitions(table);
+        for (int day = -1; day <= premakeDays; day++) {
+            LocalDate from = today.plusDays(day);
+            String partition = table.name() + SUFFIX.format(from);
+            if (existing.contains(partition)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table.name()
+                        + " FOR VALUES FROM ('" + from + "') TO ('" + from.plusDays(1) + "')");
+                created.increment();
+                log.info("Created partition {}", partition);
+            } catch (DataAccessException e) {
+                // Typically the default partition already holds rows of that day; they stay readable there
+                log.error("Could not create partition {}: {}", partition, e.getMessage());
+            }
+        }
+    }
+
+    private void dropExpired(PartitionedTable table, LocalDate today) {
+        // A partition is dropped once its newest possible row is older than the retention
+        LocalDate cutoff = today.minusDays(table.retention().toDays());
+        for (String partition : partitions(table)) {
+            LocalDate day = dayOf(table, partition);
+            if (day != null && !day.plusDays(1).isAfter(cutoff)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                dropped.increment();
+                log.info("Dropped partition {} (retention {})", partition, table.retention());
+            }
+        }
+    }
+
+    private List<String> partitions(PartitionedTable table) {
+        return jdbcTemplate.queryForList(PARTITIONS_SQL, String.class, table.name());
+    }
+
+    // Null for partitions not created here, such as the default one
+    private static LocalDate dayOf(PartitionedTable table, String partition) {
+        if (!partition.startsWith(table.name())) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(table.name().length()), SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.dammak.notification_service.service;
+
+
+/**
+ * AIMD concurrency limit for one provider. The limit grows by one per round trip's worth of
+ * successful calls while it is actually being used, and shrinks by {@code backoffRatio} when the
+ * provider throttles us or when short-term latency rises above {@code latencyTolerance} times the
+ * long-term average, the sign that requests are queueing on the provider's side.
+ * <p>
+ * Not thread-safe; {@link ChannelConcurrencyLimiter} only touches it under the channel's lock.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    // Roughly the last 10 and the last 200 samples
+    private static final double SHORT_ALPHA = 0.1;
+    private static final double LONG_ALPHA = 0.005;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private double limit;
+    private double shortRttNanos;
+    private double longRttNanos;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double backoffRatio, double latencyTolerance) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = maxLimit;
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * A call completed after {@code rttNanos} with {@code inFlight} calls outstanding, including itself.
+     */
+    public void onSample(long rttNanos, int inFlight, long nowNanos) {
+        if (shortRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+        } else {
+            shortRttNanos += SHORT_ALPHA * (rttNanos - shortRttNanos);
+            longRttNanos += LONG_ALPHA * (rttNanos - longRttNanos);
+        }
+        if (shortRttNanos > longRttNanos * latencyTolerance) {
+            decrease(nowNanos);
+        } else if (inFlight * 2 >= limit) {
+            // An idle limit says nothing about what the provider can take, so only grow a busy one
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * The provider rejected a call for being over its rate or connection limits.
+     */
+    public void onThrottled(long nowNanos) {
+        decrease(nowNanos);
+    }
+
+    private void decrease(long nowNanos) {
+        // At most one backoff per round trip, so a burst of rejections from one window counts once
+        if (decreased && nowNanos - lastDecreaseNanos < (long) shortRttNanos) {
+            return;
+        }
+        decreased = true;
+        lastDecreaseNanos = nowNanos;
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
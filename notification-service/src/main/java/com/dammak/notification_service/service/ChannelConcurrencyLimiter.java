@@ -0,0 +1,249 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.model.NotificationRequest.NotificationType;
+import com.dammak.notification_service.model.NotificationRequest.Priority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of in-flight provider calls per channel and hands freed permits out by priority.
+ * With virtual-thread dispatch the executor no longer bounds concurrency, so these limits are what
+ * keeps SMTP/Twilio/FCM from being flooded.
+ * <p>
+ * Callers that find a channel at its limit wait in a queue ordered by a virtual deadline,
+ * {@code arrival + level * agingInterval}, where CRITICAL is level 0 and LOW level 3. Higher
+ * priorities go first, but a request that has waited one aging interval longer than another
+ * outranks it by one level, so a steady stream of CRITICAL work cannot starve LOW forever.
+ * <p>
+ * The configured limits are ceilings. Each channel's actual limit adapts with
+ * {@link AdaptiveConcurrencyLimit}: it backs off when the channel services report throttling or when
+ * provider latency climbs, and creeps back up while calls succeed, so each provider runs close to
+ * the rate it can sustain instead of tripping its circuit breaker on 429s. Latency is reported around
+ * the provider request itself ({@link #recordLatency}), by the channel services or, for email, by the
+ * pooled mail sender once it holds a connection. It is not measured over the permit, which also covers
+ * rendering, client-side queues, connection pools and push batching windows.
+ */
+@Component
+@Slf4j
+public class ChannelConcurrencyLimiter {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Map<NotificationType, Gate> gates = new EnumMap<>(NotificationType.class);
+    private final long agingNanos;
+    private final boolean adaptive;
+    // Waiters per priority across all channels, read without locking by the pause controller
+    private final AtomicIntegerArray waiting = new AtomicIntegerArray(PRIORITIES.length);
+
+    public ChannelConcurrencyLimiter(@Value("${notification.dispatch.limit.email:200}") int emailLimit,
+                                     @Value("${notification.dispatch.limit.sms:${notification.sms.max-in-flight:200}}") int smsLimit,
+                                     @Value("${notification.dispatch.limit.push:1000}") int pushLimit,
+                                     @Value("${notification.dispatch.aging-interval:2s}") Duration agingInterval,
+                                     @Value("${notification.dispatch.adaptive.enabled:true}") boolean adaptive,
+                                     @Value("${notification.dispatch.adaptive.min-limit:2}") int minLimit,
+                                     @Value("${notification.dispatch.adaptive.backoff-ratio:0.9}") double backoffRatio,
+                                     @Value("${notification.dispatch.adaptive.latency-tolerance:2.0}") double latencyTolerance,
+                                     MeterRegistry meterRegistry) {
+        this.agingNanos = agingInterval.toNanos();
+        this.adaptive = adaptive;
+        gates.put(NotificationType.EMAIL, new Gate("email",
+                new AdaptiveConcurrencyLimit(minLimit, emailLimit, backoffRatio, latencyTolerance), meterRegistry));
+        gates.put(NotificationType.SMS, new Gate("sms",
+                new AdaptiveConcurrencyLimit(minLimit, smsLimit, backoffRatio, latencyTolerance), meterRegistry));
+        gates.put(NotificationType.PUSH, new Gate("push",
+                new AdaptiveConcurrencyLimit(minLimit, pushLimit, backoffRatio, latencyTolerance), meterRegistry));
+        for (Priority priority : PRIORITIES) {
+            Gauge.builder("notification.dispatch.waiting", waiting, w -> w.get(priority.ordinal()))
+                    .description("Provider calls waiting for a permit")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Run a provider call once a permit for its channel is available.
+     */
+    public <T> T call(NotificationType type, Priority priority, Supplier<T> providerCall) {
+        Gate gate = gates.get(type);
+        try {
+            acquire(gate, priority != null ? priority : Priority.NORMAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + type + " send permit", e);
+        }
+        try {
+            return providerCall.get();
+        } finally {
+            release(gate);
+        }
+    }
+
+    /**
+     * A provider request for this channel took {@code rttNanos}, measured around the request alone.
+     */
+    public void recordLatency(NotificationType type, long rttNanos) {
+        if (!adaptive) {
+            return;
+        }
+        Gate gate = gates.get(type);
+        gate.lock.lock();
+        try {
+            gate.adaptiveLimit.onSample(rttNanos, gate.inFlight, System.nanoTime());
+            gate.limit = gate.adaptiveLimit.limit();
+            admitWaiters(gate);
+        } finally {
+            gate.lock.unlock();
+        }
+    }
+
+    /**
+     * The provider pushed back on a call for this channel (429, quota, SMTP 4xx); shrink its limit.
+     */
+    public void reportThrottled(NotificationType type) {
+        Gate gate = gates.get(type);
+        gate.throttled.increment();
+        if (!adaptive) {
+            return;
+        }
+        gate.lock.lock();
+        try {
+            gate.adaptiveLimit.onThrottled(System.nanoTime());
+            gate.limit = gate.adaptiveLimit.limit();
+        } finally {
+            gate.lock.unlock();
+        }
+    }
+
+    public int limit(NotificationType type) {
+        return gates.get(type).limit;
+    }
+
+    /**
+     * The highest priority that has callers waiting for a permit on any channel, or null if none do.
+     */
+    public Priority highestWaitingPriority() {
+        for (int i = PRIORITIES.length - 1; i >= 0; i--) {
+            if (waiting.get(i) > 0) {
+                return PRIORITIES[i];
+            }
+        }
+        return null;
+    }
+
+    private void acquire(Gate gate, Priority priority) throws InterruptedException {
+        gate.lock.lock();
+        try {
+            if (gate.inFlight < gate.limit && gate.waiters.isEmpty()) {
+                gate.inFlight++;
+                return;
+            }
+            int level = PRIORITIES.length - 1 - priority.ordinal();
+            Waiter waiter = new Waiter(System.nanoTime() + level * agingNanos, gate.sequence++,
+                    priority, gate.lock.newCondition());
+            gate.waiters.add(waiter);
+            waiting.incrementAndGet(priority.ordinal());
+            try {
+                while (!waiter.admitted) {
+                    waiter.turn.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    // Admitted while being interrupted: pass the permit on
+                    gate.inFlight--;
+                    admitWaiters(gate);
+                } else {
+                    gate.waiters.remove(waiter);
+                    waiting.decrementAndGet(priority.ordinal());
+                }
+                throw e;
+            }
+        } finally {
+            gate.lock.unlock();
+        }
+    }
+
+    private void release(Gate gate) {
+        gate.lock.lock();
+        try {
+            gate.inFlight--;
+            admitWaiters(gate);
+        } finally {
+            gate.lock.unlock();
+        }
+    }
+
+    // Caller holds the gate lock
+    private void admitWaiters(Gate gate) {
+        while (gate.inFlight < gate.limit && !gate.waiters.isEmpty()) {
+            Waiter next = gate.waiters.poll();
+            waiting.decrementAndGet(next.priority.ordinal());
+            gate.inFlight++;
+            next.admitted = true;
+            next.turn.signal();
+        }
+    }
+
+    private static final class Gate {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+                Comparator.comparingLong((Waiter w) -> w.deadline).thenComparingLong(w -> w.sequence));
+        private final AdaptiveConcurrencyLimit adaptiveLimit;
+        private final Counter throttled;
+        private volatile int limit;
+        private volatile int inFlight;
+        private long sequence;
+
+        private Gate(String channel, AdaptiveConcurrencyLimit adaptiveLimit, MeterRegistry registry) {
+            this.adaptiveLimit = adaptiveLimit;
+            this.limit = adaptiveLimit.limit();
+            this.throttled = Counter.builder("notification.dispatch.throttled")
+                    .description("Provider calls rejected for exceeding rate or connection limits")
+                    .tag("channel", channel)
+                    .register(registry);
+            Gauge.builder("notification.dispatch.limit", this, g -> g.limit)
+                    .description("Current concurrency limit for provider calls")
+                    .tag("channel", channel)
+                    .register(registry);
+            Gauge.builder("notification.dispatch.in-flight", this, g -> g.inFlight)
+                    .description("Provider calls currently in flight")
+                    .tag("channel", channel)
+                    .register(registry);
+            Gauge.builder("notification.dispatch.queued", this, g -> g.waiters.size())
+                    .description("Provider calls waiting for a permit on this channel")
+                    .tag("channel", channel)
+                    .register(registry);
+        }
+    }
+
+    private static final class Waiter {
+
+        private final long deadline;
+        private final long sequence;
+        private final Priority priority;
+        private final Condition turn;
+        private boolean admitted;
+
+        private Waiter(long deadline, long sequence, Priority priority, Condition turn) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.turn = turn;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.config.TemplateConfig;
+import com.dammak.notification_service.model.NotificationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rendering stage for email bodies. Every template under {@code resources/templates} is parsed into
+ * the cache at startup so the first message of each kind doesn't pay for parsing, and renders are
+ * timed per preloaded template. Rendering is CPU-bound work on the calling thread: a separate pool
+ * would only park the SMTP worker while it waited for the result.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailTemplateRenderer {
+
+    // Template names are caller-supplied; only these get their own timer series
+    static final String OTHER_TEMPLATE = "other";
+
+    private final TemplateEngine templateEngine;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> knownTemplates = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Render a template with the given variables.
+     */
+    public String render(String templateName, Map<String, String> templateData) {
+        Context context = new Context();
+        if (templateData != null) {
+            templateData.forEach(context::setVariable);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return templateEngine.process(templateName, context);
+        } finally {
+            sample.stop(renderTimer(templateName));
+        }
+    }
+
+    /**
+     * The HTML body for a request: the rendered template if one is named, the raw content otherwise.
+     */
+    public String renderBody(NotificationRequest request) {
+        if (request.getTemplateName() == null || request.getTemplateName().isEmpty()) {
+            return request.getContent();
+        }
+        return render(request.getTemplateName(), request.getTemplateData());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadTemplates() {
+        int loaded = 0;
+        try {
+            Resource[] templates = new PathMatchingResourcePatternResolver()
+                    .getResources(TemplateConfig.TEMPLATE_PREFIX + "**/*" + TemplateConfig.TEMPLATE_SUFFIX);
+            for (Resource template : templates) {
+                String name = templateName(template);
+                if (name == null) {
+                    continue;
+                }
+                knownTemplates.add(name);
+                try {
+                    // Parsing caches the template; evaluation errors from the empty context don't matter
+                    templateEngine.process(name, new Context());
+                } catch (Exception e) {
+                    log.debug("Template {} cached, sample render failed: {}", name, e.getMessage());
+                }
+                loaded++;
+            }
+        } catch (IOException e) {
+            log.warn("Could not list templates to preload: {}", e.getMessage());
+        }
+        log.info("Preloaded {} email templates", loaded);
+    }
+
+    private static String templateName(Resource template) throws IOException {
+        String path = template.getURL().getPath();
+        int start = path.lastIndexOf("/templates/");
+        if (start < 0) {
+            return null;
+        }
+        String name = path.substring(start + "/templates/".length());
+        return name.substring(0, name.length() - TemplateConfig.TEMPLATE_SUFFIX.length());
+    }
+
+    private Timer renderTimer(String templateName) {
+        return Timer.builder("notification.email.render")
+                .description("Time spent rendering an email template")
+                .tag("template", knownTemplates.contains(templateName) ? templateName : OTHER_TEMPLATE)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+}
@@ -3,55 +3,147 @@ package com.dammak.notification_service.service;
 
 import com.dammak.notification_service.entity.FailedNotification;
 import com.dammak.notification_service.model.NotificationRequest;
-import com.dammak.notification_service.repository.FailedNotificationRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * Durable retry queue on {@code failed_notifications}. A row is keyed by the request id, so repeated
+ * failures of the same notification update one row, and {@code next_retry_at} says when it is due.
+ * The table is partitioned by {@code created_at}, so the database cannot enforce a unique id on its
+ * own; writers of one id are serialised with a transaction-scoped advisory lock instead.
+ * Nodes claim due rows with {@code FOR UPDATE SKIP LOCKED}; the claim pushes {@code next_retry_at}
+ * out by a lease, so rows claimed by a node that dies become due again once the lease runs out.
+ * All times come from the database clock.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FailedNotificationService {
 
-    private final FailedNotificationRepository repository;
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtextextended(?, 0))";
+
+    private static final String UPDATE_ERROR_SQL =
+            "UPDATE failed_notifications SET error_message = ? WHERE id = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO failed_notifications "
+            + "(id, type, recipient, subject, content, template_name, template_data, retry_count, "
+            + "created_at, last_retry, next_retry_at, error_message) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 0, now(), NULL, now() + (? * interval '1 millisecond'), ?)";
+
+    private static final String CLAIM_SQL = "UPDATE failed_notifications "
+            + "SET next_retry_at = now() + (? * interval '1 millisecond') "
+            + "WHERE id IN (SELECT id FROM failed_notifications "
+            + "WHERE next_retry_at <= now() AND retry_count < ? "
+            + "ORDER BY next_retry_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING *";
+
+    private static final String RESCHEDULE_SQL = "UPDATE failed_notifications "
+            + "SET retry_count = ?, last_retry = now(), next_retry_at = now() + (? * interval '1 millisecond'), "
+            + "error_message = ? WHERE id = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM failed_notifications WHERE id = ?";
+
+    private static final int ERROR_MESSAGE_LENGTH = 500;
+
+    private static final RowMapper<FailedNotification> ROW_MAPPER = (rs, rowNum) -> {
+        FailedNotification notification = new FailedNotification();
+        notification.setId(rs.getString("id"));
+        notification.setType(NotificationRequest.NotificationType.valueOf(rs.getString("type")));
+        notification.setRecipient(rs.getString("recipient"));
+        notification.setSubject(rs.getString("subject"));
+        notification.setContent(rs.getString("content"));
+        notification.setTemplateName(rs.getString("template_name"));
+        notification.setTemplateData(rs.getString("template_data"));
+        notification.setRetryCount(rs.getInt("retry_count"));
+        notification.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
+        notification.setLastRetry(toLocalDateTime(rs.getTimestamp("last_retry")));
+        notification.setNextRetryAt(toLocalDateTime(rs.getTimestamp("next_retry_at")));
+        notification.setErrorMessage(rs.getString("error_message"));
+        return notification;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final ObjectMapper objectMapper;
 
+    @Value("${notification.retry.interval:PT10M}")
+    private Duration initialRetryDelay;
+
+    /**
+     * Queue a failed request for retry, or record the latest error if it is already queued. Update
+     * first, insert if nothing matched: no read on the common path and no reliance on ON CONFLICT.
+     */
     public void saveFailedNotification(NotificationRequest request, String errorMessage) {
-        try {
-            FailedNotification failedNotification = new FailedNotification();
-            failedNotification.setId(UUID.randomUUID().toString());
-            failedNotification.setType(request.getType());
-            failedNotification.setRecipient(request.getRecipient());
-            failedNotification.setSubject(request.getSubject());
-            failedNotification.setContent(request.getContent());
-            failedNotification.setTemplateName(request.getTemplateName());
-
-            if (request.getTemplateData() != null) {
-                try {
-                    failedNotification.setTemplateData(objectMapper.writeValueAsString(request.getTemplateData()));
-                } catch (JsonProcessingException e) {
-                    log.error("Error serializing template data: {}", e.getMessage());
-                }
+        String id = request.getId() != null ? request.getId().toString() : UUID.randomUUID().toString();
+        String error = truncate(errorMessage);
+        String templateData = null;
+        if (request.getTemplateData() != null) {
+            try {
+                templateData = objectMapper.writeValueAsString(request.getTemplateData());
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing template data: {}", e.getMessage());
             }
+        }
+        String serializedTemplateData = templateData;
 
-            failedNotification.setRetryCount(0);
-            failedNotification.setCreatedAt(LocalDateTime.now());
-            failedNotification.setErrorMessage(errorMessage);
-
-            repository.save(failedNotification);
-            log.info("Saved failed notification: {}", failedNotification.getId());
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                // Held until commit, so a concurrent failure of the same id sees our row and updates it
+                jdbcTemplate.query(LOCK_SQL, rs -> null, id);
+                if (jdbcTemplate.update(UPDATE_ERROR_SQL, error, id) > 0) {
+                    log.debug("Updated failed notification: {}", id);
+                    return;
+                }
+                jdbcTemplate.update(INSERT_SQL, id, request.getType().name(), request.getRecipient(),
+                        request.getSubject(), request.getContent(), request.getTemplateName(), serializedTemplateData,
+                        initialRetryDelay.toMillis(), error);
+                log.info("Saved failed notification: {}", id);
+            });
         } catch (Exception e) {
             log.error("Error saving failed notification: {}", e.getMessage());
         }
     }
 
+    /**
+     * Claim up to {@code limit} due rows for this node, leasing them for {@code lease}.
+     */
+    public List<FailedNotification> claimDue(int maxRetries, int limit, Duration lease) {
+        return jdbcTemplate.query(CLAIM_SQL, ROW_MAPPER, lease.toMillis(), maxRetries, limit);
+    }
+
+    /**
+     * Record a failed retry and make the row due again after {@code delay}.
+     */
+    public void reschedule(FailedNotification notification, Duration delay, String errorMessage) {
+        jdbcTemplate.update(RESCHEDULE_SQL, notification.getRetryCount() + 1, delay.toMillis(),
+                truncate(errorMessage), notification.getId());
+    }
+
+    public void delete(String id) {
+        jdbcTemplate.update(DELETE_SQL, id);
+    }
+
     public NotificationRequest mapToNotificationRequest(FailedNotification failedNotification) {
         NotificationRequest request = new NotificationRequest();
+        try {
+            // Keep the original id so a failed retry updates the same row
+            request.setId(UUID.fromString(failedNotification.getId()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Failed notification {} has a non-UUID id", failedNotification.getId());
+        }
         request.setType(failedNotification.getType());
         request.setRecipient(failedNotification.getRecipient());
         request.setSubject(failedNotification.getSubject());
@@ -73,11 +165,14 @@ public class FailedNotificationService {
         return request;
     }
 
-    public void updateRetryAttempt(String id) {
-        repository.findById(id).ifPresent(notification -> {
-            notification.setRetryCount(notification.getRetryCount() + 1);
-            notification.setLastRetry(LocalDateTime.now());
-            repository.save(notification);
-        });
+    private static String truncate(String errorMessage) {
+        if (errorMessage == null || errorMessage.length() <= ERROR_MESSAGE_LENGTH) {
+            return errorMessage;
+        }
+        return errorMessage.substring(0, ERROR_MESSAGE_LENGTH);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Drops redelivered notification requests before they reach a provider a second time.
+ * <p>
+ * Each request id is claimed in a size-bounded, TTL-evicting cache before it is processed; a second
+ * claim of an id that is still cached is a duplicate. On a cache miss, records that may be replays
+ * (see {@link com.dammak.notification_service.kafka.listener.ReplayWindow}) are looked up in
+ * {@code notification_history} among the rows sent within the TTL, which catches replays after a
+ * restart or after a rebalance moved the partition to this instance. Records first delivered here
+ * skip the lookup.
+ * <p>
+ * Optionally a Bloom filter of recently processed ids sits in front of that lookup, so ids that were
+ * certainly never seen skip the database. It only knows ids loaded at startup and ids this instance
+ * processed since, so ids handled by another instance after we started bypass the backstop; enable
+ * it only where partitions rarely move. History is written behind, so even without it a replay on
+ * another instance within one flush interval can slip through.
+ */
+@Component
+@Slf4j
+public class NotificationDeduplicator {
+
+    private static final Funnel<UUID> UUID_FUNNEL = (id, sink) -> sink
+            .putLong(id.getMostSignificantBits())
+            .putLong(id.getLeastSignificantBits());
+
+    private static final String RECENT_IDS_SQL = "SELECT id FROM notification_history WHERE sent_at > ?";
+
+    private final NotificationHistoryRepository historyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final boolean bloomEnabled;
+    private final int bloomExpectedInsertions;
+    private final double bloomFalsePositiveRate;
+    private final Cache<UUID, Boolean> claimed;
+    private final Counter cacheDuplicates;
+    private final Counter historyDuplicates;
+
+    // Two generations, so rotating out a full filter never forgets the most recent ids
+    private volatile BloomFilter<UUID> currentBloom;
+    private volatile BloomFilter<UUID> previousBloom;
+
+    public NotificationDeduplicator(NotificationHistoryRepository historyRepository,
+                                    JdbcTemplate jdbcTemplate,
+                                    @Value("${notification.dedupe.enabled:true}") boolean enabled,
+                                    @Value("${notification.dedupe.cache.max-size:200000}") long maxSize,
+                                    @Value("${notification.dedupe.cache.ttl:1h}") Duration ttl,
+                                    @Value("${notification.dedupe.bloom.enabled:false}") boolean bloomEnabled,
+                                    @Value("${notification.dedupe.bloom.expected-insertions:1000000}") int bloomExpectedInsertions,
+                                    @Value("${notification.dedupe.bloom.false-positive-rate:0.01}") double bloomFalsePositiveRate,
+                                    MeterRegistry meterRegistry) {
+        this.historyRepository = historyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.bloomEnabled = bloomEnabled;
+        this.bloomExpectedInsertions = bloomExpectedInsertions;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.claimed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, claimed, "notification-dedupe");
+        this.cacheDuplicates = duplicateCounter(meterRegistry, "cache");
+        this.historyDuplicates = duplicateCounter(meterRegistry, "history");
+        if (bloomEnabled) {
+            this.currentBloom = newBloom();
+            this.previousBloom = newBloom();
+        }
+    }
+
+    private static Counter duplicateCounter(MeterRegistry registry, String source) {
+        return Counter.builder("notification.dedupe.duplicates")
+                .description("Redelivered requests dropped before processing")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    private BloomFilter<UUID> newBloom() {
+        return BloomFilter.create(UUID_FUNNEL, bloomExpectedInsertions, bloomFalsePositiveRate);
+    }
+
+    /**
+     * Load ids written within the TTL into the Bloom filter, so replays right after a restart still
+     * reach the history lookup.
+     */
+    @PostConstruct
+    void warmBloomFilter() {
+        if (!enabled || !bloomEnabled) {
+            return;
+        }
+        try {
+            int[] loaded = {0};
+            jdbcTemplate.query(RECENT_IDS_SQL, rs -> {
+                try {
+                    remember(UUID.fromString(rs.getString(1)));
+                    loaded[0]++;
+                } catch (IllegalArgumentException e) {
+                    // Not a request id; nothing to dedupe against
+                }
+            }, Timestamp.valueOf(LocalDateTime.now().minus(ttl)));
+            log.info("Loaded {} recent notification ids into the dedupe filter", loaded[0]);
+        } catch (Exception e) {
+            log.warn("Could not load recent notification ids, dedupe filter starts empty: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claim an id for processing. False means the request was already processed, or is being
+     * processed right now, and must be skipped. Only a possible replay is checked against the history
+     * table. A successful claim must be followed by {@link #complete} or {@link #release}.
+     */
+    public boolean tryClaim(UUID id, boolean mayBeReplay) {
+        if (!enabled || id == null) {
+            return true;
+        }
+        if (claimed.asMap().putIfAbsent(id, Boolean.TRUE) != null) {
+            cacheDuplicates.increment();
+            return false;
+        }
+        if (mayBeReplay && mightHaveBeenProcessed(id) && existsInHistory(id)) {
+            // Stays claimed, so further copies are dropped from memory
+            historyDuplicates.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The claimed request was processed; keep it claimed until it expires.
+     */
+    public void complete(UUID id) {
+        if (enabled && id != null && bloomEnabled) {
+            remember(id);
+        }
+    }
+
+    /**
+     * Processing failed and the request will be redelivered; let the next copy through.
+     */
+    public void release(UUID id) {
+        if (enabled && id != null) {
+            claimed.invalidate(id);
+        }
+    }
+
+    private boolean mightHaveBeenProcessed(UUID id) {
+        return !bloomEnabled || currentBloom.mightContain(id) || previousBloom.mightContain(id);
+    }
+
+    private boolean existsInHistory(UUID id) {
+        try {
+            return historyRepository.existsByIdAndSentAtAfter(id.toString(), LocalDateTime.now().minus(ttl));
+        } catch (Exception e) {
+            // Sending a possible duplicate beats dropping a notification
+            log.warn("Dedupe history lookup failed for {}, processing it: {}", id, e.getMessage());
+            return false;
+        }
+    }
+
+    private void remember(UUID id) {
+        BloomFilter<UUID> bloom = currentBloom;
+        bloom.put(id);
+        if (bloom.approximateElementCount() >= bloomExpectedInsertions) {
+            rotate(bloom);
+        }
+    }
+
+    private synchronized void rotate(BloomFilter<UUID> full) {
+        if (currentBloom == full) {
+            previousBloom = full;
+            currentBloom = newBloom();
+        }
+    }
+}
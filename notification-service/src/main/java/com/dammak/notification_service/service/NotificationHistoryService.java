@@ -3,17 +3,96 @@ package com.dammak.notification_service.service;
 
 import com.dammak.notification_service.entity.NotificationHistory;
 import com.dammak.notification_service.model.NotificationStatus;
-import com.dammak.notification_service.repository.NotificationHistoryRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind store for notification history. Rows are buffered in memory and flushed by a single
+ * writer thread as JDBC batch inserts, once {@code batchSize} rows are waiting or {@code flushInterval}
+ * has passed since the oldest one, so the send path never waits on the database.
+ * <p>
+ * When the buffer is full, callers block for up to {@code offerTimeout} and then write their row
+ * inline. The writer stops after the Kafka listener containers and drains the whole buffer first, so a
+ * graceful shutdown loses nothing.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
-public class NotificationHistoryService {
+public class NotificationHistoryService implements SmartLifecycle {
+
+    // One row per id, holding its latest status. The partitioned table can only enforce (id, sent_at),
+    // and a retry or redelivery gets a new sent_at, so the id's row within the dedupe window before
+    // the sent_at is updated, moving it to the new sent_at, and a row is inserted only when the window
+    // has none. Both parts see the table as it was before the statement, so a status older than the
+    // stored one changes nothing. The bound keeps the lookups to the partitions of that window
+    static final String UPSERT_SQL = "WITH updated AS (UPDATE notification_history "
+            + "SET type = ?, recipient = ?, subject = ?, content = ?, success = ?, error_message = ?, "
+            + "sent_at = CAST(? AS timestamp) "
+            + "WHERE id = ? AND sent_at >= ? AND sent_at <= CAST(? AS timestamp)) "
+            + "INSERT INTO notification_history "
+            + "(id, type, recipient, subject, content, success, error_message, sent_at) "
+            + "SELECT ?, ?, ?, ?, ?, ?, ?, CAST(? AS timestamp) "
+            + "WHERE NOT EXISTS (SELECT 1 FROM notification_history WHERE id = ? AND sent_at >= ?) "
+            + "ON CONFLICT (id, sent_at) DO NOTHING";
+
+    private static final int FLUSH_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<NotificationHistory> buffer;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final Duration dedupeWindow;
+    private final Counter rowsWritten;
+    private final Counter rowsDropped;
+    private final Timer flushTimer;
 
-    private final NotificationHistoryRepository repository;
+    private volatile boolean running;
+    private Thread writer;
+
+    public NotificationHistoryService(JdbcTemplate jdbcTemplate,
+                                      @Value("${notification.history.buffer.capacity:10000}") int capacity,
+                                      @Value("${notification.history.buffer.batch-size:500}") int batchSize,
+                                      @Value("${notification.history.buffer.flush-interval:200ms}") Duration flushInterval,
+                                      @Value("${notification.history.buffer.offer-timeout:5s}") Duration offerTimeout,
+                                      @Value("${notification.history.dedupe-window:1d}") Duration dedupeWindow,
+                                      MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.dedupeWindow = dedupeWindow;
+        this.rowsWritten = Counter.builder("notification.history.rows.written")
+                .description("History rows persisted")
+                .register(meterRegistry);
+        this.rowsDropped = Counter.builder("notification.history.rows.dropped")
+                .description("History rows given up on after repeated write failures")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("notification.history.flush")
+                .description("Time to write one history batch")
+                .register(meterRegistry);
+        Gauge.builder("notification.history.buffer.size", buffer, BlockingQueue::size)
+                .description("History rows waiting to be written")
+                .register(meterRegistry);
+    }
 
     public void saveNotificationHistory(NotificationStatus status) {
         try {
@@ -25,10 +104,144 @@ public class NotificationHistoryService {
             history.setErrorMessage(status.isSuccess() ? null : status.getMessage());
             history.setSentAt(status.getSentAt());
 
-            repository.save(history);
-            log.debug("Saved notification history: {}", history.getId());
+            if (!running || !buffer.offer(history, offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                // Writer not running or still full after waiting: don't lose the row, write it ourselves
+                flush(List.of(history));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while buffering notification history for {}", status.getId());
         } catch (Exception e) {
             log.error("Failed to save notification history: {}", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void writeLoop() {
+        List<NotificationHistory> batch = new ArrayList<>(batchSize);
+        long intervalNanos = flushInterval.toNanos();
+        while (running) {
+            try {
+                NotificationHistory first = buffer.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < batchSize) {
+                    if (buffer.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    NotificationHistory next = remaining > 0 ? buffer.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Shutdown: whatever was polled plus everything still buffered
+        do {
+            buffer.drainTo(batch, batchSize - batch.size());
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        } while (!buffer.isEmpty());
+    }
+
+    private void flush(List<NotificationHistory> batch) {
+        for (int attempt = 1; attempt <= FLUSH_ATTEMPTS; attempt++) {
+            try {
+                Timer.Sample sample = Timer.start();
+                jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (ps, history) -> {
+                    Timestamp sentAt = history.getSentAt() != null ? Timestamp.valueOf(history.getSentAt()) : null;
+                    Timestamp windowStart = history.getSentAt() != null
+                            ? Timestamp.valueOf(history.getSentAt().minus(dedupeWindow)) : null;
+                    int index = setColumns(ps, 1, history, sentAt);
+                    ps.setString(index++, history.getId());
+                    ps.setTimestamp(index++, windowStart);
+                    ps.setTimestamp(index++, sentAt);
+                    ps.setString(index++, history.getId());
+                    index = setColumns(ps, index, history, sentAt);
+                    ps.setString(index++, history.getId());
+                    ps.setTimestamp(index, windowStart);
+                });
+                sample.stop(flushTimer);
+                rowsWritten.increment(batch.size());
+                log.debug("Saved {} notification history rows", batch.size());
+                return;
+            } catch (DataAccessException e) {
+                log.warn("History batch of {} failed (attempt {}/{}): {}",
+                        batch.size(), attempt, FLUSH_ATTEMPTS, e.getMessage());
+                if (attempt < FLUSH_ATTEMPTS && !sleepBeforeRetry(attempt)) {
+                    break;
+                }
+            }
+        }
+        rowsDropped.increment(batch.size());
+        log.error("Dropped {} notification history rows after {} failed attempts", batch.size(), FLUSH_ATTEMPTS);
+    }
+
+    // type to sent_at, in table order, from index; returns the next index
+    private static int setColumns(PreparedStatement ps, int index, NotificationHistory history, Timestamp sentAt)
+            throws SQLException {
+        ps.setString(index++, history.getType() != null ? history.getType().name() : null);
+        ps.setString(index++, history.getRecipient());
+        ps.setString(index++, history.getSubject());
+        ps.setString(index++, history.getContent());
+        ps.setBoolean(index++, history.isSuccess());
+        ps.setString(index++, history.getErrorMessage());
+        ps.setTimestamp(index++, sentAt);
+        return index;
+    }
+
+    private static boolean sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(200L * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "history-writer");
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Rows offered while the writer was finishing up
+        List<NotificationHistory> late = new ArrayList<>();
+        buffer.drainTo(late);
+        if (!late.isEmpty()) {
+            flush(late);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Below the listener containers' phase: they stop first, then the buffer is drained
+        return Integer.MAX_VALUE - 1000;
+    }
+}
@@ -0,0 +1,125 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.entity.NotificationHistory;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.model.NotificationStatusPage;
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read side of notification statuses. Single lookups are answered from {@link NotificationStatusCache}
+ * when the status is recent and from notification_history otherwise; listings by recipient always
+ * read the table, one keyset page at a time, so a page costs the same however deep it is.
+ */
+@Service
+public class NotificationLookupService {
+
+    private final NotificationStatusCache statusCache;
+    private final NotificationHistoryRepository historyRepository;
+    private final int maxPageSize;
+    private final Counter cacheHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public NotificationLookupService(NotificationStatusCache statusCache,
+                                     NotificationHistoryRepository historyRepository,
+                                     @Value("${notification.status.max-page-size:200}") int maxPageSize,
+                                     MeterRegistry meterRegistry) {
+        this.statusCache = statusCache;
+        this.historyRepository = historyRepository;
+        this.maxPageSize = maxPageSize;
+        this.cacheHits = lookupCounter(meterRegistry, "cache");
+        this.databaseHits = lookupCounter(meterRegistry, "database");
+        this.misses = lookupCounter(meterRegistry, "miss");
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String source) {
+        return Counter.builder("notification.status.lookups")
+                .description("Status lookups by id, by where they were answered from")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    public Optional<NotificationStatus> findStatus(UUID id) {
+        Optional<NotificationStatus> cached = statusCache.get(id);
+        if (cached.isPresent()) {
+            cacheHits.increment();
+            return cached;
+        }
+        Optional<NotificationStatus> stored = historyRepository.findFirstByIdOrderBySentAtDesc(id.toString()).map(NotificationLookupService::toStatus);
+        (stored.isPresent() ? databaseHits : misses).increment();
+        return stored;
+    }
+
+    /**
+     * A page of the recipient's notifications, newest first.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor was not issued by this service
+     */
+    public NotificationStatusPage findByRecipient(String recipient, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        // One extra row tells whether another page follows without a count query
+        Limit fetch = Limit.of(pageSize + 1);
+        List<NotificationHistory> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = historyRepository.findLatestByRecipient(recipient, fetch);
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = historyRepository.findByRecipientBefore(recipient, position.sentAt(), position.id(), fetch);
+        }
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            NotificationHistory last = rows.get(pageSize - 1);
+            nextCursor = new Cursor(last.getSentAt(), last.getId()).encode();
+        }
+        return new NotificationStatusPage(rows.stream().map(NotificationLookupService::toStatus).toList(), nextCursor);
+    }
+
+    // History keeps only the error text; successes get the same message the status had when sent
+    static NotificationStatus toStatus(NotificationHistory history) {
+        String message = history.isSuccess() ? history.getType() + " sent successfully" : history.getErrorMessage();
+        return new NotificationStatus(UUID.fromString(history.getId()), history.getType(), history.getRecipient(),
+                history.isSuccess(), message, history.getSentAt());
+    }
+
+    /**
+     * Position after the last row of a page. Opaque to clients: the sort key of that row, URL-safe
+     * Base64 encoded.
+     */
+    record Cursor(LocalDateTime sentAt, String id) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((sentAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('|');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(LocalDateTime.parse(decoded.substring(0, separator)), decoded.substring(separator + 1));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -1,17 +1,20 @@
 package com.dammak.notification_service.service;
 
+import com.dammak.notification_service.correlation.ReplyPartitionRouter;
 import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.kafka.producer.PriorityProducerRouter;
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 @Service
 @RequiredArgsConstructor
@@ -22,11 +25,17 @@ public class NotificationService {
     private final SmsService smsService;
     private final PushNotificationService pushNotificationService;
     private final NotificationHistoryService historyService;
-    private final KafkaProducer<NotificationRequest> notificationRequestKafkaProducer;
+    private final PriorityProducerRouter requestProducers;
     private final KafkaProducer<NotificationStatus> notificationStatusKafkaProducer;
+    private final ReplyPartitionRouter replyPartitionRouter;
+    private final ChannelConcurrencyLimiter channelLimiter;
+    private final PipelineMetrics pipelineMetrics;
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${notification.kafka.topic.low:notification-requests-low}")
+    private String lowPriorityTopic;
+
     @Value("${notification.kafka.topic.normal}")
     private String normalPriorityTopic;
 
@@ -39,42 +48,86 @@ public class NotificationService {
     private String responseTopic;
 
     public NotificationStatus processNotification(NotificationRequest request) {
+        return processNotification(request, null);
+    }
+
+    /**
+     * Process a request and publish its status to the reply partition of the instance waiting for it.
+     * A null replyPartition lets the default partitioner place the status.
+     */
+    public NotificationStatus processNotification(NotificationRequest request, Integer replyPartition) {
         log.info("Processing notification request: {}", request);
 
-        NotificationStatus status = switch (request.getType()) {
+        NotificationStatus status = channelLimiter.call(request.getType(), request.getPriority(), () -> switch (request.getType()) {
             case EMAIL -> emailService.sendEmail(request);
             case SMS -> smsService.sendSms(request);
             case PUSH -> pushNotificationService.sendPushNotification(request);
             default -> throw new IllegalArgumentException("Unsupported notification type: " + request.getType());
-        };
+        });
 
-        // Save notification history
+        // Save notification history; this is the hand-off to the write-behind buffer, the flush is timed there
+        long historyStart = System.nanoTime();
         historyService.saveNotificationHistory(status);
+        pipelineMetrics.recordSince(PipelineMetrics.Stage.HISTORY_PERSIST, request, historyStart);
 
-        notificationStatusKafkaProducer.sendEvent(responseTopic, status.getId().toString(), status); // Send success to notification-status-event topic
+        publishStatus(request, status, replyPartition); // Send success to notification-status-event topic
 
         return status;
     }
 
-    public void sendNotification(NotificationRequest request) throws ExecutionException, InterruptedException {
+    public void sendNotification(NotificationRequest request) {
         log.info("Sending notification request: {}", request);
-        CompletableFuture<SendResult<String, NotificationRequest>> response = switch (request.getPriority()) {
-            case HIGH -> notificationRequestKafkaProducer.sendEvent(highPriorityTopic, request.getId().toString(), request);
-            case NORMAL -> notificationRequestKafkaProducer.sendEvent(normalPriorityTopic, request.getId().toString(), request);
-            case CRITICAL -> notificationRequestKafkaProducer.sendEvent(criticalPriorityTopic, request.getId().toString(), request);
-            default -> throw new IllegalArgumentException("Unsupported priority: " + request.getPriority());
-        };
+        // Tag the request with our reply partition so the status comes back to this instance
+        ProducerRecord<String, NotificationRequest> record =
+                new ProducerRecord<>(topicFor(request), request.getId().toString(), request);
+        record.headers().add(replyPartitionRouter.replyHeader());
+        long produceStart = System.nanoTime();
+        CompletableFuture<SendResult<String, NotificationRequest>> response =
+                requestProducers.producerFor(request.getPriority()).sendEvent(record);
        response.thenApply(result -> {
+            pipelineMetrics.recordSince(PipelineMetrics.Stage.PRODUCE_ACK, request, produceStart);
             log.info("Notification sent successfully: {}", result);
            return null;
        }).exceptionally(ex -> {
             log.error("Failed to send notification", ex);
             NotificationStatus errorStatus = NotificationStatus.getError(request, ex.getMessage());
-            notificationStatusKafkaProducer.sendEvent(responseTopic, errorStatus.getId().toString(), errorStatus); // Send error to notification-status-event topic
+            publishStatus(request, errorStatus, replyPartitionRouter.localReplyPartition()); // Send error to notification-status-event topic
             return null;
         });
 
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Publish a request that nobody waits on, such as one line of a bulk upload. No reply partition is
+     * attached, so its status goes wherever the default partitioner puts it.
+     */
+    public CompletableFuture<SendResult<String, NotificationRequest>> publishRequest(NotificationRequest request) {
+        long produceStart = System.nanoTime();
+        return requestProducers.producerFor(request.getPriority()).sendEvent(
+                        new ProducerRecord<>(topicFor(request), request.getId().toString(), request))
+                .whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        pipelineMetrics.recordSince(PipelineMetrics.Stage.PRODUCE_ACK, request, produceStart);
+                    }
+                });
+    }
+
+    private String topicFor(NotificationRequest request) {
+        return switch (request.getPriority()) {
+            case LOW -> lowPriorityTopic;
+            case HIGH -> highPriorityTopic;
+            case NORMAL -> normalPriorityTopic;
+            case CRITICAL -> criticalPriorityTopic;
+            default -> throw new IllegalArgumentException("Unsupported priority: " + request.getPriority());
+        };
+    }
+
+    private void publishStatus(NotificationRequest request, NotificationStatus status, Integer replyPartition) {
+        long start = System.nanoTime();
+        notificationStatusKafkaProducer.sendEvent(
+                new ProducerRecord<>(responseTopic, replyPartition, status.getId().toString(), status))
+                .thenRun(() -> pipelineMetrics.recordSince(PipelineMetrics.Stage.STATUS_PUBLISH, request, start));
+    }
+
+}
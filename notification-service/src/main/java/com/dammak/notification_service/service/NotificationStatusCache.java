@@ -0,0 +1,53 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.model.NotificationStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Recent notification statuses held in memory, so lookups of notifications that were just sent never
+ * reach Postgres. Every instance fills its own copy from the whole status-events stream; nothing is
+ * written here on the send path.
+ */
+@Component
+public class NotificationStatusCache {
+
+    private final Cache<UUID, NotificationStatus> statuses;
+
+    public NotificationStatusCache(@Value("${notification.status.cache.max-size:100000}") long maxSize,
+                                   @Value("${notification.status.cache.ttl:1h}") Duration ttl,
+                                   MeterRegistry meterRegistry) {
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, statuses, "notification-status");
+    }
+
+    public Optional<NotificationStatus> get(UUID id) {
+        return Optional.ofNullable(statuses.getIfPresent(id));
+    }
+
+    /**
+     * Record a status from the stream. A retried notification can report more than once and the
+     * events are not ordered across partitions, so the latest sentAt wins.
+     */
+    public void put(NotificationStatus status) {
+        if (status == null || status.getId() == null) {
+            return;
+        }
+        statuses.asMap().merge(status.getId(), status, (current, update) ->
+                current.getSentAt() != null && update.getSentAt() != null
+                        && update.getSentAt().isBefore(current.getSentAt()) ? current : update);
+    }
+}
@@ -0,0 +1,67 @@
+package com.dammak.notification_service.service;
+
+
+import com.google.firebase.ErrorCode;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.twilio.exception.ApiException;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.springframework.mail.MailSendException;
+
+/**
+ * Recognises provider errors that mean "slow down" rather than "this message is bad": HTTP 429/503
+ * from Twilio, quota and availability errors from FCM, and transient 4xx replies from the SMTP relay.
+ */
+public final class ProviderThrottling {
+
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    private ProviderThrottling() {
+    }
+
+    public static boolean isThrottled(Throwable error) {
+        Throwable t = error;
+        for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++, t = t.getCause()) {
+            if (matches(t)) {
+                return true;
+            }
+            if (t instanceof MailSendException e) {
+                for (Exception failure : e.getMessageExceptions()) {
+                    if (isThrottled(failure)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Throwable t) {
+        if (t instanceof ApiException e) {
+            Integer status = e.getStatusCode();
+            return status != null && (status == 429 || status == 503);
+        }
+        if (t instanceof FirebaseMessagingException e) {
+            return e.getMessagingErrorCode() == MessagingErrorCode.QUOTA_EXCEEDED
+                    || e.getMessagingErrorCode() == MessagingErrorCode.UNAVAILABLE
+                    || e.getErrorCode() == ErrorCode.RESOURCE_EXHAUSTED;
+        }
+        if (t instanceof SMTPSendFailedException e) {
+            return isTransientSmtpReply(e.getReturnCode());
+        }
+        if (t instanceof SMTPAddressFailedException e) {
+            return isTransientSmtpReply(e.getReturnCode());
+        }
+        if (t instanceof SMTPSenderFailedException e) {
+            return isTransientSmtpReply(e.getReturnCode());
+        }
+        return false;
+    }
+
+    // 421 closing, 450-452 mailbox busy / local error / insufficient storage: try again later
+    private static boolean isTransientSmtpReply(int code) {
+        return code == 421 || (code >= 450 && code <= 452);
+    }
+}
@@ -2,50 +2,72 @@ package com.dammak.notification_service.service;
 
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
-import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.firebase.messaging.FirebaseMessagingException;
-import com.google.firebase.messaging.Message;
-import com.google.firebase.messaging.Notification;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.push.PushBatcher;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
+import io.micrometer.core.instrument.Counter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Push delivery through {@link PushBatcher}.
+ * <p>
+ * {@link #sendPushNotification} waits for its own message, so each caller contributes at most one
+ * message to a batch: batches are capped by the number of dispatch threads waiting at once
+ * ({@code notification.kafka.batch.parallelism}, or the channel limit with virtual threads), not by
+ * {@code notification.push.batch.max-size}. Callers that can go on without the result should use
+ * {@link #sendPushNotificationAsync} to fill batches up to the FCM limit.
+ */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class PushNotificationService {
 
+    private final PushBatcher pushBatcher;
+    private final Counter pushSuccessCounter;
+    private final Counter pushFailureCounter;
+    private final PipelineMetrics pipelineMetrics;
+
+    @Value("${notification.push.send-timeout:30s}")
+    private Duration sendTimeout;
 
     @CircuitBreaker(name = "pushService")
     @Retry(name = "pushService")
     public NotificationStatus sendPushNotification(NotificationRequest request) {
         try {
-             final FirebaseMessaging firebaseMessaging= FirebaseMessaging.getInstance();
-            Notification notification = Notification.builder()
-                    .setTitle(request.getSubject())
-                    .setBody(request.getContent())
-                    .build();
-
-            Message message = Message.builder()
-                    .setToken(request.getRecipient())
-                    .setNotification(notification)
-                    .putAllData(request.getTemplateData())
-                    .build();
-
-            String response = firebaseMessaging.send(message);
-
-            log.info("Push notification sent successfully to {}, response: {}", request.getRecipient(), response);
-            return NotificationStatus.getSuccess(request, "Push notification sent successfully");
-
-        } catch (FirebaseMessagingException e) {
+            // Joins the next FCM batch; the caller waits only for its own message's result
+            return sendPushNotificationAsync(request).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.error("Timed out sending push notification to {}", request.getRecipient());
+            return NotificationStatus.getError(request, "Push notification timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return NotificationStatus.getError(request, "Interrupted while sending push notification");
+        } catch (ExecutionException e) {
             log.error("Failed to send push notification to {}: {}", request.getRecipient(), e.getMessage());
             return NotificationStatus.getError(request, "Failed to send push notification: " + e.getMessage());
-
         }
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<NotificationStatus> sendPushNotificationAsync(NotificationRequest request) {
+        long start = System.nanoTime();
+        // Includes the batching window: that is part of what the provider call costs this message
+        return pushBatcher.submit(request).whenComplete((status, ex) -> {
+            pipelineMetrics.recordSince(PipelineMetrics.Stage.PROVIDER_CALL, request, start);
+            if (ex == null && status.isSuccess()) {
+                pushSuccessCounter.increment();
+            } else {
+                pushFailureCounter.increment();
+            }
+        });
+    }
+}
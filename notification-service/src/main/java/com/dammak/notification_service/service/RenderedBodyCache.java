@@ -0,0 +1,191 @@
+package com.dammak.notification_service.service;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rendered, MIME-encoded email bodies keyed by a SHA-256 of what they are made from: the template
+ * name and data, or the raw content. A campaign sending one template with the same data to many
+ * recipients renders and encodes it once, and every further message is parsed back from the cached
+ * bytes with only its recipient and subject set.
+ * <p>
+ * Parsed parts keep their encoded bytes, so sending copies them instead of re-encoding. Message-ID
+ * and Date are left out of the cached bytes, so every message still gets its own. The cache is
+ * bounded by the total bytes it holds; bodies personalised per recipient simply never hit.
+ */
+@Component
+public class RenderedBodyCache {
+
+    // Set per message, never cached
+    private static final String[] PER_MESSAGE_HEADERS = {"Message-ID", "Date", "To", "Cc", "Bcc", "Subject"};
+
+    private final EmailTemplateRenderer templateRenderer;
+    private final JavaMailSender mailSender;
+    private final boolean enabled;
+    private final Cache<String, byte[]> bodies;
+    private final Counter bytesSaved;
+
+    public RenderedBodyCache(EmailTemplateRenderer templateRenderer,
+                             JavaMailSender mailSender,
+                             @Value("${notification.email.body-cache.enabled:true}") boolean enabled,
+                             @Value("${notification.email.body-cache.max-size:64MB}") DataSize maxSize,
+                             @Value("${notification.email.body-cache.ttl:30m}") Duration ttl,
+                             MeterRegistry meterRegistry) {
+        this.templateRenderer = templateRenderer;
+        this.mailSender = mailSender;
+        this.enabled = enabled;
+        this.bodies = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, byte[] body) -> body.length)
+                .expireAfterAccess(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, bodies, "email-body");
+        this.bytesSaved = Counter.builder("notification.email.body-cache.bytes-saved")
+                .description("Encoded body bytes served from cache instead of rendered")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("notification.email.body-cache.hit-ratio", bodies, c -> c.stats().hitRate())
+                .description("Share of email bodies served from cache")
+                .register(meterRegistry);
+        Gauge.builder("notification.email.body-cache.weight", bodies,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Bytes of encoded bodies held")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A message ready to send to the request's recipient.
+     */
+    public MimeMessage createMessage(NotificationRequest request) throws MessagingException {
+        if (!enabled) {
+            MimeMessage message = newBody(request);
+            setPerMessageHeaders(message, request);
+            return message;
+        }
+
+        boolean[] rendered = {false};
+        byte[] body;
+        try {
+            body = bodies.get(key(request), key -> {
+                rendered[0] = true;
+                return encode(request);
+            });
+        } catch (EncodingFailure e) {
+            throw e.unwrap();
+        }
+        if (!rendered[0]) {
+            bytesSaved.increment(body.length);
+        }
+        MimeMessage message = mailSender.createMimeMessage(new ByteArrayInputStream(body));
+        setPerMessageHeaders(message, request);
+        return message;
+    }
+
+    private MimeMessage newBody(NotificationRequest request) throws MessagingException {
+        String content = templateRenderer.renderBody(request);
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        helper.setText(content, true);
+        return message;
+    }
+
+    private byte[] encode(NotificationRequest request) {
+        try {
+            MimeMessage message = newBody(request);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            message.writeTo(out, PER_MESSAGE_HEADERS);
+            return out.toByteArray();
+        } catch (MessagingException | IOException e) {
+            throw new EncodingFailure(e);
+        }
+    }
+
+    private static void setPerMessageHeaders(MimeMessage message, NotificationRequest request) throws MessagingException {
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(request.getRecipient()));
+        message.setSubject(request.getSubject(), StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * SHA-256 over the body's inputs. Every field is length-prefixed, so no two different inputs
+     * produce the same byte sequence to hash.
+     */
+    static String key(NotificationRequest request) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        String templateName = request.getTemplateName();
+        if (templateName == null || templateName.isEmpty()) {
+            digest.update((byte) 'C');
+            update(digest, request.getContent());
+        } else {
+            digest.update((byte) 'T');
+            update(digest, templateName);
+            Map<String, String> data = request.getTemplateData();
+            if (data != null) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(data).entrySet()) {
+                    update(digest, entry.getKey());
+                    update(digest, entry.getValue());
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    // Carries checked exceptions out of the cache loader
+    private static final class EncodingFailure extends RuntimeException {
+
+        private EncodingFailure(Exception cause) {
+            super(cause);
+        }
+
+        MessagingException unwrap() throws MessagingException {
+            Throwable cause = getCause();
+            if (cause instanceof MessagingException e) {
+                throw e;
+            }
+            return new MessagingException("Failed to encode email body", (Exception) cause);
+        }
+    }
+}
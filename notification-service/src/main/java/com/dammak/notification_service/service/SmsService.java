@@ -4,75 +4,166 @@ package com.dammak.notification_service.service;
 
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
-import com.twilio.Twilio;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.type.PhoneNumber;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
-import lombok.RequiredArgsConstructor;
 import io.micrometer.core.instrument.Counter;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class SmsService {
 
-    @Value("${twilio.account-sid}")
-    private String twilioAccountSid;
-
-    @Value("${twilio.auth-token}")
-    private String twilioAuthToken;
-
     @Value("${twilio.phone-number}")
     private String twilioPhoneNumber;
 
+    private final TwilioRestClient twilioRestClient;
+    private final Executor smsSendExecutor;
     private final Counter smsSuccessCounter;
     private final Counter smsFailureCounter;
     private final FailedNotificationService failedNotificationService;
-
-    private boolean initialized = false;
-
-    private void initTwilio() {
-        if (!initialized) {
-            Twilio.init(twilioAccountSid, twilioAuthToken);
-            initialized = true;
-        }
+    private final PipelineMetrics pipelineMetrics;
+    private final ChannelConcurrencyLimiter channelLimiter;
+
+    // Caps concurrent Twilio requests for sendSmsAsync callers, which bypass the dispatch limiter; the
+    // limiter's SMS ceiling defaults to the same size, so dispatched sends never queue here twice.
+    // Sends beyond the cap wait in the queue rather than on the caller's thread
+    private final Semaphore inFlight;
+    private final BlockingQueue<PendingSms> waiting;
+
+    public SmsService(TwilioRestClient twilioRestClient,
+                      @Qualifier("smsSendExecutor") Executor smsSendExecutor,
+                      Counter smsSuccessCounter,
+                      Counter smsFailureCounter,
+                      FailedNotificationService failedNotificationService,
+                      @Value("${notification.sms.max-in-flight:200}") int maxInFlight,
+                      @Value("${notification.sms.queue-capacity:10000}") int queueCapacity,
+                      MeterRegistry meterRegistry,
+                      PipelineMetrics pipelineMetrics,
+                      ChannelConcurrencyLimiter channelLimiter) {
+        this.twilioRestClient = twilioRestClient;
+        this.smsSendExecutor = smsSendExecutor;
+        this.smsSuccessCounter = smsSuccessCounter;
+        this.smsFailureCounter = smsFailureCounter;
+        this.failedNotificationService = failedNotificationService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.channelLimiter = channelLimiter;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.waiting = new LinkedBlockingQueue<>(queueCapacity);
+        Gauge.builder("notification.sms.in-flight", inFlight, s -> maxInFlight - s.availablePermits())
+                .description("Twilio requests currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("notification.sms.queued", waiting, BlockingQueue::size)
+                .description("SMS waiting for an in-flight slot")
+                .register(meterRegistry);
     }
 
     @CircuitBreaker(name = "smsService", fallbackMethod = "fallbackSms")
     @Retry(name = "smsService")
     public NotificationStatus sendSms(NotificationRequest request) {
-        try {
-            initTwilio();
+        return sendSmsAsync(request).join();
+    }
+
+    /**
+     * Send on the SMS executor once an in-flight slot is free. Never blocks the caller: without a free
+     * slot the send is queued, and with the queue full the future completes with an error status at
+     * once. The future always completes with a status; failures are counted and stored for retry like
+     * the synchronous path.
+     */
+    public CompletableFuture<NotificationStatus> sendSmsAsync(NotificationRequest request) {
+        String content = request.getContent();
+        if (content == null || content.isEmpty()) {
+            content = "No content provided";
+        }
+        PendingSms pending = new PendingSms(request, content, new CompletableFuture<>());
+        if (!waiting.offer(pending)) {
+            return CompletableFuture.completedFuture(failed(request, new IllegalStateException("SMS send queue is full")));
+        }
+        drain();
+        return pending.result();
+    }
 
-            String content = request.getContent();
-            if (content == null || content.isEmpty()) {
-                content = "No content provided";
+    // Runs after every enqueue and every release, so a queued send can't miss a freed slot
+    private void drain() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            PendingSms next = waiting.poll();
+            if (next == null) {
+                inFlight.release();
+                continue;
             }
+            send(next);
+        }
+    }
 
-            Message message = Message.creator(
-                    new PhoneNumber(request.getRecipient()),
-                    new PhoneNumber(twilioPhoneNumber),
-                    content
-            ).create();
+    private void send(PendingSms pending) {
+        NotificationRequest request = pending.request();
+        CompletableFuture<Message> send;
+        try {
+            send = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return Message.creator(
+                            new PhoneNumber(request.getRecipient()),
+                            new PhoneNumber(twilioPhoneNumber),
+                            pending.body()
+                    ).create(twilioRestClient);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    pipelineMetrics.record(PipelineMetrics.Stage.PROVIDER_CALL, request, elapsed);
+                    channelLimiter.recordLatency(NotificationRequest.NotificationType.SMS, elapsed);
+                }
+            }, smsSendExecutor);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            try {
+                pending.result().complete(failed(request, e));
+            } finally {
+                drain();
+            }
+            return;
+        }
 
+        send.handle((message, ex) -> {
+            inFlight.release();
+            if (ex != null) {
+                return failed(request, ex.getCause() != null ? ex.getCause() : ex);
+            }
             smsSuccessCounter.increment();
             log.info("SMS sent successfully to {}, SID: {}", request.getRecipient(), message.getSid());
-            return NotificationStatus.getSuccess(request,"SMS sent successfully");
+            return NotificationStatus.getSuccess(request, "SMS sent successfully");
+        }).whenComplete((status, ex) -> {
+            if (ex != null) {
+                pending.result().completeExceptionally(ex);
+            } else {
+                pending.result().complete(status);
+            }
+            drain();
+        });
+    }
 
-        } catch (Exception e) {
-            smsFailureCounter.increment();
-            log.error("Failed to send SMS to {}: {}", request.getRecipient(), e.getMessage());
-            failedNotificationService.saveFailedNotification(request, e.getMessage());
-            return NotificationStatus.getError(request, "Failed to send SMS: " + e.getMessage());
+    private NotificationStatus failed(NotificationRequest request, Throwable e) {
+        smsFailureCounter.increment();
+        if (ProviderThrottling.isThrottled(e)) {
+            channelLimiter.reportThrottled(NotificationRequest.NotificationType.SMS);
         }
+        log.error("Failed to send SMS to {}: {}", request.getRecipient(), e.getMessage());
+        failedNotificationService.saveFailedNotification(request, e.getMessage());
+        return NotificationStatus.getError(request, "Failed to send SMS: " + e.getMessage());
     }
 
     public NotificationStatus fallbackSms(NotificationRequest request, Exception e) {
@@ -80,4 +171,8 @@ public class SmsService {
         failedNotificationService.saveFailedNotification(request, "Circuit breaker triggered: " + e.getMessage());
         return NotificationStatus.getError(request, "SMS service temporarily unavailable");
     }
-}
\ No newline at end of file
+
+    private record PendingSms(NotificationRequest request, String body,
+                              CompletableFuture<NotificationStatus> result) {
+    }
+}
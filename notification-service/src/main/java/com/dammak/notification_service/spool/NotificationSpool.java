@@ -0,0 +1,291 @@
+package com.dammak.notification_service.spool;
+
+
+import com.dammak.notification_service.kafka.producer.PriorityProducerRouter;
+import com.dammak.notification_service.kafka.serialization.NotificationCodec;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.NotificationService;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local durable hand-off for incoming requests, so accepting one does not depend on Kafka.
+ * <p>
+ * Requests are appended to a {@link SegmentSpool} in their binary encoding and acknowledged once on
+ * disk. A forwarder thread publishes them to their priority topics in the order they were appended,
+ * a batch at a time, and commits the spool after every record of the batch is acked. A failed
+ * record is retried with backoff, together with the ones after it, before the forwarder moves on,
+ * so a Kafka outage only grows the spool. Records sent twice this way, or again after a crash
+ * between publishing and committing, are dropped by the consumers' deduplication. Any other failure
+ * of the forwarder, such as a corrupt segment, is logged and retried with the same backoff; the
+ * {@code notification.spool.forwarder.consecutive-failures} gauge stays above zero while it lasts.
+ */
+@Component
+@Slf4j
+public class NotificationSpool implements SmartLifecycle {
+
+    private final NotificationService notificationService;
+    private final PriorityProducerRouter requestProducers;
+    private final boolean enabled;
+    private final Path directory;
+    private final DataSize segmentSize;
+    private final DataSize maxSize;
+    private final Duration fsyncLinger;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final MeterRegistry meterRegistry;
+    private final Counter appendedCounter;
+    private final Counter forwardedCounter;
+    private final Counter discardedCounter;
+    private final AtomicInteger forwarderFailures = new AtomicInteger();
+
+    private volatile SegmentSpool spool;
+    private volatile boolean running;
+    private Thread forwarder;
+
+    public NotificationSpool(NotificationService notificationService,
+                             PriorityProducerRouter requestProducers,
+                             @Value("${notification.spool.enabled:true}") boolean enabled,
+                             @Value("${notification.spool.directory:data/spool}") Path directory,
+                             @Value("${notification.spool.segment-size:64MB}") DataSize segmentSize,
+                             @Value("${notification.spool.max-size:1GB}") DataSize maxSize,
+                             @Value("${notification.spool.fsync-linger:1ms}") Duration fsyncLinger,
+                             @Value("${notification.spool.batch-size:500}") int batchSize,
+                             @Value("${notification.spool.retry.initial-backoff:500ms}") Duration initialBackoff,
+                             @Value("${notification.spool.retry.max-backoff:30s}") Duration maxBackoff,
+                             MeterRegistry meterRegistry) {
+        this.notificationService = notificationService;
+        this.requestProducers = requestProducers;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.fsyncLinger = fsyncLinger;
+        this.batchSize = batchSize;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.meterRegistry = meterRegistry;
+        this.appendedCounter = recordCounter(meterRegistry, "appended");
+        this.forwardedCounter = recordCounter(meterRegistry, "forwarded");
+        this.discardedCounter = recordCounter(meterRegistry, "discarded");
+        Gauge.builder("notification.spool.backlog", this, s -> s.spool != null ? s.spool.backlogBytes() : 0)
+                .description("Spooled bytes not yet published to Kafka")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("notification.spool.forwarder.consecutive-failures", forwarderFailures, AtomicInteger::get)
+                .description("Forwarder passes in a row that failed with an unexpected error; 0 when healthy")
+                .register(meterRegistry);
+    }
+
+    private static Counter recordCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("notification.spool.records")
+                .description("Spooled requests by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Whether a request should be spooled rather than published directly: always when the client
+     * asked not to wait, and while the circuit breaker of its priority's producer is open, since a
+     * direct publish would only fail.
+     */
+    public boolean shouldSpool(NotificationRequest request, boolean respondAsync) {
+        if (spool == null) {
+            return false;
+        }
+        if (respondAsync) {
+            return true;
+        }
+        CircuitBreaker.State state = requestProducers.producerFor(request.getPriority()).getCircuitBreaker().getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    /**
+     * Append a request; the future completes once it is on disk.
+     */
+    public CompletableFuture<Void> append(NotificationRequest request) {
+        SegmentSpool target = spool;
+        if (target == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Spool is not running"));
+        }
+        try {
+            return target.append(NotificationCodec.encode(request)).thenRun(() -> {
+                appendedCounter.increment();
+                LockSupport.unpark(forwarder);
+            });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void forwardLoop() {
+        long backoffNanos = initialBackoff.toNanos();
+        while (running) {
+            try {
+                if (!forwardBatch()) {
+                    return;
+                }
+                forwarderFailures.set(0);
+                backoffNanos = initialBackoff.toNanos();
+            } catch (RuntimeException e) {
+                // Leaving the loop would stop forwarding silently while appends keep succeeding.
+                // Whatever the failed pass read but did not commit is read again
+                spool.rewind();
+                int failures = forwarderFailures.incrementAndGet();
+                log.error("Spool forwarder failed ({} in a row), retrying in {} ms: {}",
+                        failures, TimeUnit.NANOSECONDS.toMillis(backoffNanos), e.getMessage(), e);
+                LockSupport.parkNanos(this, backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, maxBackoff.toNanos());
+            }
+        }
+    }
+
+    // False when stopped before the batch was published
+    private boolean forwardBatch() {
+        List<byte[]> records = spool.read(batchSize);
+        if (records.isEmpty()) {
+            LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+            return true;
+        }
+        List<NotificationRequest> requests = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            try {
+                requests.add(NotificationCodec.decodeRequest(record));
+            } catch (SerializationException e) {
+                discardedCounter.increment();
+                log.error("Discarding unreadable spooled request: {}", e.getMessage());
+            }
+        }
+        if (!publishAll(requests)) {
+            // Stopped while Kafka was still failing; the batch is read again on the next start
+            return false;
+        }
+        try {
+            spool.commit(spool.readPosition());
+        } catch (IOException e) {
+            log.error("Failed to commit spool position: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    // Publishes until every request is acked. After a failure everything from the first failed
+    // request on is sent again, so later requests never overtake it; the repeats are deduplicated
+    private boolean publishAll(List<NotificationRequest> requests) {
+        List<NotificationRequest> remaining = requests;
+        long backoffNanos = initialBackoff.toNanos();
+        while (true) {
+            remaining = remaining.subList(publish(remaining), remaining.size());
+            if (remaining.isEmpty()) {
+                return true;
+            }
+            if (!running) {
+                return false;
+            }
+            log.warn("{} spooled requests not accepted by Kafka, retrying in {} ms",
+                    remaining.size(), TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+            LockSupport.parkNanos(this, backoffNanos);
+            backoffNanos = Math.min(backoffNanos * 2, maxBackoff.toNanos());
+        }
+    }
+
+    // Index of the first request Kafka did not ack, or the size if all were
+    private int publish(List<NotificationRequest> requests) {
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>(requests.size());
+        for (NotificationRequest request : requests) {
+            CompletableFuture<?> send;
+            try {
+                send = notificationService.publishRequest(request);
+            } catch (RuntimeException e) {
+                send = CompletableFuture.failedFuture(e);
+            }
+            sends.add(send.handle((result, ex) -> ex == null));
+        }
+        int firstFailed = requests.size();
+        for (int i = 0; i < requests.size(); i++) {
+            if (!sends.get(i).join()) {
+                firstFailed = Math.min(firstFailed, i);
+            } else if (firstFailed == requests.size()) {
+                forwardedCounter.increment();
+            }
+        }
+        return firstFailed;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            spool = SegmentSpool.open(directory, (int) segmentSize.toBytes(), maxSize.toBytes(), fsyncLinger,
+                    meterRegistry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open notification spool in " + directory, e);
+        }
+        running = true;
+        forwarder = Thread.ofPlatform().name("spool-forwarder").unstarted(this::forwardLoop);
+        forwarder.start();
+        log.info("Notification spool open in {}", directory.toAbsolutePath());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(forwarder);
+        try {
+            forwarder.join(TimeUnit.SECONDS.toMillis(30));
+            if (forwarder.isAlive()) {
+                // The spool must not be closed under a reader; what is left to wait for are sends,
+                // which the producer's delivery timeout bounds
+                log.warn("Spool forwarder still publishing after 30s, interrupting it");
+                forwarder.interrupt();
+                forwarder.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for the spool forwarder; leaving the spool open");
+            return;
+        }
+        SegmentSpool closing = spool;
+        spool = null;
+        try {
+            closing.close();
+        } catch (IOException e) {
+            log.warn("Failed to close notification spool: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Below the web server's phase: opened before requests arrive, closed after they stop
+        return Integer.MAX_VALUE - 4096;
+    }
+}
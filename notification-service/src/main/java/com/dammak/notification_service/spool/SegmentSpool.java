@@ -0,0 +1,448 @@
+package com.dammak.notification_service.spool;
+
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of opaque records in memory-mapped segment files, read back in order by a single
+ * consumer.
+ * <p>
+ * A record is {@code length, crc32c, payload}; a length of -1 ends a segment early and 0 marks
+ * space not yet written. Positions are byte offsets in one logical stream: a segment file is named
+ * after the position of its first byte and the next segment starts where it ends.
+ * <p>
+ * Appends only copy into the mapping. A flusher thread forces the written range to disk and then
+ * completes the futures of every record it covered, so one fsync serves all appends that arrived
+ * while the previous one ran. Only flushed records are handed to the reader. The reader's progress
+ * is persisted by {@link #commit}, after which fully consumed segments are deleted. On open, the
+ * tail of the last segment is scanned and anything after the first record with a bad checksum
+ * (a write torn by a crash, which was never acknowledged) is discarded.
+ */
+@Slf4j
+public final class SegmentSpool implements AutoCloseable {
+
+    /**
+     * The spool already holds its maximum size of records the reader has not committed.
+     */
+    public static final class SpoolFullException extends IllegalStateException {
+
+        SpoolFullException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".seg";
+
+    private record Segment(long base, int size, Path path, MappedByteBuffer buffer) {
+
+        long end() {
+            return base + size;
+        }
+    }
+
+    private record Pending(long end, CompletableFuture<Void> durable) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final long lingerNanos;
+    private final FileChannel checkpoint;
+    private final Timer fsyncTimer;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment current;
+    private long writePosition;
+
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final Thread flusher;
+    private volatile long flushedPosition;
+    private volatile long committedPosition;
+    private volatile boolean closed;
+
+    // Reader thread only
+    private volatile long readPosition;
+
+    private SegmentSpool(Path directory, int segmentSize, long maxBytes, Duration linger, MeterRegistry meterRegistry)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.lingerNanos = linger.toNanos();
+        this.fsyncTimer = Timer.builder("notification.spool.fsync")
+                .description("Time to force spooled records to disk")
+                .register(meterRegistry);
+        Files.createDirectories(directory);
+        this.checkpoint = FileChannel.open(directory.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        this.flusher = Thread.ofPlatform().name("spool-flusher").daemon(true).unstarted(this::flushLoop);
+        flusher.start();
+    }
+
+    /**
+     * Open the spool in {@code directory}, creating it if needed and recovering what a previous run
+     * left behind.
+     *
+     * @param linger how long the flusher waits for more appends before forcing a batch to disk
+     */
+    public static SegmentSpool open(Path directory, int segmentSize, long maxBytes, Duration linger,
+                                    MeterRegistry meterRegistry) throws IOException {
+        return new SegmentSpool(directory, segmentSize, maxBytes, linger, meterRegistry);
+    }
+
+    /**
+     * Append a record. The future completes once the record is on disk, or fails if forcing it did.
+     *
+     * @throws SpoolFullException if the uncommitted records already take up the maximum size
+     */
+    public CompletableFuture<Void> append(byte[] payload) {
+        int size = HEADER + payload.length;
+        if (payload.length == 0 || size > segmentSize - Integer.BYTES) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit a segment");
+        }
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        int crc = crc(payload);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Spool is closed");
+            }
+            if (writePosition + size - committedPosition > maxBytes) {
+                throw new SpoolFullException("Spool holds " + (writePosition - committedPosition) + " uncommitted bytes");
+            }
+            int offset = (int) (writePosition - current.base());
+            // Always leave room for the end-of-segment marker
+            if (offset + size > current.size() - Integer.BYTES) {
+                current.buffer().putInt(offset, END_OF_SEGMENT);
+                current = createSegment(current.end(), segmentSize);
+                writePosition = current.base();
+                offset = 0;
+            }
+            MappedByteBuffer buffer = current.buffer();
+            buffer.putInt(offset + Integer.BYTES, crc);
+            buffer.put(offset + HEADER, payload);
+            buffer.putInt(offset, payload.length);
+            writePosition += size;
+            pending.add(new Pending(writePosition, durable));
+        }
+        LockSupport.unpark(flusher);
+        return durable;
+    }
+
+    /**
+     * Up to {@code max} flushed records after the last one returned. Reader thread only.
+     */
+    public List<byte[]> read(int max) {
+        List<byte[]> records = new ArrayList<>(Math.min(max, 64));
+        long position = readPosition;
+        long limit = flushedPosition;
+        Segment segment = null;
+        while (records.size() < max && position < limit) {
+            if (segment == null || position >= segment.end()) {
+                segment = segmentAt(position);
+            }
+            int offset = (int) (position - segment.base());
+            int length = segment.buffer().getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                position = segment.end();
+                continue;
+            }
+            byte[] payload = length > 0 && offset + HEADER + length <= segment.size() ? new byte[length] : null;
+            if (payload != null) {
+                segment.buffer().get(offset + HEADER, payload);
+            }
+            if (payload == null || crc(payload) != segment.buffer().getInt(offset + Integer.BYTES)) {
+                synchronized (lock) {
+                    if (segment == current) {
+                        throw new IllegalStateException("Corrupt record at spool position " + position);
+                    }
+                }
+                log.error("Corrupt record at spool position {}; skipping the rest of {}", position, segment.path());
+                position = segment.end();
+                continue;
+            }
+            records.add(payload);
+            position += HEADER + length;
+        }
+        readPosition = position;
+        return records;
+    }
+
+    private Segment segmentAt(long position) {
+        synchronized (lock) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+            if (entry == null || position >= entry.getValue().end()) {
+                throw new IllegalStateException("No segment holds spool position " + position);
+            }
+            return entry.getValue();
+        }
+    }
+
+    /**
+     * Position after the last record returned by {@link #read}.
+     */
+    public long readPosition() {
+        return readPosition;
+    }
+
+    /**
+     * Read again from the last committed position, as after a restart. Reader thread only.
+     */
+    public void rewind() {
+        readPosition = committedPosition;
+    }
+
+    /**
+     * Persist that everything before {@code position} has been consumed, and delete the segments
+     * that lie entirely before it. Records after it are read again after a restart.
+     */
+    public void commit(long position) throws IOException {
+        if (position <= committedPosition) {
+            return;
+        }
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, position);
+        checkpoint.write(value, 0);
+        checkpoint.force(false);
+        committedPosition = position;
+
+        List<Segment> consumed = new ArrayList<>();
+        synchronized (lock) {
+            while (!segments.isEmpty() && segments.firstEntry().getValue() != current
+                    && segments.firstEntry().getValue().end() <= position) {
+                consumed.add(segments.pollFirstEntry().getValue());
+            }
+        }
+        for (Segment segment : consumed) {
+            Files.deleteIfExists(segment.path());
+        }
+    }
+
+    /**
+     * Bytes appended but not yet committed by the reader.
+     */
+    public long backlogBytes() {
+        synchronized (lock) {
+            return writePosition - committedPosition;
+        }
+    }
+
+    /**
+     * Whether every flushed record has been read.
+     */
+    public boolean isDrained() {
+        return readPosition >= flushedPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint.close();
+    }
+
+    private void flushLoop() {
+        while (!closed || !pending.isEmpty()) {
+            if (pending.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            if (lingerNanos > 0 && !closed) {
+                LockSupport.parkNanos(this, lingerNanos);
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        long target;
+        List<Segment> dirty;
+        synchronized (lock) {
+            target = writePosition;
+            Long first = segments.floorKey(flushedPosition);
+            dirty = new ArrayList<>(segments.subMap(first != null ? first : segments.firstKey(), true,
+                    current.base(), true).values());
+        }
+        long flushed = flushedPosition;
+        Timer.Sample sample = Timer.start();
+        try {
+            for (Segment segment : dirty) {
+                int from = (int) (Math.max(flushed, segment.base()) - segment.base());
+                int to = (int) (Math.min(target, segment.end()) - segment.base());
+                // A rolled segment is forced to its end, which covers its end-of-segment marker
+                if (segment != dirty.get(dirty.size() - 1)) {
+                    to = segment.size();
+                }
+                if (to > from) {
+                    segment.buffer().force(from, to - from);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            log.error("Failed to force spool to disk: {}", e.getMessage());
+            failPendingUpTo(target, e);
+            return;
+        }
+        sample.stop(fsyncTimer);
+        flushedPosition = target;
+
+        Pending next;
+        while ((next = pending.peek()) != null && next.end() <= target) {
+            pending.poll();
+            next.durable().complete(null);
+        }
+    }
+
+    private void failPendingUpTo(long target, Exception cause) {
+        Pending next;
+        while ((next = pending.peek()) != null && next.end() <= target) {
+            pending.poll();
+            next.durable().completeExceptionally(cause);
+        }
+    }
+
+    private void recover() throws IOException {
+        long committed = 0;
+        if (checkpoint.size() >= Long.BYTES) {
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+            checkpoint.read(value, 0);
+            committed = value.getLong(0);
+        }
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            int size = (int) Files.size(path);
+            if (base + size <= committed) {
+                Files.delete(path);
+                continue;
+            }
+            segments.put(base, new Segment(base, size, path, map(path, size)));
+        }
+
+        if (segments.isEmpty()) {
+            current = createSegment(committed, segmentSize);
+            writePosition = committed;
+        } else {
+            current = segments.lastEntry().getValue();
+            int tail = recoverTail(current);
+            writePosition = current.base() + tail;
+            if (current.buffer().getInt(tail) == END_OF_SEGMENT) {
+                // Rolled, but the next segment was never created
+                current = createSegment(current.end(), segmentSize);
+                writePosition = current.base();
+            }
+        }
+        committedPosition = Math.max(committed, segments.firstKey());
+        readPosition = committedPosition;
+        flushedPosition = writePosition;
+        if (writePosition > committedPosition) {
+            log.info("Recovered {} spooled bytes in {} segment(s) from {}",
+                    writePosition - committedPosition, segments.size(), directory);
+        }
+    }
+
+    // Offset after the last intact record of the segment, or of its end marker; a torn tail is zeroed
+    private int recoverTail(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer();
+        int offset = 0;
+        while (offset <= segment.size() - Integer.BYTES) {
+            int length = buffer.getInt(offset);
+            if (length == 0 || length == END_OF_SEGMENT) {
+                return offset;
+            }
+            if (length < 0 || offset + HEADER + length > segment.size()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER, payload);
+            if (crc(payload) != buffer.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        log.warn("Discarding torn spool tail at position {} of {}", segment.base() + offset, segment.path());
+        byte[] zeros = new byte[8192];
+        for (int i = offset; i < segment.size(); i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, segment.size() - i));
+        }
+        buffer.force();
+        return offset;
+    }
+
+    private Segment createSegment(long base, int size) {
+        Path path = directory.resolve(String.format("%020d%s", base, SUFFIX));
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(size);
+            }
+            syncDirectory();
+            Segment segment = new Segment(base, size, path, map(path, size));
+            segments.put(base, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create spool segment " + path, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // Makes a new segment's directory entry durable; not every platform can open a directory
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync spool directory: {}", e.getMessage());
+        }
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
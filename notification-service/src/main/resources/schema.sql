@@ -5,8 +5,44 @@
 --                           locked_by VARCHAR(255),
 --                           PRIMARY KEY (name)
 -- )
+
+-- Both tables are range partitioned by day on their timestamp. PartitionMaintenance creates the
+-- daily partitions ahead of time and drops the ones past retention; the default partition only
+-- catches rows outside every created range. Primary keys must include the partition key.
+
+-- Migration from the plain tables Hibernate used to create: CREATE TABLE IF NOT EXISTS would keep
+-- them as they are. A plain table is renamed to <table>_unpartitioned together with its indexes,
+-- and its rows are copied into the partitioned table further down. The session lock keeps other
+-- instances starting at the same time out until the copy is done. It outlives a failed statement,
+-- so the migration blocks release it before re-raising an error.
+SELECT pg_advisory_lock(hashtext('notification-service schema.sql'));
+
+DO '
+DECLARE
+    legacy RECORD;
+    idx RECORD;
+BEGIN
+    FOR legacy IN
+        SELECT c.oid, c.relname FROM pg_class c
+        WHERE c.relname IN (''notification_history'', ''failed_notifications'')
+          AND c.relnamespace = current_schema()::regnamespace
+          AND c.relkind = ''r''
+    LOOP
+        FOR idx IN SELECT i.relname FROM pg_index x JOIN pg_class i ON i.oid = x.indexrelid WHERE x.indrelid = legacy.oid
+        LOOP
+            EXECUTE format(''ALTER INDEX %I RENAME TO %I'', idx.relname, idx.relname || ''_unpartitioned'');
+        END LOOP;
+        EXECUTE format(''ALTER TABLE %I RENAME TO %I'', legacy.relname, legacy.relname || ''_unpartitioned'');
+        RAISE NOTICE ''Migrating unpartitioned table % to a partitioned one'', legacy.relname;
+    END LOOP;
+EXCEPTION WHEN OTHERS THEN
+    PERFORM pg_advisory_unlock(hashtext(''notification-service schema.sql''));
+    RAISE;
+END
+';
+
 CREATE TABLE IF NOT EXISTS failed_notifications (
-                                                    id VARCHAR(36) NOT NULL PRIMARY KEY,
+                                                    id VARCHAR(36) NOT NULL,
     type VARCHAR(10) NOT NULL,
     recipient VARCHAR(255) NOT NULL,
     subject VARCHAR(255),
@@ -14,7 +50,58 @@ CREATE TABLE IF NOT EXISTS failed_notifications (
     template_name VARCHAR(100),
     template_data TEXT,
     retry_count INT DEFAULT 0,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     last_retry TIMESTAMP,
-    error_message VARCHAR(500)
-    );
\ No newline at end of file
+    next_retry_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    error_message VARCHAR(500),
+    PRIMARY KEY (id, created_at)
+    ) PARTITION BY RANGE (created_at);
+CREATE TABLE IF NOT EXISTS failed_notifications_default PARTITION OF failed_notifications DEFAULT;
+CREATE INDEX IF NOT EXISTS idx_failed_notifications_next_retry_at ON failed_notifications (next_retry_at);
+
+CREATE TABLE IF NOT EXISTS notification_history (
+    id VARCHAR(36) NOT NULL,
+    type VARCHAR(10),
+    recipient VARCHAR(255),
+    subject VARCHAR(255),
+    content VARCHAR(1000),
+    success BOOLEAN NOT NULL,
+    error_message VARCHAR(500),
+    sent_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (id, sent_at)
+    ) PARTITION BY RANGE (sent_at);
+CREATE TABLE IF NOT EXISTS notification_history_default PARTITION OF notification_history DEFAULT;
+CREATE INDEX IF NOT EXISTS idx_notification_history_sent_at ON notification_history (sent_at);
+CREATE INDEX IF NOT EXISTS idx_notification_history_recipient_sent_at ON notification_history (recipient, sent_at DESC, id DESC);
+
+-- Rows of migrated tables land in the default partition. PartitionMaintenance cannot create the
+-- daily partition of a day the default partition holds rows of, so that day keeps writing there
+DO '
+BEGIN
+    IF to_regclass(''failed_notifications_unpartitioned'') IS NOT NULL THEN
+        -- Tables from before the retry schedule have no next_retry_at; their rows are due right away
+        ALTER TABLE failed_notifications_unpartitioned ADD COLUMN IF NOT EXISTS next_retry_at TIMESTAMP;
+        INSERT INTO failed_notifications (id, type, recipient, subject, content, template_name, template_data,
+                                          retry_count, created_at, last_retry, next_retry_at, error_message)
+        SELECT id, type, recipient, subject, content, template_name, template_data,
+               retry_count, COALESCE(created_at, CURRENT_TIMESTAMP), last_retry,
+               COALESCE(next_retry_at, created_at, CURRENT_TIMESTAMP), error_message
+        FROM failed_notifications_unpartitioned
+        ON CONFLICT DO NOTHING;
+        DROP TABLE failed_notifications_unpartitioned;
+    END IF;
+    IF to_regclass(''notification_history_unpartitioned'') IS NOT NULL THEN
+        INSERT INTO notification_history (id, type, recipient, subject, content, success, error_message, sent_at)
+        SELECT id, type, recipient, subject, content, success, error_message, sent_at
+        FROM notification_history_unpartitioned
+        WHERE sent_at IS NOT NULL
+        ON CONFLICT DO NOTHING;
+        DROP TABLE notification_history_unpartitioned;
+    END IF;
+EXCEPTION WHEN OTHERS THEN
+    PERFORM pg_advisory_unlock(hashtext(''notification-service schema.sql''));
+    RAISE;
+END
+';
+
+SELECT pg_advisory_unlock(hashtext('notification-service schema.sql'));
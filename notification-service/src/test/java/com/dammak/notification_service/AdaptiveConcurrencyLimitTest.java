@@ -0,0 +1,64 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.service.AdaptiveConcurrencyLimit;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    void backsOffOncePerRoundTripAndNeverBelowTheFloor() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 100, 0.5, 2.0);
+        limit.onSample(RTT, 1, 0);
+
+        limit.onThrottled(RTT);
+        // Same round trip: the rest of a burst of 429s is ignored
+        limit.onThrottled(RTT + 1);
+        assertEquals(50, limit.limit());
+
+        for (int i = 2; i < 10; i++) {
+            limit.onThrottled(i * RTT);
+        }
+        assertEquals(10, limit.limit());
+    }
+
+    @Test
+    void growsAdditivelyOnlyWhileTheLimitIsInUse() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 100, 0.5, 2.0);
+        limit.onThrottled(0);
+        assertEquals(50, limit.limit());
+
+        long now = RTT;
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(RTT, 1, now += RTT);
+        }
+        assertEquals(50, limit.limit(), "an idle limit should not grow");
+
+        // Roughly one step per limit's worth of busy samples
+        for (int i = 0; i < 250; i++) {
+            limit.onSample(RTT, limit.limit(), now += RTT);
+        }
+        assertTrue(limit.limit() >= 54 && limit.limit() <= 56, "limit was " + limit.limit());
+    }
+
+    @Test
+    void risingLatencyBacksOff() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 100, 0.5, 2.0);
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(RTT, 100, now += RTT);
+        }
+        assertEquals(100, limit.limit());
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(10 * RTT, 100, now += 10 * RTT);
+        }
+        assertTrue(limit.limit() < 100, "limit was " + limit.limit());
+    }
+}
@@ -0,0 +1,182 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.listener.BatchNotificationProcessor;
+import com.dammak.notification_service.kafka.listener.ReplayWindow;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import com.dammak.notification_service.service.NotificationDeduplicator;
+import com.dammak.notification_service.service.NotificationService;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BatchNotificationProcessorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("notification-requests-high", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("notification-requests-high", 1);
+
+    private final NotificationService notificationService = mock(NotificationService.class);
+    private final Acknowledgment acknowledgment = mock(Acknowledgment.class);
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, NotificationRequest> consumer = mock(Consumer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ExecutorService executor;
+    private BatchNotificationProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        processor = new BatchNotificationProcessor(notificationService, executor, new PipelineMetrics(meterRegistry),
+                new NotificationDeduplicator(mock(NotificationHistoryRepository.class), null, true, 1000,
+                        Duration.ofMinutes(10), false, 1000, 0.01, meterRegistry), new ReplayWindow());
+        ReflectionTestUtils.setField(processor, "redeliveryBackoff", Duration.ofMillis(100));
+        when(notificationService.processNotification(any(), any()))
+                .thenAnswer(invocation -> NotificationStatus.getSuccess(invocation.getArgument(0), null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testWholeBatchIsAcknowledgedWhenAllRecordsComplete() {
+        List<ConsumerRecord<String, NotificationRequest>> records = List.of(
+                record(0, "a"), record(1, "b"), record(2, "a"), record(3, "c"));
+
+        processor.processAndAcknowledge(records, acknowledgment, consumer, true, false);
+
+        verify(notificationService, times(4)).processNotification(any(), any());
+        verify(acknowledgment).acknowledge();
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+    }
+
+    @Test
+    void testFailureStopsSameKeyAndCommitsContiguousPrefix() {
+        ConsumerRecord<String, NotificationRequest> failing = record(1, "a");
+        ConsumerRecord<String, NotificationRequest> sameKeyAfterFailure = record(3, "a");
+        doThrow(new RuntimeException("provider down"))
+                .when(notificationService).processNotification(eq(failing.value()), any());
+
+        List<ConsumerRecord<String, NotificationRequest>> records = List.of(
+                record(0, "b"), failing, record(2, "c"), sameKeyAfterFailure);
+
+        processor.processAndAcknowledge(records, acknowledgment, consumer, true, false);
+
+        verify(notificationService, never()).processNotification(eq(sameKeyAfterFailure.value()), any());
+        verify(consumer).commitSync(Map.of(PARTITION_0, new OffsetAndMetadata(1)));
+        verify(consumer).seek(PARTITION_0, 1);
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    void failureOnlyRedeliversItsOwnPartition() {
+        ConsumerRecord<String, NotificationRequest> failing = record(0, 5, "a");
+        doThrow(new RuntimeException("provider down"))
+                .when(notificationService).processNotification(eq(failing.value()), any());
+
+        // Merged poll order: the failing record comes before completed records of another partition
+        List<ConsumerRecord<String, NotificationRequest>> records = List.of(
+                record(0, 4, "b"), failing, record(1, 7, "c"), record(1, 8, "d"));
+
+        processor.processAndAcknowledge(records, acknowledgment, consumer, true, false);
+
+        verify(consumer).commitSync(Map.of(
+                PARTITION_0, new OffsetAndMetadata(5),
+                PARTITION_1, new OffsetAndMetadata(9)));
+        verify(consumer).seek(PARTITION_0, 5);
+        verify(consumer, never()).seek(eq(PARTITION_1), anyLong());
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    void testFailuresAreSkippedWhenRedeliveryIsDisabled() {
+        ConsumerRecord<String, NotificationRequest> failing = record(0, "a");
+        doThrow(new RuntimeException("provider down"))
+                .when(notificationService).processNotification(eq(failing.value()), any());
+
+        int firstIncomplete = processor.process(List.of(failing, record(1, "b")), false);
+        processor.processAndAcknowledge(List.of(failing, record(1, "b")), acknowledgment, consumer, false, false);
+
+        assertEquals(0, firstIncomplete);
+        verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void redeliveredRequestIsProcessedOnce() {
+        ConsumerRecord<String, NotificationRequest> original = record(0, "a");
+        ConsumerRecord<String, NotificationRequest> redelivered =
+                new ConsumerRecord<>("notification-requests-high", 0, 0, "a", original.value());
+
+        processor.process(List.of(original), false);
+        processor.process(List.of(redelivered), false);
+
+        verify(notificationService, times(1)).processNotification(eq(original.value()), any());
+    }
+
+    @Test
+    void failedRequestIsProcessedAgainOnRedelivery() {
+        ConsumerRecord<String, NotificationRequest> failing = record(0, "a");
+        doThrow(new RuntimeException("provider down"))
+                .doAnswer(invocation -> NotificationStatus.getSuccess(invocation.getArgument(0), null))
+                .when(notificationService).processNotification(eq(failing.value()), any());
+
+        assertEquals(0, processor.process(List.of(failing), false));
+        assertEquals(1, processor.process(List.of(failing), false));
+    }
+
+    @Test
+    void queueWaitIsMeasuredFromTheRecordTimestamp() {
+        ConsumerRecord<String, NotificationRequest> plain = record(0, "a");
+        ConsumerRecord<String, NotificationRequest> waited = new ConsumerRecord<>("notification-requests-high", 0, 1,
+                System.currentTimeMillis() - 2_000, TimestampType.CREATE_TIME, -1, -1, "b", plain.value(),
+                new RecordHeaders(), Optional.empty());
+
+        processor.process(List.of(waited), false);
+
+        Timer queueWait = meterRegistry.get("notification.pipeline.stage")
+                .tags("stage", "queue.wait", "channel", "EMAIL", "priority", "NORMAL").timer();
+        assertEquals(1, queueWait.count());
+        assertTrue(queueWait.totalTime(TimeUnit.MILLISECONDS) >= 2_000);
+    }
+
+    private ConsumerRecord<String, NotificationRequest> record(long offset, String key) {
+        return record(0, offset, key);
+    }
+
+    private ConsumerRecord<String, NotificationRequest> record(int partition, long offset, String key) {
+        NotificationRequest request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient(key + "@example.com");
+        request.setSubject("Test Email");
+        request.setContent("This is a test email content");
+        return new ConsumerRecord<>("notification-requests-high", partition, offset, key, request);
+    }
+}
@@ -0,0 +1,165 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.bulk.BulkIngestionJob;
+import com.dammak.notification_service.bulk.BulkIngestionService;
+import com.dammak.notification_service.controller.BulkNotificationController;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.NotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class BulkIngestionServiceTest {
+
+    private static final jakarta.validation.ValidatorFactory VALIDATOR_FACTORY = Validation.buildDefaultValidatorFactory();
+
+    private final NotificationService notificationService = mock(NotificationService.class);
+    private final Validator validator = VALIDATOR_FACTORY.getValidator();
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final List<NotificationRequest> published = new ArrayList<>();
+
+    @AfterAll
+    static void closeValidator() {
+        VALIDATOR_FACTORY.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(notificationService.publishRequest(any())).thenAnswer(invocation -> {
+            synchronized (published) {
+                published.add(invocation.getArgument(0));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private BulkIngestionService service(int batchSize) {
+        return new BulkIngestionService(notificationService, validator, objectMapper, batchSize, 100, 1,
+                Duration.ofMinutes(5), new SimpleMeterRegistry());
+    }
+
+    private static InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String email(String recipient) {
+        return "{\"type\":\"EMAIL\",\"recipient\":\"" + recipient + "\",\"subject\":\"Sale\",\"priority\":\"LOW\"}";
+    }
+
+    @Test
+    void publishesValidLinesAndReportsBadOnesByLineNumber() {
+        BulkIngestionService service = service(2);
+        BulkIngestionJob job = service.start().orElseThrow();
+        List<BulkIngestionJob.Status> progress = new ArrayList<>();
+
+        service.ingest(job, ndjson(
+                email("a@example.com"),
+                "{\"type\":\"EMAIL\",",
+                "{\"type\":\"SMS\",\"subject\":\"Sale\"}",
+                "",
+                email("b@example.com"),
+                email("c@example.com")), progress::add);
+
+        BulkIngestionJob.Status status = job.snapshot(true);
+        assertEquals(BulkIngestionJob.State.COMPLETED, status.state());
+        assertEquals(5, status.received());
+        assertEquals(3, status.accepted());
+        assertEquals(2, status.rejected());
+        assertEquals(0, status.failed());
+        assertEquals(List.of(2L, 3L), status.errors().stream().map(BulkIngestionJob.LineError::line).toList());
+        assertEquals("recipient: must not be blank", status.errors().get(1).message());
+        assertEquals(List.of("a@example.com", "b@example.com", "c@example.com"),
+                published.stream().map(NotificationRequest::getRecipient).toList());
+        assertEquals(NotificationRequest.Priority.LOW, published.get(0).getPriority());
+        // One progress update per full batch; the trailing partial batch is covered by the final state
+        assertEquals(1, progress.size());
+    }
+
+    @Test
+    void batchRejectedByKafkaAbortsTheJob() {
+        reset(notificationService);
+        when(notificationService.publishRequest(any()))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("metadata not available")));
+        BulkIngestionService service = service(2);
+        BulkIngestionJob job = service.start().orElseThrow();
+
+        service.ingest(job, ndjson(email("a@example.com"), email("b@example.com"), email("c@example.com"),
+                email("d@example.com"), email("e@example.com")), status -> { });
+
+        BulkIngestionJob.Status status = job.snapshot(true);
+        assertEquals(BulkIngestionJob.State.ABORTED, status.state());
+        assertEquals(2, status.failed());
+        assertEquals(0, status.accepted());
+        // The slot is free again
+        assertTrue(service.start().isPresent());
+    }
+
+    @Test
+    void onlyConfiguredNumberOfJobsRunAtOnce() {
+        BulkIngestionService service = service(10);
+        BulkIngestionJob running = service.start().orElseThrow();
+
+        assertTrue(service.start().isEmpty());
+        service.ingest(running, ndjson(email("a@example.com")), status -> { });
+        assertTrue(service.start().isPresent());
+    }
+
+    @Test
+    void endpointStreamsProgressAsNdjson() throws Exception {
+        BulkIngestionService service = service(1);
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("bulk-test-");
+        BulkNotificationController controller = new BulkNotificationController(service, executor, objectMapper);
+        ReflectionTestUtils.setField(controller, "responseTimeout", Duration.ofSeconds(10));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        MvcResult started = mockMvc.perform(post("/api/notifications/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(email("a@example.com") + "\n" + email("b@example.com") + "\n"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.strip().split("\n");
+        // Started, one line per single-record batch, final
+        assertEquals(4, lines.length);
+        BulkIngestionJob.Status last = objectMapper.readValue(lines[3], BulkIngestionJob.Status.class);
+        assertEquals(BulkIngestionJob.State.COMPLETED, last.state());
+        assertEquals(2, last.accepted());
+
+        mockMvc.perform(get("/api/notifications/bulk/" + last.jobId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2));
+    }
+}
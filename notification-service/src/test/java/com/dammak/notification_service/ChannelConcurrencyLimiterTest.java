@@ -0,0 +1,142 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.model.NotificationRequest.NotificationType;
+import com.dammak.notification_service.model.NotificationRequest.Priority;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Priority> order = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ChannelConcurrencyLimiter limiter(Duration agingInterval) {
+        return new ChannelConcurrencyLimiter(1, 1, 1, agingInterval, true, 1, 0.9, 2.0, meterRegistry);
+    }
+
+    private Future<?> holdPermit(ChannelConcurrencyLimiter limiter, CountDownLatch held, CountDownLatch release) {
+        return executor.submit(() -> limiter.call(NotificationType.EMAIL, Priority.NORMAL, () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+    }
+
+    private Future<?> enqueue(ChannelConcurrencyLimiter limiter, Priority priority) throws InterruptedException {
+        double queuedBefore = queued();
+        Future<?> future = executor.submit(() -> limiter.call(NotificationType.EMAIL, priority, () -> order.add(priority)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued() == queuedBefore && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return future;
+    }
+
+    private double queued() {
+        return meterRegistry.get("notification.dispatch.queued").tag("channel", "email").gauge().value();
+    }
+
+    @Test
+    void freedPermitGoesToTheHighestPriorityWaiter() throws Exception {
+        ChannelConcurrencyLimiter limiter = limiter(Duration.ofMinutes(1));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holder = holdPermit(limiter, held, release);
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        List<Future<?>> waiters = List.of(
+                enqueue(limiter, Priority.LOW),
+                enqueue(limiter, Priority.NORMAL),
+                enqueue(limiter, Priority.CRITICAL),
+                enqueue(limiter, Priority.HIGH));
+        assertEquals(Priority.CRITICAL, limiter.highestWaitingPriority());
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of(Priority.CRITICAL, Priority.HIGH, Priority.NORMAL, Priority.LOW), order);
+        assertNull(limiter.highestWaitingPriority());
+    }
+
+    @Test
+    void longWaitingLowPriorityOutranksNewCriticalWork() throws Exception {
+        ChannelConcurrencyLimiter limiter = limiter(Duration.ofMillis(10));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holder = holdPermit(limiter, held, release);
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        Future<?> low = enqueue(limiter, Priority.LOW);
+        // Three levels below CRITICAL, so 30ms of waiting puts it ahead
+        Thread.sleep(100);
+        Future<?> critical = enqueue(limiter, Priority.CRITICAL);
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        critical.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(Priority.LOW, Priority.CRITICAL), order);
+    }
+
+    @Test
+    void throttlingShrinksTheChannelLimit() {
+        ChannelConcurrencyLimiter limiter = new ChannelConcurrencyLimiter(
+                100, 100, 100, Duration.ofSeconds(2), true, 2, 0.5, 2.0, meterRegistry);
+
+        limiter.reportThrottled(NotificationType.SMS);
+
+        assertEquals(50, limiter.limit(NotificationType.SMS));
+        assertEquals(100, limiter.limit(NotificationType.EMAIL));
+        assertEquals(50, meterRegistry.get("notification.dispatch.limit").tag("channel", "sms").gauge().value());
+        assertEquals(1, meterRegistry.get("notification.dispatch.throttled").tag("channel", "sms").counter().count());
+    }
+
+    @Test
+    void onlyReportedProviderLatencyMovesTheLimit() {
+        ChannelConcurrencyLimiter limiter = new ChannelConcurrencyLimiter(
+                100, 100, 100, Duration.ofSeconds(2), true, 2, 0.5, 2.0, meterRegistry);
+
+        // Time spent holding the permit, e.g. rendering or batching, is not provider latency
+        limiter.recordLatency(NotificationType.EMAIL, TimeUnit.MILLISECONDS.toNanos(1));
+        limiter.call(NotificationType.EMAIL, Priority.NORMAL, () -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertEquals(100, limiter.limit(NotificationType.EMAIL));
+
+        limiter.recordLatency(NotificationType.EMAIL, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(50, limiter.limit(NotificationType.EMAIL));
+    }
+}
@@ -0,0 +1,50 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.service.EmailTemplateRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmailTemplateRendererTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailTemplateRenderer renderer;
+
+    @BeforeEach
+    void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        renderer = new EmailTemplateRenderer(engine, meterRegistry);
+        renderer.preloadTemplates();
+    }
+
+    @Test
+    void preloadedTemplatesAreTimedByName() {
+        String body = renderer.render("email-template", Map.of("name", "Ada"));
+
+        assertFalse(body.isEmpty());
+        assertEquals(1, meterRegistry.get("notification.email.render").tag("template", "email-template").timer().count());
+    }
+
+    @Test
+    void unknownTemplateNamesShareOneTimer() {
+        for (String name : new String[]{"missing-a", "missing-b"}) {
+            assertThrows(RuntimeException.class, () -> renderer.render(name, Map.of()));
+        }
+
+        assertEquals(2, meterRegistry.get("notification.email.render").tag("template", "other").timer().count());
+        assertEquals(1, meterRegistry.get("notification.email.render").timers().size());
+    }
+}
@@ -0,0 +1,115 @@
+package com.dammak.notification_service;
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for a provider HTTP API (Twilio Messages, FCM v1 send) with injected latency and
+ * errors. Every request is handled on its own virtual thread, so slow responses hold a connection
+ * the way the real API does without capping the server's own throughput.
+ */
+final class FakeProviderServer implements AutoCloseable {
+
+    private static final String TWILIO_ERROR = "{\"code\":20503,\"message\":\"Service unavailable\",\"status\":503}";
+    private static final String FCM_ERROR =
+            "{\"error\":{\"code\":503,\"message\":\"The service is currently unavailable.\",\"status\":\"UNAVAILABLE\"}}";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration latency;
+    private final double errorRate;
+    private final int successCode;
+    private final String errorBody;
+    private final boolean twilio;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private FakeProviderServer(String path, Duration latency, double errorRate, int successCode,
+                               String errorBody, boolean twilio) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.successCode = successCode;
+        this.errorBody = errorBody;
+        this.twilio = twilio;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Fake of {@code POST /2010-04-01/Accounts/{sid}/Messages.json}.
+     */
+    static FakeProviderServer twilio(String accountSid, Duration latency, double errorRate) throws IOException {
+        return new FakeProviderServer("/2010-04-01/Accounts/" + accountSid + "/Messages.json",
+                latency, errorRate, 201, TWILIO_ERROR, true);
+    }
+
+    /**
+     * Fake of {@code POST /v1/projects/{project}/messages:send}.
+     */
+    static FakeProviderServer fcm(String projectId, Duration latency, double errorRate) throws IOException {
+        return new FakeProviderServer("/v1/projects/" + projectId + "/messages:send",
+                latency, errorRate, 200, FCM_ERROR, false);
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        exchange.getRequestBody().readAllBytes();
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        String body;
+        if (fail) {
+            errors.increment();
+            body = errorBody;
+        } else {
+            String id = UUID.randomUUID().toString().replace("-", "");
+            body = twilio
+                    ? "{\"sid\":\"SM" + id + "\",\"status\":\"queued\"}"
+                    : "{\"name\":\"projects/load-test/messages/" + id + "\"}";
+        }
+        byte[] response = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(fail ? 503 : successCode, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
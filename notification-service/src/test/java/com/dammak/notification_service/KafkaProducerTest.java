@@ -0,0 +1,79 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.model.NotificationRequest;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class KafkaProducerTest {
+
+    private static final String TOPIC = "notification-requests-normal";
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, NotificationRequest> kafkaTemplate = mock(KafkaTemplate.class);
+    private ScheduledExecutorService scheduler;
+    private KafkaProducer<NotificationRequest> producer;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        producer = new KafkaProducer<>(kafkaTemplate, "test-circuit-breaker", scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testAsyncBrokerFailureIsRetried() throws Exception {
+        NotificationRequest request = new NotificationRequest();
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaException("broker unavailable")))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(sendResult(invocation.getArgument(0))));
+
+        SendResult<String, NotificationRequest> result =
+                producer.sendEvent(TOPIC, request.getId().toString(), request).get(5, TimeUnit.SECONDS);
+
+        assertEquals(request, result.getProducerRecord().value());
+        verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+        assertEquals(1, producer.getCircuitBreaker().getMetrics().getNumberOfFailedCalls());
+        assertEquals(1, producer.getCircuitBreaker().getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    void testFailureIsReturnedAfterRetriesAreExhausted() {
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new KafkaException("broker unavailable")));
+
+        CompletableFuture<SendResult<String, NotificationRequest>> future =
+                producer.sendEvent(TOPIC, "key", new NotificationRequest());
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(KafkaException.class, ex.getCause());
+        verify(kafkaTemplate, times(3)).send(any(ProducerRecord.class));
+    }
+
+    private static SendResult<String, NotificationRequest> sendResult(ProducerRecord<String, NotificationRequest> record) {
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0);
+        return new SendResult<>(record, metadata);
+    }
+}
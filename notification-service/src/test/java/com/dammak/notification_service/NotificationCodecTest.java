@@ -0,0 +1,99 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.serialization.NotificationBinarySerializer;
+import com.dammak.notification_service.kafka.serialization.NotificationCodec;
+import com.dammak.notification_service.kafka.serialization.NotificationDeserializer;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationCodecTest {
+
+    private static final String TOPIC = "notification-requests-normal";
+
+    private static NotificationRequest request() {
+        NotificationRequest request = new NotificationRequest();
+        request.setPriority(NotificationRequest.Priority.HIGH);
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient("jöhn@example.com");
+        request.setSubject("Order shipped 🚚");
+        request.setTemplateName("email-template");
+        request.setTemplateData(Map.of("name", "John", "orderId", "A-1001"));
+        return request;
+    }
+
+    @Test
+    void requestRoundTripsThroughBinary() {
+        NotificationRequest request = request();
+
+        NotificationRequest decoded = NotificationCodec.decodeRequest(NotificationCodec.encode(request));
+
+        assertEquals(request, decoded);
+        assertNull(decoded.getContent());
+    }
+
+    @Test
+    void statusRoundTripsThroughBinary() {
+        NotificationStatus status = new NotificationStatus(UUID.randomUUID(), NotificationRequest.NotificationType.SMS,
+                "+15005550006", false, "Failed to send SMS", LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123_456_789));
+
+        assertEquals(status, NotificationCodec.decodeStatus(NotificationCodec.encode(status)));
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        NotificationRequest request = request();
+        byte[] json = new JsonSerializer<NotificationRequest>().serialize(TOPIC, request);
+        byte[] binary = NotificationCodec.encode(request);
+
+        assertTrue(binary.length < json.length / 2, binary.length + " vs " + json.length);
+    }
+
+    @Test
+    void deserializerAcceptsJsonAndBinary() {
+        NotificationRequest request = request();
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json;
+        try (JsonSerializer<NotificationRequest> serializer = new JsonSerializer<>()) {
+            json = serializer.serialize(TOPIC, headers, request);
+        }
+        byte[] binary = new NotificationBinarySerializer<NotificationRequest>().serialize(TOPIC, request);
+
+        try (NotificationDeserializer<NotificationRequest> deserializer = new NotificationDeserializer<>(NotificationRequest.class)) {
+            deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.dammak.notification_service.model"), false);
+            assertEquals(request, deserializer.deserialize(TOPIC, headers, json));
+            assertEquals(request, deserializer.deserialize(TOPIC, new RecordHeaders(), binary));
+        }
+    }
+
+    @Test
+    void truncatedOrMismatchedRecordsAreRejected() {
+        byte[] encoded = NotificationCodec.encode(request());
+
+        assertThrows(SerializationException.class,
+                () -> NotificationCodec.decodeRequest(Arrays.copyOf(encoded, encoded.length - 3)));
+        assertThrows(SerializationException.class, () -> NotificationCodec.decodeStatus(encoded));
+    }
+
+    @Test
+    void recordsFromANewerVersionAreRejected() {
+        byte[] encoded = NotificationCodec.encode(request());
+        encoded[1] = NotificationCodec.VERSION + 1;
+
+        SerializationException e = assertThrows(SerializationException.class,
+                () -> NotificationCodec.decodeRequest(encoded));
+        assertTrue(e.getMessage().contains("version"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import com.dammak.notification_service.service.NotificationDeduplicator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class NotificationDeduplicatorTest {
+
+    private final NotificationHistoryRepository historyRepository = mock(NotificationHistoryRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private NotificationDeduplicator deduplicator(boolean bloomEnabled) {
+        return new NotificationDeduplicator(historyRepository, null, true, 1000, Duration.ofMinutes(10),
+                bloomEnabled, 1000, 0.01, meterRegistry);
+    }
+
+    private double duplicates(String source) {
+        return meterRegistry.get("notification.dedupe.duplicates").tag("source", source).counter().count();
+    }
+
+    @Test
+    void secondClaimIsADuplicateUntilReleased() {
+        NotificationDeduplicator deduplicator = deduplicator(false);
+        UUID id = UUID.randomUUID();
+
+        assertTrue(deduplicator.tryClaim(id, true));
+        assertFalse(deduplicator.tryClaim(id, true));
+        deduplicator.release(id);
+        assertTrue(deduplicator.tryClaim(id, true));
+        assertEquals(1, duplicates("cache"));
+    }
+
+    @Test
+    void idInHistoryIsADuplicateAfterRestart() {
+        UUID id = UUID.randomUUID();
+        when(historyRepository.existsByIdAndSentAtAfter(eq(id.toString()), any())).thenReturn(true);
+        NotificationDeduplicator deduplicator = deduplicator(false);
+
+        assertFalse(deduplicator.tryClaim(id, true));
+        // Remembered in memory, so later copies don't touch the database
+        assertFalse(deduplicator.tryClaim(id, true));
+        verify(historyRepository, times(1)).existsByIdAndSentAtAfter(eq(id.toString()), any());
+        assertEquals(1, duplicates("history"));
+    }
+
+    @Test
+    void historyLookupIsBoundedByTheTtl() {
+        UUID id = UUID.randomUUID();
+        LocalDateTime before = LocalDateTime.now().minusMinutes(10);
+
+        deduplicator(false).tryClaim(id, true);
+
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(historyRepository).existsByIdAndSentAtAfter(eq(id.toString()), since.capture());
+        assertFalse(since.getValue().isBefore(before));
+        assertTrue(since.getValue().isBefore(LocalDateTime.now().minusMinutes(9)));
+    }
+
+    @Test
+    void recordsThatCannotBeReplaysSkipHistory() {
+        NotificationDeduplicator deduplicator = deduplicator(false);
+        UUID id = UUID.randomUUID();
+
+        assertTrue(deduplicator.tryClaim(id, false));
+        assertFalse(deduplicator.tryClaim(id, false));
+        verify(historyRepository, never()).existsByIdAndSentAtAfter(anyString(), any());
+    }
+
+    @Test
+    void historyFailureLetsTheRequestThrough() {
+        when(historyRepository.existsByIdAndSentAtAfter(anyString(), any())).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertTrue(deduplicator(false).tryClaim(UUID.randomUUID(), true));
+    }
+
+    @Test
+    void bloomFilterSkipsHistoryForUnseenIds() {
+        NotificationDeduplicator deduplicator = deduplicator(true);
+        UUID id = UUID.randomUUID();
+
+        assertTrue(deduplicator.tryClaim(id, true));
+        deduplicator.complete(id);
+
+        verify(historyRepository, never()).existsByIdAndSentAtAfter(anyString(), any());
+    }
+}
@@ -0,0 +1,106 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.service.NotificationHistoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class NotificationHistoryServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private NotificationHistoryService newService(int capacity, int batchSize, Duration flushInterval) {
+        return new NotificationHistoryService(jdbcTemplate, capacity, batchSize, flushInterval,
+                Duration.ofMillis(50), Duration.ofDays(1), meterRegistry);
+    }
+
+    private static NotificationStatus status() {
+        return new NotificationStatus(UUID.randomUUID(), NotificationRequest.NotificationType.EMAIL,
+                "test@example.com", true, "EMAIL sent successfully", LocalDateTime.now());
+    }
+
+    // The writer reuses its batch list, so count rows at call time
+    private final AtomicLong rowsBatched = new AtomicLong();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    rowsBatched.addAndGet(invocation.<Collection<?>>getArgument(1).size());
+                    return new int[][]{};
+                });
+    }
+
+    private long rowsBatched() {
+        return rowsBatched.get();
+    }
+
+    @Test
+    void bufferedRowsAreWrittenInBatchesAndDrainedOnStop() {
+        NotificationHistoryService service = newService(100, 3, Duration.ofSeconds(10));
+        service.start();
+
+        for (int i = 0; i < 7; i++) {
+            service.saveNotificationHistory(status());
+        }
+        service.stop();
+
+        assertEquals(7, rowsBatched());
+        assertEquals(7.0, meterRegistry.get("notification.history.rows.written").counter().count());
+    }
+
+    @Test
+    void partialBatchIsFlushedAfterInterval() throws InterruptedException {
+        NotificationHistoryService service = newService(100, 500, Duration.ofMillis(50));
+        service.start();
+
+        service.saveNotificationHistory(status());
+        Thread.sleep(500);
+
+        assertEquals(1, rowsBatched());
+        service.stop();
+    }
+
+    @Test
+    void fullBufferFallsBackToInlineWrite() {
+        // Not started: nothing drains the buffer, so the caller writes its own row
+        NotificationHistoryService service = newService(1, 10, Duration.ofSeconds(10));
+
+        service.saveNotificationHistory(status());
+
+        assertEquals(1, rowsBatched());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchIsRetried() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new TransientDataAccessResourceException("connection reset"))
+                .thenReturn(new int[][]{{1}});
+        NotificationHistoryService service = newService(1, 10, Duration.ofSeconds(10));
+
+        service.saveNotificationHistory(status());
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(0.0, meterRegistry.get("notification.history.rows.dropped").counter().count());
+    }
+}
@@ -0,0 +1,570 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.config.FirebaseConfig;
+import com.dammak.notification_service.kafka.listener.KafkaNotificationListener;
+import com.dammak.notification_service.kafka.serialization.NotificationDeserializer;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end load test with every provider replaced by an in-process stand-in: embedded Kafka,
+ * GreenMail for SMTP, fake Twilio and FCM endpoints and an embedded Postgres. Drives
+ * {@code POST /api/notifications} and the priority topics at fixed open-loop rates, then reports
+ * throughput, p50/p99/p999 latency and consumer lag per priority, followed by the per-stage timers
+ * the service recorded.
+ * <p>
+ * Excluded from the normal build. Run with {@code mvn test -Pload-test} and tune with
+ * {@code -Dloadtest.*} (see {@link LoadProfile}); the report is also written to
+ * {@code target/load-test-report.txt}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.docker.compose.enabled=false",
+        "spring.sql.init.mode=always",
+        "spring.jpa.show-sql=false",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "spring.mail.properties.mail.debug=false",
+        "spring.mail.properties.mail.from=notifications@example.com",
+        "logging.level.root=WARN",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@EmbeddedKafka(partitions = 3, topics = {
+        "notification-requests-low", "notification-requests-normal", "notification-requests-high",
+        "notification-requests-critical"})
+class NotificationLoadTest {
+
+    private static final String TWILIO_ACCOUNT_SID = "AC00000000000000000000000000000000";
+    private static final String FCM_PROJECT = "load-test";
+    // Statuses for topic-driven requests come back here, away from the controller's partition 0
+    private static final int HARNESS_REPLY_PARTITION = 1;
+    private static final List<NotificationRequest.Priority> PRIORITIES = List.of(
+            NotificationRequest.Priority.LOW, NotificationRequest.Priority.NORMAL,
+            NotificationRequest.Priority.HIGH, NotificationRequest.Priority.CRITICAL);
+
+    private static final LoadProfile PROFILE = LoadProfile.fromSystemProperties();
+
+    private static EmbeddedPostgres postgres;
+    private static GreenMail smtp;
+    private static FakeProviderServer twilio;
+    private static FakeProviderServer fcm;
+    private static FirebaseApp firebaseApp;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    @Value("${notification.kafka.topic.low:notification-requests-low}")
+    private String lowTopic;
+
+    @Value("${notification.kafka.topic.normal}")
+    private String normalTopic;
+
+    @Value("${notification.kafka.topic.high}")
+    private String highTopic;
+
+    @Value("${notification.kafka.topic.critical}")
+    private String criticalTopic;
+
+    @Value("${notification.kafka.topic.status-events}")
+    private String statusTopic;
+
+    @DynamicPropertySource
+    static void providers(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        smtp = new GreenMail(ServerSetupTest.SMTP.dynamicPort())
+                .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+        smtp.start();
+        // Created up front: GreenMail creates it on first login, which races between concurrent connections
+        smtp.setUser("load-test", "load-test");
+        twilio = FakeProviderServer.twilio(TWILIO_ACCOUNT_SID, PROFILE.twilioLatency(), PROFILE.twilioErrorRate());
+        fcm = FakeProviderServer.fcm(FCM_PROJECT, PROFILE.fcmLatency(), PROFILE.fcmErrorRate());
+
+        // Registered up front as the default app, so FirebaseConfig needs no service account file
+        firebaseApp = FirebaseApp.initializeApp(FirebaseOptions.builder()
+                .setCredentials(GoogleCredentials.create(
+                        new AccessToken("load-test", new Date(System.currentTimeMillis() + 86_400_000))))
+                .setProjectId(FCM_PROJECT)
+                .setHttpTransport(FirebaseConfig.redirectingTransport(URI.create(fcm.baseUrl() + "/")))
+                .build());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("spring.mail.host", () -> "localhost");
+        registry.add("spring.mail.port", () -> smtp.getSmtp().getPort());
+        registry.add("spring.mail.username", () -> "load-test");
+        registry.add("spring.mail.password", () -> "load-test");
+        registry.add("twilio.account-sid", () -> TWILIO_ACCOUNT_SID);
+        registry.add("twilio.auth-token", () -> "load-test");
+        registry.add("twilio.phone-number", () -> "+15005550006");
+        registry.add("twilio.api-base-url", twilio::baseUrl);
+        registry.add("notification.push.fcm.base-url", () -> fcm.baseUrl() + "/");
+        Path spoolDirectory = Files.createTempDirectory("notification-spool");
+        registry.add("notification.spool.directory", spoolDirectory::toString);
+        registry.add("notification.kafka.consumer.mode", () -> System.getProperty("loadtest.consumer-mode", "batch"));
+    }
+
+    @AfterAll
+    static void stopProviders() throws IOException {
+        firebaseApp.delete();
+        fcm.close();
+        twilio.close();
+        smtp.stop();
+        postgres.close();
+    }
+
+    @Test
+    void sustainsConfiguredLoad() throws Exception {
+        LoadStats httpStats = new LoadStats();
+        LoadStats kafkaStats = new LoadStats();
+        Map<UUID, Pending> pending = new ConcurrentHashMap<>();
+        Map<NotificationRequest.Priority, LagStats> lag = new EnumMap<>(NotificationRequest.Priority.class);
+        PRIORITIES.forEach(priority -> lag.put(priority, new LagStats()));
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        URI endpoint = URI.create("http://localhost:" + port + "/api/notifications");
+
+        ExecutorService workers = Executors.newFixedThreadPool(3);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch statusConsumerReady = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try (AdminClient admin = AdminClient.create(Map.of(
+                AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()));
+             KafkaProducer<String, NotificationRequest> producer = requestProducer()) {
+
+            Future<?> statusConsumer = workers.submit(() ->
+                    consumeStatuses(pending, kafkaStats, running, statusConsumerReady));
+            assertTrue(statusConsumerReady.await(30, TimeUnit.SECONDS), "status consumer did not start");
+            // The request groups have no committed offsets yet and start at the end of their topics, so
+            // records sent while they are still rebalancing would be skipped
+            for (NotificationRequest.Priority priority : PRIORITIES) {
+                ContainerTestUtils.waitForAssignment(
+                        listenerRegistry.getListenerContainer(KafkaNotificationListener.listenerId(priority)),
+                        broker.getPartitionsPerTopic());
+            }
+
+            sampler.scheduleAtFixedRate(() -> sampleLag(admin, lag), 1, 1, TimeUnit.SECONDS);
+
+            long start = System.nanoTime();
+            Future<?> httpDriver = workers.submit(() -> drive(PROFILE.httpRate(), PROFILE.duration(), (sequence, intended) -> {
+                NotificationRequest request = request(sequence);
+                httpStats.sent(request.getPriority());
+                HttpRequest post;
+                try {
+                    post = HttpRequest.newBuilder(endpoint)
+                            .header("Content-Type", "application/json")
+                            .timeout(PROFILE.drainTimeout().plus(PROFILE.duration()))
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                            .build();
+                } catch (IOException e) {
+                    httpStats.completed(request.getPriority(), intended, false);
+                    return;
+                }
+                http.sendAsync(post, HttpResponse.BodyHandlers.ofString()).whenComplete((response, ex) ->
+                        httpStats.completed(request.getPriority(), intended,
+                                ex == null && response.statusCode() == 200 && response.body().contains("\"success\":true")));
+            }));
+            Future<?> kafkaDriver = workers.submit(() -> drive(PROFILE.kafkaRate(), PROFILE.duration(), (sequence, intended) -> {
+                NotificationRequest request = request(sequence);
+                kafkaStats.sent(request.getPriority());
+                pending.put(request.getId(), new Pending(request.getPriority(), intended));
+                ProducerRecord<String, NotificationRequest> record =
+                        new ProducerRecord<>(topic(request.getPriority()), request.getId().toString(), request);
+                record.headers().add(KafkaHeaders.REPLY_PARTITION,
+                        ByteBuffer.allocate(Integer.BYTES).putInt(HARNESS_REPLY_PARTITION).array());
+                producer.send(record, (metadata, ex) -> {
+                    if (ex != null && pending.remove(request.getId()) != null) {
+                        kafkaStats.completed(request.getPriority(), intended, false);
+                    }
+                });
+            }));
+            httpDriver.get();
+            kafkaDriver.get();
+
+            long drainDeadline = System.nanoTime() + PROFILE.drainTimeout().toNanos();
+            while ((httpStats.outstanding() > 0 || !pending.isEmpty()) && System.nanoTime() < drainDeadline) {
+                Thread.sleep(100);
+            }
+            sampler.shutdownNow();
+            sampler.awaitTermination(5, TimeUnit.SECONDS);
+            sampleLag(admin, lag);
+            running.set(false);
+            statusConsumer.get(10, TimeUnit.SECONDS);
+
+            String report = report(start, httpStats, kafkaStats, lag);
+            System.out.println(report);
+            Files.writeString(Path.of("target", "load-test-report.txt"), report);
+
+            assertEquals(0, httpStats.outstanding(), "HTTP requests still waiting for a status");
+            assertTrue(pending.isEmpty(), pending.size() + " topic-driven requests never got a status");
+            if (PROFILE.twilioErrorRate() == 0 && PROFILE.fcmErrorRate() == 0) {
+                assertEquals(0, httpStats.failed() + kafkaStats.failed(), "failures with no errors injected");
+            }
+        } finally {
+            sampler.shutdownNow();
+            workers.shutdownNow();
+            http.close();
+        }
+    }
+
+    private KafkaProducer<String, NotificationRequest> requestProducer() {
+        return new KafkaProducer<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ProducerConfig.LINGER_MS_CONFIG, 5),
+                new StringSerializer(), new JsonSerializer<>());
+    }
+
+    private void consumeStatuses(Map<UUID, Pending> pending, LoadStats kafkaStats,
+                                 AtomicBoolean running, CountDownLatch ready) {
+        NotificationDeserializer<NotificationStatus> deserializer = new NotificationDeserializer<>(NotificationStatus.class);
+        deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.dammak.notification_service.model"), false);
+        TopicPartition partition = new TopicPartition(statusTopic, HARNESS_REPLY_PARTITION);
+        try (KafkaConsumer<String, NotificationStatus> consumer = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false),
+                new StringDeserializer(), deserializer)) {
+            consumer.assign(List.of(partition));
+            consumer.seekToEnd(List.of(partition));
+            consumer.position(partition);
+            ready.countDown();
+            while (running.get()) {
+                for (ConsumerRecord<String, NotificationStatus> record : consumer.poll(Duration.ofMillis(100))) {
+                    NotificationStatus status = record.value();
+                    Pending request = status != null ? pending.remove(status.getId()) : null;
+                    if (request != null) {
+                        kafkaStats.completed(request.priority(), request.intendedNanos(), status.isSuccess());
+                    }
+                }
+            }
+        }
+    }
+
+    private void sampleLag(AdminClient admin, Map<NotificationRequest.Priority, LagStats> lag) {
+        try {
+            for (NotificationRequest.Priority priority : PRIORITIES) {
+                String topic = topic(priority);
+                Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+                for (int i = 0; i < broker.getPartitionsPerTopic(); i++) {
+                    latest.put(new TopicPartition(topic, i), OffsetSpec.latest());
+                }
+                Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends =
+                        admin.listOffsets(latest).all().get(5, TimeUnit.SECONDS);
+                Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(group(priority))
+                        .partitionsToOffsetAndMetadata().get(5, TimeUnit.SECONDS);
+                long total = 0;
+                for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> end : ends.entrySet()) {
+                    OffsetAndMetadata offset = committed.get(end.getKey());
+                    total += end.getValue().offset() - (offset != null ? offset.offset() : 0);
+                }
+                lag.get(priority).record(total);
+            }
+        } catch (Exception e) {
+            System.err.println("Lag sample failed: " + e.getMessage());
+        }
+    }
+
+    private String topic(NotificationRequest.Priority priority) {
+        return switch (priority) {
+            case LOW -> lowTopic;
+            case HIGH -> highTopic;
+            case CRITICAL -> criticalTopic;
+            default -> normalTopic;
+        };
+    }
+
+    private String group(NotificationRequest.Priority priority) {
+        return switch (priority) {
+            case LOW -> groupId + "-low";
+            case HIGH -> groupId + "-high";
+            case CRITICAL -> groupId + "-critical";
+            default -> groupId;
+        };
+    }
+
+    /**
+     * Cycles through every channel and priority so each combination gets an equal share.
+     */
+    private static NotificationRequest request(long sequence) {
+        List<NotificationRequest.NotificationType> channels = PROFILE.channels();
+        NotificationRequest.NotificationType type = channels.get((int) (sequence % channels.size()));
+        NotificationRequest.Priority priority = PROFILE.priorities()
+                .get((int) (sequence / channels.size() % PROFILE.priorities().size()));
+
+        NotificationRequest request = new NotificationRequest();
+        request.setType(type);
+        request.setPriority(priority);
+        request.setSubject("Load test " + sequence);
+        switch (type) {
+            case EMAIL -> {
+                request.setRecipient("user" + sequence + "@example.com");
+                request.setTemplateName("email-template");
+                request.setTemplateData(Map.of("subject", "Load test", "name", "User " + sequence,
+                        "message", "Your order has shipped", "actionUrl", "https://example.com/orders/" + sequence,
+                        "actionText", "Track order"));
+            }
+            case SMS -> {
+                request.setRecipient(String.format("+1555%07d", sequence % 10_000_000));
+                request.setContent("Your code is " + (sequence % 10_000));
+            }
+            case PUSH -> {
+                request.setRecipient("device-" + sequence);
+                request.setContent("Your order has shipped");
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Open-loop driver: requests are fired on a fixed schedule regardless of how fast earlier ones
+     * complete, and latency is measured from the intended send time so a stalled service shows up in
+     * the percentiles instead of quietly lowering the offered rate.
+     */
+    private static void drive(int ratePerSecond, Duration duration, Fire fire) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        long interval = 1_000_000_000L / ratePerSecond;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sequence = 0;
+        for (long intended = start; intended < end; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            fire.fire(sequence++, intended);
+        }
+    }
+
+    private String report(long start, LoadStats httpStats, LoadStats kafkaStats,
+                          Map<NotificationRequest.Priority, LagStats> lag) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%n=== Notification load test: %s, http %d/s, kafka %d/s, channels %s ===%n",
+                PROFILE.duration().toSeconds() + "s", PROFILE.httpRate(), PROFILE.kafkaRate(), PROFILE.channels()));
+        out.append(String.format("%-6s %-9s %8s %8s %7s %8s %9s %8s %8s %8s %8s%n",
+                "source", "priority", "sent", "ok", "failed", "pending", "thrpt/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        httpStats.appendRows(out, "http", start);
+        kafkaStats.appendRows(out, "kafka", start);
+
+        out.append(String.format("%n%-9s %10s %10s%n", "priority", "max lag", "final lag"));
+        lag.forEach((priority, stats) ->
+                out.append(String.format("%-9s %10d %10d%n", priority, stats.max(), stats.last())));
+
+        out.append(String.format("%n%-16s %-6s %-9s %8s %9s %8s %8s %8s%n",
+                "stage", "chan", "priority", "count", "mean ms", "p50 ms", "p99 ms", "p999 ms"));
+        meterRegistry.find("notification.pipeline.stage").timers().stream()
+                .sorted(Comparator.comparing((Timer timer) -> timer.getId().getTag("stage"))
+                        .thenComparing(timer -> timer.getId().getTag("channel"))
+                        .thenComparing(timer -> timer.getId().getTag("priority")))
+                .forEach(timer -> {
+                    ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+                    out.append(String.format("%-16s %-6s %-9s %8d %9.1f", timer.getId().getTag("stage"),
+                            timer.getId().getTag("channel"), timer.getId().getTag("priority"), timer.count(),
+                            timer.mean(TimeUnit.MILLISECONDS)));
+                    for (ValueAtPercentile percentile : percentiles) {
+                        out.append(String.format(" %8.1f", percentile.value(TimeUnit.MILLISECONDS)));
+                    }
+                    out.append(System.lineSeparator());
+                });
+
+        out.append(String.format("%nproviders: smtp %d messages, twilio %d requests (%d errors), fcm %d requests (%d errors)%n",
+                smtp.getReceivedMessages().length, twilio.requests(), twilio.errors(), fcm.requests(), fcm.errors()));
+        return out.toString();
+    }
+
+    @FunctionalInterface
+    private interface Fire {
+        void fire(long sequence, long intendedNanos);
+    }
+
+    private record Pending(NotificationRequest.Priority priority, long intendedNanos) {
+    }
+
+    /**
+     * Counts and latency histograms (microseconds) per priority for one traffic source.
+     */
+    private static final class LoadStats {
+
+        private final Map<NotificationRequest.Priority, PriorityStats> byPriority = new ConcurrentHashMap<>();
+        private final LongAccumulator lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        private PriorityStats of(NotificationRequest.Priority priority) {
+            return byPriority.computeIfAbsent(priority, p -> new PriorityStats());
+        }
+
+        void sent(NotificationRequest.Priority priority) {
+            of(priority).sent.increment();
+        }
+
+        void completed(NotificationRequest.Priority priority, long intendedNanos, boolean success) {
+            long now = System.nanoTime();
+            PriorityStats stats = of(priority);
+            stats.latency.recordValue(Math.max(0, (now - intendedNanos) / 1_000));
+            (success ? stats.ok : stats.failed).increment();
+            lastCompletion.accumulate(now);
+        }
+
+        long outstanding() {
+            return byPriority.values().stream()
+                    .mapToLong(stats -> stats.sent.sum() - stats.ok.sum() - stats.failed.sum()).sum();
+        }
+
+        long failed() {
+            return byPriority.values().stream().mapToLong(stats -> stats.failed.sum()).sum();
+        }
+
+        void appendRows(StringBuilder out, String source, long start) {
+            double seconds = Math.max(1, lastCompletion.get() - start) / 1e9;
+            new TreeMap<>(byPriority).forEach((priority, stats) -> {
+                Histogram latency = stats.latency;
+                long ok = stats.ok.sum();
+                long failed = stats.failed.sum();
+                out.append(String.format("%-6s %-9s %8d %8d %7d %8d %9.1f %8.1f %8.1f %8.1f %8.1f%n",
+                        source, priority, stats.sent.sum(), ok, failed, stats.sent.sum() - ok - failed,
+                        (ok + failed) / seconds,
+                        latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                        latency.getValueAtPercentile(99.9) / 1000.0, latency.getMaxValue() / 1000.0));
+            });
+        }
+    }
+
+    private static final class PriorityStats {
+
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final Histogram latency = new ConcurrentHistogram(3);
+    }
+
+    private static final class LagStats {
+
+        private volatile long max;
+        private volatile long last;
+
+        void record(long lag) {
+            last = lag;
+            max = Math.max(max, lag);
+        }
+
+        long max() {
+            return max;
+        }
+
+        long last() {
+            return last;
+        }
+    }
+
+    /**
+     * Load shape and provider behaviour, from {@code -Dloadtest.*} system properties.
+     */
+    record LoadProfile(Duration duration, Duration drainTimeout, int httpRate, int kafkaRate,
+                       List<NotificationRequest.NotificationType> channels,
+                       List<NotificationRequest.Priority> priorities,
+                       Duration twilioLatency, double twilioErrorRate,
+                       Duration fcmLatency, double fcmErrorRate) {
+
+        static LoadProfile fromSystemProperties() {
+            return new LoadProfile(
+                    duration("loadtest.duration", "30s"),
+                    duration("loadtest.drain-timeout", "60s"),
+                    Integer.parseInt(System.getProperty("loadtest.http-rate", "10")),
+                    Integer.parseInt(System.getProperty("loadtest.kafka-rate", "40")),
+                    Arrays.stream(System.getProperty("loadtest.channels", "EMAIL,SMS,PUSH").split(","))
+                            .map(String::trim).map(NotificationRequest.NotificationType::valueOf).toList(),
+                    Arrays.stream(System.getProperty("loadtest.priorities", "NORMAL,HIGH,CRITICAL").split(","))
+                            .map(String::trim).map(NotificationRequest.Priority::valueOf).toList(),
+                    duration("loadtest.twilio.latency", "50ms"),
+                    Double.parseDouble(System.getProperty("loadtest.twilio.error-rate", "0")),
+                    duration("loadtest.fcm.latency", "20ms"),
+                    Double.parseDouble(System.getProperty("loadtest.fcm.error-rate", "0")));
+        }
+
+        private static Duration duration(String property, String defaultValue) {
+            return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+        }
+    }
+}
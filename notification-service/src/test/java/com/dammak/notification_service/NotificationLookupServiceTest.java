@@ -0,0 +1,93 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.entity.NotificationHistory;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.model.NotificationStatusPage;
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import com.dammak.notification_service.service.NotificationLookupService;
+import com.dammak.notification_service.service.NotificationStatusCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class NotificationLookupServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final NotificationStatusCache cache = new NotificationStatusCache(100, Duration.ofMinutes(5), meterRegistry);
+    private final NotificationHistoryRepository repository = mock(NotificationHistoryRepository.class);
+    private final NotificationLookupService service = new NotificationLookupService(cache, repository, 2, meterRegistry);
+
+    private static NotificationHistory history(String recipient, LocalDateTime sentAt) {
+        return new NotificationHistory(UUID.randomUUID().toString(), NotificationRequest.NotificationType.SMS,
+                recipient, null, null, true, null, sentAt);
+    }
+
+    private static NotificationStatus status(UUID id, boolean success, LocalDateTime sentAt) {
+        return new NotificationStatus(id, NotificationRequest.NotificationType.EMAIL, "a@example.com", success,
+                success ? "sent" : "failed", sentAt);
+    }
+
+    @Test
+    void recentStatusIsServedFromCacheWithoutTouchingTheDatabase() {
+        UUID id = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        cache.put(status(id, true, now));
+        // An older event delivered late does not replace the newer one
+        cache.put(status(id, false, now.minusSeconds(5)));
+
+        Optional<NotificationStatus> found = service.findStatus(id);
+
+        assertTrue(found.orElseThrow().isSuccess());
+        verifyNoInteractions(repository);
+        assertEquals(1, meterRegistry.get("notification.status.lookups").tag("source", "cache").counter().count());
+    }
+
+    @Test
+    void olderStatusFallsBackToHistory() {
+        NotificationHistory stored = history("+15550001", LocalDateTime.now().minusDays(3));
+        when(repository.findFirstByIdOrderBySentAtDesc(stored.getId())).thenReturn(Optional.of(stored));
+
+        NotificationStatus found = service.findStatus(UUID.fromString(stored.getId())).orElseThrow();
+
+        assertEquals("+15550001", found.getRecipient());
+        assertEquals("SMS sent successfully", found.getMessage());
+        assertTrue(service.findStatus(UUID.randomUUID()).isEmpty());
+        assertEquals(1, meterRegistry.get("notification.status.lookups").tag("source", "miss").counter().count());
+    }
+
+    @Test
+    void recipientListingPagesByKeyset() {
+        LocalDateTime now = LocalDateTime.now();
+        NotificationHistory first = history("+15550001", now);
+        NotificationHistory second = history("+15550001", now.minusMinutes(1));
+        NotificationHistory third = history("+15550001", now.minusMinutes(2));
+        when(repository.findLatestByRecipient("+15550001", Limit.of(3))).thenReturn(List.of(first, second, third));
+        when(repository.findByRecipientBefore("+15550001", second.getSentAt(), second.getId(), Limit.of(3)))
+                .thenReturn(List.of(third));
+
+        NotificationStatusPage page = service.findByRecipient("+15550001", null, 50);
+        assertEquals(2, page.items().size());
+        assertNotNull(page.nextCursor());
+
+        NotificationStatusPage next = service.findByRecipient("+15550001", page.nextCursor(), 50);
+        assertEquals(List.of(UUID.fromString(third.getId())), next.items().stream().map(NotificationStatus::getId).toList());
+        assertNull(next.nextCursor());
+    }
+
+    @Test
+    void rejectsCursorItDidNotIssue() {
+        assertThrows(IllegalArgumentException.class, () -> service.findByRecipient("+15550001", "not-a-cursor", 10));
+        verifyNoInteractions(repository);
+    }
+}
@@ -0,0 +1,105 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.entity.FailedNotification;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.scheduler.NotificationRetryScheduler;
+import com.dammak.notification_service.service.FailedNotificationService;
+import com.dammak.notification_service.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class NotificationRetrySchedulerTest {
+
+    private final FailedNotificationService failedNotificationService = mock(FailedNotificationService.class);
+    private final NotificationService notificationService = mock(NotificationService.class);
+    private NotificationRetryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new NotificationRetryScheduler(failedNotificationService, notificationService,
+                Executors.newFixedThreadPool(4));
+        ReflectionTestUtils.setField(scheduler, "maxRetryAttempts", 3);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 2);
+        ReflectionTestUtils.setField(scheduler, "initialBackoff", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(scheduler, "maxBackoff", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(scheduler, "lease", Duration.ofMinutes(5));
+
+        when(failedNotificationService.mapToNotificationRequest(any())).thenAnswer(invocation -> {
+            FailedNotification failed = invocation.getArgument(0);
+            NotificationRequest request = new NotificationRequest();
+            request.setId(UUID.fromString(failed.getId()));
+            request.setType(NotificationRequest.NotificationType.EMAIL);
+            request.setRecipient(failed.getRecipient());
+            return request;
+        });
+    }
+
+    private static FailedNotification failed(String recipient, int retryCount) {
+        FailedNotification notification = new FailedNotification();
+        notification.setId(UUID.randomUUID().toString());
+        notification.setType(NotificationRequest.NotificationType.EMAIL);
+        notification.setRecipient(recipient);
+        notification.setRetryCount(retryCount);
+        return notification;
+    }
+
+    private void respond(String recipient, boolean success) {
+        when(notificationService.processNotification(argThat(request -> request != null
+                && recipient.equals(request.getRecipient())))).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            return success ? NotificationStatus.getSuccess(request, null) : NotificationStatus.getError(request, "down");
+        });
+    }
+
+    @Test
+    void successfulRetriesAreDeletedAndFailuresRescheduled() {
+        FailedNotification ok = failed("ok@example.com", 0);
+        FailedNotification flaky = failed("flaky@example.com", 0);
+        when(failedNotificationService.claimDue(eq(3), eq(2), any())).thenReturn(List.of(ok, flaky), List.of());
+        respond("ok@example.com", true);
+        respond("flaky@example.com", false);
+
+        scheduler.retryFailedNotifications();
+
+        verify(failedNotificationService).delete(ok.getId());
+        verify(failedNotificationService).reschedule(eq(flaky), any(Duration.class), eq("down"));
+        verify(failedNotificationService, never()).delete(flaky.getId());
+        // A full batch means there may be more due rows, so it claims again
+        verify(failedNotificationService, times(2)).claimDue(eq(3), eq(2), any());
+    }
+
+    @Test
+    void rowOutOfAttemptsIsDropped() {
+        FailedNotification exhausted = failed("gone@example.com", 2);
+        when(failedNotificationService.claimDue(eq(3), eq(2), any())).thenReturn(List.of(exhausted));
+        respond("gone@example.com", false);
+
+        scheduler.retryFailedNotifications();
+
+        verify(failedNotificationService).delete(exhausted.getId());
+        verify(failedNotificationService, never()).reschedule(any(), any(), any());
+    }
+
+    @Test
+    void backoffGrowsExponentiallyUpToTheCap() {
+        Duration first = scheduler.backoff(1);
+        Duration third = scheduler.backoff(3);
+        Duration capped = scheduler.backoff(20);
+
+        assertTrue(first.toMillis() >= 96_000 && first.toMillis() <= 144_000, first.toString());
+        assertTrue(third.toMillis() >= 384_000 && third.toMillis() <= 576_000, third.toString());
+        assertTrue(capped.toMillis() <= Duration.ofMinutes(36).toMillis(), capped.toString());
+    }
+}
@@ -1,24 +1,36 @@
 package com.dammak.notification_service;
 
 
+import com.dammak.notification_service.correlation.ReplyPartitionRouter;
+import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.kafka.producer.PriorityProducerRouter;
 import com.dammak.notification_service.model.NotificationRequest;
 import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
 import com.dammak.notification_service.service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,6 +48,24 @@ public class NotificationServiceTest {
     @Mock
     private NotificationHistoryService historyService;
 
+    @Mock
+    private KafkaProducer<NotificationRequest> notificationRequestKafkaProducer;
+
+    @Mock
+    private KafkaProducer<NotificationStatus> notificationStatusKafkaProducer;
+
+    @Mock
+    private PriorityProducerRouter requestProducers;
+
+    @Mock
+    private ReplyPartitionRouter replyPartitionRouter;
+
+    @Spy
+    private ChannelConcurrencyLimiter channelLimiter = new ChannelConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(2), true, 1, 0.9, 2.0, new SimpleMeterRegistry());
+
+    @Spy
+    private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
+
     @InjectMocks
     private NotificationService notificationService;
 
@@ -45,6 +75,12 @@ public class NotificationServiceTest {
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(notificationService, "responseTopic", "notification-status-event");
+        lenient().when(requestProducers.producerFor(any())).thenReturn(notificationRequestKafkaProducer);
+        // Constructor injection can't tell the two producer mocks apart by type, so stub both
+        lenient().when(notificationStatusKafkaProducer.sendEvent(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+        lenient().when(notificationRequestKafkaProducer.sendEvent(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+
         // Email request
         emailRequest = new NotificationRequest();
         emailRequest.setType(NotificationRequest.NotificationType.EMAIL);
@@ -149,4 +185,17 @@ public class NotificationServiceTest {
         verify(emailService, never()).sendEmail(any());
         verify(smsService, never()).sendSms(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    void sendNotificationUsesTheProducerOfItsPriority() throws Exception {
+        ReflectionTestUtils.setField(notificationService, "criticalPriorityTopic", "notification-requests-critical");
+        when(replyPartitionRouter.replyHeader()).thenReturn(new RecordHeader("reply-partition", new byte[]{0, 0, 0, 0}));
+        smsRequest.setPriority(NotificationRequest.Priority.CRITICAL);
+
+        notificationService.sendNotification(smsRequest);
+
+        verify(requestProducers).producerFor(NotificationRequest.Priority.CRITICAL);
+        verify(notificationRequestKafkaProducer).sendEvent(argThat((ProducerRecord<String, NotificationRequest> record) ->
+                record.topic().equals("notification-requests-critical")));
+    }
+}
@@ -0,0 +1,141 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.producer.KafkaProducer;
+import com.dammak.notification_service.kafka.producer.PriorityProducerRouter;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.NotificationService;
+import com.dammak.notification_service.spool.NotificationSpool;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class NotificationSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    private NotificationSpool spool(NotificationService notificationService, CircuitBreaker circuitBreaker) {
+        return spool(notificationService, circuitBreaker, new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private NotificationSpool spool(NotificationService notificationService, CircuitBreaker circuitBreaker,
+                                    SimpleMeterRegistry meterRegistry) {
+        KafkaProducer<NotificationRequest> producer = mock(KafkaProducer.class);
+        when(producer.getCircuitBreaker()).thenReturn(circuitBreaker);
+        PriorityProducerRouter router = mock(PriorityProducerRouter.class);
+        when(router.producerFor(any())).thenReturn(producer);
+        return new NotificationSpool(notificationService, router, true, directory, DataSize.ofKilobytes(64),
+                DataSize.ofMegabytes(1), Duration.ofMillis(1), 10, Duration.ofMillis(10), Duration.ofMillis(50),
+                meterRegistry);
+    }
+
+    private static NotificationRequest request(int i) {
+        NotificationRequest request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.SMS);
+        request.setRecipient("+1555000" + i);
+        request.setContent("message " + i);
+        return request;
+    }
+
+    @Test
+    void resendsFromTheFirstFailedRequestInOrder() throws Exception {
+        NotificationService notificationService = mock(NotificationService.class);
+        List<UUID> published = new CopyOnWriteArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+        when(notificationService.publishRequest(any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            // The second send fails, as while the broker is unavailable
+            if (attempts.incrementAndGet() == 2) {
+                return CompletableFuture.failedFuture(new IllegalStateException("broker unavailable"));
+            }
+            published.add(request.getId());
+            return CompletableFuture.completedFuture(null);
+        });
+        NotificationSpool spool = spool(notificationService, CircuitBreaker.ofDefaults("test"));
+        spool.start();
+        try {
+            List<NotificationRequest> requests = List.of(request(1), request(2), request(3));
+            for (NotificationRequest request : requests) {
+                spool.append(request).get();
+            }
+
+            List<UUID> ids = requests.stream().map(NotificationRequest::getId).toList();
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!published.containsAll(ids) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // Requests may be sent more than once, but each one's last send follows the previous one's
+            List<UUID> lastSends = new ArrayList<>(new LinkedHashSet<>(published.reversed())).reversed();
+            assertEquals(ids, lastSends);
+        } finally {
+            spool.stop();
+        }
+    }
+
+    @Test
+    void forwarderSurvivesUnexpectedErrors() throws Exception {
+        NotificationService notificationService = mock(NotificationService.class);
+        List<UUID> published = new CopyOnWriteArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+        when(notificationService.publishRequest(any())).thenAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                // Not a failed send: an error the forwarder does not expect
+                return null;
+            }
+            published.add(invocation.<NotificationRequest>getArgument(0).getId());
+            return CompletableFuture.completedFuture(null);
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        NotificationSpool spool = spool(notificationService, CircuitBreaker.ofDefaults("test"), meterRegistry);
+        spool.start();
+        try {
+            NotificationRequest request = request(1);
+            spool.append(request).get();
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!published.contains(request.getId()) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(request.getId()), published);
+            assertEquals(0.0, meterRegistry.get("notification.spool.forwarder.consecutive-failures").gauge().value());
+        } finally {
+            spool.stop();
+        }
+    }
+
+    @Test
+    void spoolsWhenAskedOrWhileTheCircuitIsOpen() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("test");
+        NotificationSpool spool = spool(mock(NotificationService.class), circuitBreaker);
+        NotificationRequest request = request(1);
+        assertFalse(spool.shouldSpool(request, true));
+
+        spool.start();
+        try {
+            assertTrue(spool.shouldSpool(request, true));
+            assertFalse(spool.shouldSpool(request, false));
+            circuitBreaker.transitionToOpenState();
+            assertTrue(spool.shouldSpool(request, false));
+        } finally {
+            spool.stop();
+        }
+    }
+}
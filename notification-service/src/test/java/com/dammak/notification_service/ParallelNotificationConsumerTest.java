@@ -0,0 +1,236 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.listener.BatchNotificationProcessor;
+import com.dammak.notification_service.kafka.listener.ParallelNotificationConsumer;
+import com.dammak.notification_service.kafka.listener.ReplayWindow;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.repository.NotificationHistoryRepository;
+import com.dammak.notification_service.service.NotificationDeduplicator;
+import com.dammak.notification_service.service.NotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class ParallelNotificationConsumerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("notification-requests-high", 0);
+    private static final TopicPartition LOW_PARTITION = new TopicPartition("notification-requests-low", 0);
+
+    private final NotificationService notificationService = mock(NotificationService.class);
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, NotificationRequest> consumer = mock(Consumer.class);
+    private final AtomicLong committed = new AtomicLong(-1);
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+    private ExecutorService executor;
+    private ParallelNotificationConsumer parallelConsumer;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+        parallelConsumer = parallelConsumer(Duration.ofMillis(10));
+        when(consumer.assignment()).thenReturn(Set.of(PARTITION));
+        doAnswer(invocation -> {
+            Map<TopicPartition, OffsetAndMetadata> offsets = invocation.getArgument(0);
+            committed.set(offsets.get(PARTITION).offset());
+            return null;
+        }).when(consumer).commitSync(anyMap());
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelConsumer.stop();
+        executor.shutdownNow();
+        retryScheduler.shutdownNow();
+    }
+
+    private ParallelNotificationConsumer parallelConsumer(Duration retryBackoff) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReplayWindow replayWindow = new ReplayWindow();
+        BatchNotificationProcessor processor = new BatchNotificationProcessor(notificationService, executor,
+                new PipelineMetrics(meterRegistry),
+                new NotificationDeduplicator(mock(NotificationHistoryRepository.class), null, true, 1000,
+                        Duration.ofMinutes(10), false, 1000, 0.01, meterRegistry), replayWindow);
+        return new ParallelNotificationConsumer(processor, replayWindow, executor, retryScheduler, 100, "recipient",
+                retryBackoff, retryBackoff.multipliedBy(5), Duration.ofSeconds(1), meterRegistry);
+    }
+
+    @Test
+    void commitsOnlyUpToTheFirstRecordStillInFlight() throws Exception {
+        CountDownLatch slowRelease = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        when(notificationService.processNotification(any(), any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            if (request.getRecipient().startsWith("slow")) {
+                slowRelease.await();
+            }
+            processed.add(request.getRecipient());
+            return NotificationStatus.getSuccess(request, null);
+        });
+
+        parallelConsumer.dispatch(List.of(record(0, "slow"), record(1, "b"), record(2, "c")), consumer, false, false);
+
+        // Later records of the partition complete without waiting for the slow one
+        awaitTrue(() -> processed.containsAll(List.of("b@example.com", "c@example.com")));
+        parallelConsumer.dispatch(List.of(), consumer, false, false);
+        assertEquals(-1, committed.get());
+
+        slowRelease.countDown();
+        awaitCommitted(3);
+    }
+
+    @Test
+    void keepsRecordsOfARecipientInOffsetOrder() throws Exception {
+        List<Long> processedOffsets = new CopyOnWriteArrayList<>();
+        when(notificationService.processNotification(any(), any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            if (request.getRecipient().startsWith("same")) {
+                processedOffsets.add(Long.parseLong(request.getSubject()));
+            }
+            return NotificationStatus.getSuccess(request, null);
+        });
+
+        List<ConsumerRecord<String, NotificationRequest>> records = new ArrayList<>();
+        List<Long> sameRecipientOffsets = new ArrayList<>();
+        for (int offset = 0; offset < 60; offset++) {
+            String recipient = offset % 3 == 0 ? "same" : "other-" + offset;
+            if (offset % 3 == 0) {
+                sameRecipientOffsets.add((long) offset);
+            }
+            records.add(record(offset, recipient));
+        }
+        parallelConsumer.dispatch(records, consumer, false, false);
+
+        awaitCommitted(60);
+        assertEquals(sameRecipientOffsets, processedOffsets);
+    }
+
+    @Test
+    void retriesAFailedRecordInPlaceOnRedeliveringLanes() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        when(notificationService.processNotification(any(), any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            if (request.getRecipient().startsWith("flaky") && attempts.incrementAndGet() < 3) {
+                throw new RuntimeException("provider down");
+            }
+            return NotificationStatus.getSuccess(request, null);
+        });
+
+        parallelConsumer.dispatch(List.of(record(0, "flaky"), record(1, "b")), consumer, true, false);
+
+        awaitCommitted(2);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void aRecipientIsOrderedWithinItsLaneOnly() throws Exception {
+        CountDownLatch lowRelease = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        when(notificationService.processNotification(any(), any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            if ("low".equals(request.getSubject())) {
+                lowRelease.await();
+            }
+            processed.add(request.getSubject());
+            return NotificationStatus.getSuccess(request, null);
+        });
+
+        try {
+            parallelConsumer.dispatch(List.of(record(LOW_PARTITION, 0, "same", "low")), consumer, false, false);
+            parallelConsumer.dispatch(List.of(record(PARTITION, 0, "same", "high")), consumer, false, false);
+
+            awaitTrue(() -> processed.contains("high"));
+            assertFalse(processed.contains("low"));
+        } finally {
+            lowRelease.countDown();
+        }
+        awaitTrue(() -> processed.contains("low"));
+    }
+
+    @Test
+    void retryBackoffDoesNotHoldAThread() throws Exception {
+        executor.shutdownNow();
+        executor = Executors.newSingleThreadExecutor();
+        parallelConsumer = parallelConsumer(Duration.ofMillis(100));
+        CountDownLatch otherProcessed = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        when(notificationService.processNotification(any(), any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            if (request.getRecipient().startsWith("flaky")) {
+                attempts.incrementAndGet();
+                if (otherProcessed.getCount() > 0) {
+                    throw new RuntimeException("provider down");
+                }
+            } else {
+                otherProcessed.countDown();
+            }
+            return NotificationStatus.getSuccess(request, null);
+        });
+
+        parallelConsumer.dispatch(List.of(record(0, "flaky"), record(1, "b")), consumer, true, false);
+
+        // The only thread is free while the flaky record waits, so the next one runs in between
+        awaitCommitted(2);
+        assertEquals(2, attempts.get());
+    }
+
+    private void awaitCommitted(long offset) throws InterruptedException {
+        // Commits only happen on the consumer thread, so keep "polling"
+        awaitTrue(() -> {
+            parallelConsumer.dispatch(List.of(), consumer, false, false);
+            return committed.get() == offset;
+        });
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private ConsumerRecord<String, NotificationRequest> record(long offset, String recipient) {
+        return record(PARTITION, offset, recipient, Long.toString(offset));
+    }
+
+    private ConsumerRecord<String, NotificationRequest> record(TopicPartition partition, long offset, String recipient,
+                                                               String subject) {
+        NotificationRequest request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient(recipient + "@example.com");
+        request.setSubject(subject);
+        request.setContent("This is a test email content");
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
+                request.getId().toString(), request);
+    }
+}
@@ -0,0 +1,191 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.scheduler.PartitionMaintenance;
+import com.dammak.notification_service.service.FailedNotificationService;
+import com.dammak.notification_service.service.NotificationHistoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionMaintenanceTest {
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyyMMdd");
+
+    private static EmbeddedPostgres postgres;
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void startDatabase() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    private static PartitionMaintenance maintenance() {
+        return new PartitionMaintenance(jdbcTemplate, true, 2, ZoneOffset.UTC, Duration.ofDays(90),
+                Duration.ofDays(30), new SimpleMeterRegistry());
+    }
+
+    private static List<String> partitions(String table) {
+        return jdbcTemplate.queryForList("SELECT child.relname FROM pg_inherits "
+                + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+                + "WHERE pg_inherits.inhparent = ?::regclass ORDER BY child.relname", String.class, table);
+    }
+
+    @Test
+    void createsUpcomingPartitionsAndDropsExpiredOnes() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String expired = "notification_history" + SUFFIX.format(today.minusDays(91));
+        String retained = "notification_history" + SUFFIX.format(today.minusDays(89));
+        for (String partition : List.of(expired, retained)) {
+            LocalDate day = LocalDate.parse(partition.substring("notification_history".length()), SUFFIX);
+            jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF notification_history "
+                    + "FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+            jdbcTemplate.update("INSERT INTO notification_history (id, success, sent_at) VALUES (?, true, ?)",
+                    UUID.randomUUID().toString(), day.atTime(12, 0));
+        }
+
+        maintenance().maintain();
+        // A second run changes nothing
+        maintenance().maintain();
+
+        List<String> history = partitions("notification_history");
+        assertFalse(history.contains(expired));
+        assertTrue(history.contains(retained));
+        assertTrue(history.contains("notification_history_default"));
+        for (int day = -1; day <= 2; day++) {
+            assertTrue(history.contains("notification_history" + SUFFIX.format(today.plusDays(day))));
+            assertTrue(partitions("failed_notifications").contains("failed_notifications" + SUFFIX.format(today.plusDays(day))));
+        }
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM notification_history WHERE sent_at < ?",
+                Integer.class, today.minusDays(30).atStartOfDay()));
+    }
+
+    @Test
+    void failedNotificationIsOneRowPerIdInTodaysPartition() {
+        maintenance().maintain();
+        FailedNotificationService service = new FailedNotificationService(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                new ObjectMapper());
+        ReflectionTestUtils.setField(service, "initialRetryDelay", Duration.ofMinutes(10));
+        NotificationRequest request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.SMS);
+        request.setRecipient("+15550001");
+
+        service.saveFailedNotification(request, "first");
+        service.saveFailedNotification(request, "second");
+
+        List<String> rows = jdbcTemplate.queryForList(
+                "SELECT tableoid::regclass || ':' || error_message FROM failed_notifications WHERE id = ?",
+                String.class, request.getId().toString());
+        assertEquals(List.of("failed_notifications" + SUFFIX.format(LocalDate.now()) + ":second"), rows);
+    }
+
+    @Test
+    void redeliveredStatusIsOneHistoryRow() {
+        maintenance().maintain();
+        NotificationHistoryService service = new NotificationHistoryService(jdbcTemplate, 10, 10,
+                Duration.ofSeconds(10), Duration.ofMillis(50), Duration.ofDays(1), new SimpleMeterRegistry());
+        UUID id = UUID.randomUUID();
+        LocalDateTime sentAt = LocalDateTime.now();
+
+        // Not started, so each row is written inline; the redelivery got a later sent_at
+        service.saveNotificationHistory(new NotificationStatus(id, NotificationRequest.NotificationType.SMS,
+                "+15550001", true, "sent", sentAt));
+        service.saveNotificationHistory(new NotificationStatus(id, NotificationRequest.NotificationType.SMS,
+                "+15550001", true, "sent", sentAt.plusMinutes(5)));
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM notification_history WHERE id = ?", Integer.class, id.toString()));
+    }
+
+    @Test
+    void laterStatusReplacesTheHistoryRowAndEarlierOnesDoNot() {
+        maintenance().maintain();
+        NotificationHistoryService service = new NotificationHistoryService(jdbcTemplate, 10, 10,
+                Duration.ofSeconds(10), Duration.ofMillis(50), Duration.ofDays(1), new SimpleMeterRegistry());
+        UUID id = UUID.randomUUID();
+        LocalDateTime failedAt = LocalDateTime.now().minusMinutes(10);
+
+        // Failed first, then succeeded through the retry scheduler; then the failure is redelivered
+        service.saveNotificationHistory(new NotificationStatus(id, NotificationRequest.NotificationType.SMS,
+                "+15550001", false, "provider down", failedAt));
+        service.saveNotificationHistory(new NotificationStatus(id, NotificationRequest.NotificationType.SMS,
+                "+15550001", true, "sent", failedAt.plusMinutes(5)));
+        service.saveNotificationHistory(new NotificationStatus(id, NotificationRequest.NotificationType.SMS,
+                "+15550001", false, "provider down", failedAt));
+
+        List<String> rows = jdbcTemplate.queryForList(
+                "SELECT success || ':' || coalesce(error_message, '') FROM notification_history WHERE id = ?",
+                String.class, id.toString());
+        assertEquals(List.of("true:"), rows);
+    }
+
+    @Test
+    void schemaMigratesUnpartitionedTablesAndKeepsTheirRows() {
+        jdbcTemplate.execute("CREATE DATABASE legacy");
+        JdbcTemplate legacy = new JdbcTemplate(postgres.getDatabase("postgres", "legacy"));
+        // As the previous release left them: history from Hibernate's ddl-auto=update, failed
+        // notifications from its schema.sql, both without the columns added since
+        legacy.execute("CREATE TABLE notification_history (id VARCHAR(255) PRIMARY KEY, type VARCHAR(255), "
+                + "recipient VARCHAR(255), subject VARCHAR(255), content VARCHAR(1000), success BOOLEAN NOT NULL, "
+                + "error_message VARCHAR(500), sent_at TIMESTAMP(6))");
+        legacy.execute("CREATE INDEX idx_notification_history_sent_at ON notification_history (sent_at)");
+        legacy.execute("CREATE TABLE failed_notifications (id VARCHAR(36) NOT NULL PRIMARY KEY, "
+                + "type VARCHAR(10) NOT NULL, recipient VARCHAR(255) NOT NULL, subject VARCHAR(255), content TEXT, "
+                + "template_name VARCHAR(100), template_data TEXT, retry_count INT DEFAULT 0, "
+                + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, last_retry TIMESTAMP, error_message VARCHAR(500))");
+        legacy.update("INSERT INTO notification_history (id, type, success, sent_at) VALUES ('a', 'SMS', true, now())");
+        legacy.update("INSERT INTO failed_notifications (id, type, recipient) VALUES ('b', 'SMS', '+15550001')");
+
+        // Twice: the second run must find everything in place
+        for (int run = 0; run < 2; run++) {
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(legacy.getDataSource());
+        }
+
+        for (String table : List.of("notification_history", "failed_notifications")) {
+            assertEquals("p", legacy.queryForObject("SELECT relkind::text FROM pg_class WHERE relname = ?",
+                    String.class, table));
+            assertEquals(1, legacy.queryForObject("SELECT count(*) FROM " + table, Integer.class));
+            assertNull(legacy.queryForObject("SELECT to_regclass(?)::text", String.class, table + "_unpartitioned"));
+        }
+        assertEquals("notification_history", legacy.queryForObject("SELECT indrelid::regclass::text FROM pg_index "
+                + "WHERE indexrelid = 'idx_notification_history_sent_at'::regclass", String.class));
+        assertTrue(legacy.queryForObject("SELECT next_retry_at = created_at FROM failed_notifications WHERE id = 'b'",
+                Boolean.class));
+        // The script released its lock
+        assertEquals(0, legacy.queryForObject("SELECT count(*) FROM pg_locks WHERE locktype = 'advisory'",
+                Integer.class));
+    }
+}
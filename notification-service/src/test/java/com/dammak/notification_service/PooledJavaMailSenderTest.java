@@ -0,0 +1,111 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.mail.PooledJavaMailSender;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PooledJavaMailSenderTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private PooledJavaMailSender sender;
+
+    private PooledJavaMailSender newSender(Duration idleTimeout, Duration validationInterval) {
+        PooledJavaMailSender pooled = new PooledJavaMailSender(2, idleTimeout, validationInterval,
+                Duration.ofSeconds(5), 100);
+        pooled.setHost(ServerSetupTest.SMTP.getBindAddress());
+        pooled.setPort(ServerSetupTest.SMTP.getPort());
+        return pooled;
+    }
+
+    private MimeMessage message(String recipient) throws Exception {
+        MimeMessage message = sender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        helper.setFrom("notifications@example.com");
+        helper.setTo(recipient);
+        helper.setSubject("Pooled");
+        helper.setText("<p>hello</p>", true);
+        return message;
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.destroy();
+    }
+
+    @Test
+    void consecutiveSendsReuseOneConnection() throws Exception {
+        sender = newSender(Duration.ofMinutes(1), Duration.ofSeconds(10));
+
+        for (int i = 0; i < 5; i++) {
+            sender.send(message("user" + i + "@example.com"));
+        }
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(1, sender.getConnectionsOpened());
+        assertEquals(1, sender.getIdleCount());
+        assertEquals(0, sender.getActiveCount());
+    }
+
+    @Test
+    void queuedMessagesShareOneSession() throws Exception {
+        sender = newSender(Duration.ofMinutes(1), Duration.ofSeconds(10));
+
+        sender.send(message("a@example.com"), message("b@example.com"), message("c@example.com"));
+
+        assertEquals(3, greenMail.getReceivedMessages().length);
+        assertEquals(1, sender.getConnectionsOpened());
+    }
+
+    @Test
+    void reportsTheLatencyOfEachMessageOnTheWire() throws Exception {
+        sender = newSender(Duration.ofMinutes(1), Duration.ofSeconds(10));
+        List<Long> latencies = new CopyOnWriteArrayList<>();
+        sender.setSendLatencyListener(latencies::add);
+
+        sender.send(message("a@example.com"), message("b@example.com"));
+        sender.send(message("c@example.com"));
+
+        assertEquals(3, latencies.size());
+        assertTrue(latencies.stream().allMatch(nanos -> nanos > 0));
+    }
+
+    @Test
+    void idleConnectionsAreEvicted() throws Exception {
+        sender = newSender(Duration.ofMillis(200), Duration.ofSeconds(10));
+
+        sender.send(message("a@example.com"));
+        Thread.sleep(600);
+        assertEquals(0, sender.getIdleCount());
+
+        sender.send(message("b@example.com"));
+        assertEquals(2, sender.getConnectionsOpened());
+        assertEquals(2, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void brokenConnectionIsReplaced() throws Exception {
+        sender = newSender(Duration.ofMinutes(1), Duration.ZERO);
+
+        sender.send(message("a@example.com"));
+        // Restarting the server drops the pooled connection underneath the sender
+        greenMail.reset();
+
+        sender.send(message("b@example.com"));
+        assertEquals(2, sender.getConnectionsOpened());
+        assertEquals(1, greenMail.getReceivedMessages().length);
+    }
+}
@@ -0,0 +1,134 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.config.FirebaseConfig;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.push.PushBatcher;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class PushBatcherTest {
+
+    private static final String UNREGISTERED = """
+            {"error":{"code":404,"message":"Requested entity was not found.","status":"NOT_FOUND",
+            "details":[{"@type":"type.googleapis.com/google.firebase.fcm.v1.FcmError","errorCode":"UNREGISTERED"}]}}""";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer fcm;
+    private FirebaseApp app;
+    private PushBatcher batcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Local stand-in for fcm.googleapis.com/v1/projects/{project}/messages:send
+        fcm = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        fcm.createContext("/v1/projects/test-project/messages:send", this::handleSend);
+        fcm.start();
+
+        FirebaseOptions options = FirebaseOptions.builder()
+                .setCredentials(GoogleCredentials.create(
+                        new AccessToken("test-token", new Date(System.currentTimeMillis() + 3_600_000))))
+                .setProjectId("test-project")
+                .setHttpTransport(FirebaseConfig.redirectingTransport(
+                        URI.create("http://localhost:" + fcm.getAddress().getPort() + "/")))
+                .build();
+        app = FirebaseApp.initializeApp(options, "push-batcher-test-" + UUID.randomUUID());
+
+        batcher = new PushBatcher(FirebaseMessaging.getInstance(app), 500, Duration.ofMillis(200), 100, meterRegistry,
+                mock(ChannelConcurrencyLimiter.class));
+        batcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+        app.delete();
+        fcm.stop(0);
+    }
+
+    private void handleSend(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        boolean unregistered = body.contains("stale-device");
+        byte[] response = (unregistered ? UNREGISTERED : "{\"name\":\"projects/test-project/messages/1\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(unregistered ? 404 : 200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static NotificationRequest push(String token) {
+        NotificationRequest request = new NotificationRequest();
+        request.setId(UUID.randomUUID());
+        request.setType(NotificationRequest.NotificationType.PUSH);
+        request.setRecipient(token);
+        request.setSubject("Campaign");
+        request.setContent("Hello");
+        return request;
+    }
+
+    @Test
+    void requestsWithinTheWindowShareOneBatchAndKeepTheirOwnResults() throws Exception {
+        NotificationRequest first = push("device-1");
+        NotificationRequest stale = push("stale-device");
+        NotificationRequest third = push("device-3");
+
+        List<CompletableFuture<NotificationStatus>> results = List.of(
+                batcher.submit(first), batcher.submit(stale), batcher.submit(third));
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        NotificationStatus firstStatus = results.get(0).join();
+        NotificationStatus staleStatus = results.get(1).join();
+        NotificationStatus thirdStatus = results.get(2).join();
+        assertEquals(first.getId(), firstStatus.getId());
+        assertTrue(firstStatus.isSuccess());
+        assertEquals(stale.getId(), staleStatus.getId());
+        assertFalse(staleStatus.isSuccess());
+        assertTrue(thirdStatus.isSuccess());
+
+        DistributionSummary batchSizes = meterRegistry.get("notification.push.batch.size").summary();
+        assertEquals(1, batchSizes.count());
+        assertEquals(3, batchSizes.totalAmount());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void submitAfterStopFailsFast() {
+        batcher.stop();
+
+        NotificationStatus status = batcher.submit(push("device-1")).join();
+
+        assertFalse(status.isSuccess());
+    }
+}
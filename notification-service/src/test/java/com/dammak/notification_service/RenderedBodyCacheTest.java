@@ -0,0 +1,105 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.service.EmailTemplateRenderer;
+import com.dammak.notification_service.service.RenderedBodyCache;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RenderedBodyCacheTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final EmailTemplateRenderer renderer = mock(EmailTemplateRenderer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+        when(renderer.renderBody(any())).thenAnswer(invocation -> {
+            NotificationRequest request = invocation.getArgument(0);
+            return "<p>Hello " + request.getTemplateData().get("name") + "</p>";
+        });
+    }
+
+    private RenderedBodyCache cache(boolean enabled) {
+        return new RenderedBodyCache(renderer, mailSender, enabled, DataSize.ofMegabytes(1),
+                Duration.ofMinutes(5), meterRegistry);
+    }
+
+    private static NotificationRequest request(String recipient, Map<String, String> data) {
+        NotificationRequest request = new NotificationRequest();
+        request.setType(NotificationRequest.NotificationType.EMAIL);
+        request.setRecipient(recipient);
+        request.setSubject("Spring sale");
+        request.setTemplateName("campaign");
+        request.setTemplateData(data);
+        return request;
+    }
+
+    @Test
+    void campaignBodyIsRenderedOnceAndSentToEveryRecipient() throws Exception {
+        RenderedBodyCache cache = cache(true);
+
+        MimeMessage first = cache.createMessage(request("a@example.com", Map.of("name", "everyone", "code", "SALE")));
+        MimeMessage second = cache.createMessage(request("b@example.com", Map.of("code", "SALE", "name", "everyone")));
+        first.setFrom("notifications@example.com");
+        second.setFrom("notifications@example.com");
+        mailSender.send(first, second);
+
+        verify(renderer, times(1)).renderBody(any());
+        assertTrue(meterRegistry.get("notification.email.body-cache.bytes-saved").counter().count() > 0);
+        assertEquals(0.5, meterRegistry.get("notification.email.body-cache.hit-ratio").gauge().value());
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(2, received.length);
+        assertEquals("a@example.com", received[0].getAllRecipients()[0].toString());
+        assertEquals("b@example.com", received[1].getAllRecipients()[0].toString());
+        assertEquals("Spring sale", received[1].getSubject());
+        assertTrue(GreenMailUtil.getBody(received[1]).contains("Hello everyone"));
+        assertNotEquals(received[0].getMessageID(), received[1].getMessageID());
+    }
+
+    @Test
+    void differentTemplateDataRendersAgain() throws Exception {
+        RenderedBodyCache cache = cache(true);
+
+        cache.createMessage(request("a@example.com", Map.of("name", "Ada")));
+        MimeMessage message = cache.createMessage(request("b@example.com", Map.of("name", "Bob")));
+        message.saveChanges();
+
+        verify(renderer, times(2)).renderBody(any());
+        assertEquals(0.0, meterRegistry.get("notification.email.body-cache.bytes-saved").counter().count());
+        assertTrue(GreenMailUtil.getBody(message).contains("Hello Bob"));
+    }
+
+    @Test
+    void disabledCacheRendersEveryMessage() throws Exception {
+        RenderedBodyCache cache = cache(false);
+
+        cache.createMessage(request("a@example.com", Map.of("name", "everyone")));
+        MimeMessage message = cache.createMessage(request("b@example.com", Map.of("name", "everyone")));
+
+        verify(renderer, times(2)).renderBody(any());
+        assertEquals("b@example.com", message.getAllRecipients()[0].toString());
+    }
+}
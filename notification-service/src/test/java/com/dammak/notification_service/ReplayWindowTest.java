@@ -0,0 +1,47 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.kafka.listener.ReplayWindow;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ReplayWindowTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("notification-requests-high", 0);
+
+    private final ReplayWindow replayWindow = new ReplayWindow();
+    private final Consumer<?, ?> consumer = mock(Consumer.class);
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "key", "value");
+    }
+
+    @Test
+    void onlyRecordsBelowTheEndOffsetAtAssignmentMayBeReplays() {
+        when(consumer.endOffsets(any())).thenReturn(Map.of(PARTITION, 10L));
+
+        replayWindow.onPartitionsAssigned(consumer, List.of(PARTITION));
+
+        assertTrue(replayWindow.mayBeReplay(record(9)));
+        assertFalse(replayWindow.mayBeReplay(record(10)));
+    }
+
+    @Test
+    void unknownPartitionsAreTreatedAsReplays() {
+        when(consumer.endOffsets(any())).thenReturn(Map.of(PARTITION, 10L));
+        replayWindow.onPartitionsAssigned(consumer, List.of(PARTITION));
+
+        replayWindow.onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION));
+
+        assertTrue(replayWindow.mayBeReplay(record(10)));
+    }
+}
@@ -0,0 +1,132 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.spool.SegmentSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentSpoolTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    private SegmentSpool open(long maxBytes) throws IOException {
+        return SegmentSpool.open(directory, SEGMENT_SIZE, maxBytes, Duration.ofMillis(1), new SimpleMeterRegistry());
+    }
+
+    private static byte[] record(int i) {
+        return ("notification-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readAll(SegmentSpool spool) {
+        List<String> records = new ArrayList<>();
+        List<byte[]> batch;
+        while (!(batch = spool.read(7)).isEmpty()) {
+            batch.forEach(r -> records.add(new String(r, StandardCharsets.UTF_8)));
+        }
+        return records;
+    }
+
+    private static List<String> expected(int from, int to) {
+        List<String> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            records.add("notification-" + i);
+        }
+        return records;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).count();
+        }
+    }
+
+    @Test
+    void readsRecordsInOrderAcrossSegments() throws IOException {
+        try (SegmentSpool spool = open(1 << 20)) {
+            List<CompletableFuture<Void>> appends = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                appends.add(spool.append(record(i)));
+            }
+            CompletableFuture.allOf(appends.toArray(CompletableFuture[]::new)).join();
+
+            assertTrue(segmentFiles() > 1);
+            assertEquals(expected(0, 40), readAll(spool));
+            assertTrue(spool.isDrained());
+
+            spool.commit(spool.readPosition());
+            assertEquals(0, spool.backlogBytes());
+            assertEquals(1, segmentFiles());
+        }
+    }
+
+    @Test
+    void resumesAfterTheCommittedPositionOnReopen() throws IOException {
+        try (SegmentSpool spool = open(1 << 20)) {
+            for (int i = 0; i < 30; i++) {
+                spool.append(record(i)).join();
+            }
+            spool.read(12);
+            spool.commit(spool.readPosition());
+        }
+
+        try (SegmentSpool spool = open(1 << 20)) {
+            spool.append(record(30)).join();
+            assertEquals(expected(12, 31), readAll(spool));
+        }
+    }
+
+    @Test
+    void discardsATornRecordAtTheTail() throws IOException {
+        try (SegmentSpool spool = open(1 << 20)) {
+            spool.append(record(0)).join();
+            spool.append(record(1)).join();
+        }
+        // Simulate a crash mid-write: the second record's payload never reached the disk
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        int secondPayload = 2 * Integer.BYTES + record(0).length + 2 * Integer.BYTES;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0}), secondPayload);
+        }
+
+        try (SegmentSpool spool = open(1 << 20)) {
+            spool.append(record(2)).join();
+            assertEquals(List.of("notification-0", "notification-2"), readAll(spool));
+        }
+    }
+
+    @Test
+    void rejectsAppendsOnceFull() throws IOException {
+        try (SegmentSpool spool = open(80)) {
+            spool.append(record(0)).join();
+            spool.append(record(1)).join();
+            spool.append(record(2)).join();
+            assertThrows(SegmentSpool.SpoolFullException.class, () -> spool.append(record(3)));
+
+            spool.read(10);
+            spool.commit(spool.readPosition());
+            assertDoesNotThrow(() -> spool.append(record(3)).join());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import com.dammak.notification_service.monitoring.PipelineMetrics;
+import com.dammak.notification_service.service.ChannelConcurrencyLimiter;
+import com.dammak.notification_service.service.FailedNotificationService;
+import com.dammak.notification_service.service.SmsService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class SmsServiceTest {
+
+    private static final String ACCOUNT_SID = "AC00000000000000000000000000000000";
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final FailedNotificationService failedNotificationService = mock(FailedNotificationService.class);
+    private final ChannelConcurrencyLimiter channelLimiter = mock(ChannelConcurrencyLimiter.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer twilio;
+    private ExecutorService executor;
+    private SmsService smsService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Local fake of api.twilio.com's Messages resource
+        twilio = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        twilio.createContext("/2010-04-01/Accounts/" + ACCOUNT_SID + "/Messages.json", this::handleCreate);
+        twilio.setExecutor(Executors.newFixedThreadPool(8));
+        twilio.start();
+
+        HttpHost fake = new HttpHost("localhost", twilio.getAddress().getPort());
+        TwilioRestClient client = new TwilioRestClient.Builder(ACCOUNT_SID, "token")
+                .httpClient(new NetworkHttpClient(HttpClientBuilder.create()
+                        .setRoutePlanner((target, request, context) -> new HttpRoute(fake))))
+                .build();
+
+        executor = Executors.newCachedThreadPool();
+        smsService = new SmsService(client, executor, mock(Counter.class), mock(Counter.class),
+                failedNotificationService, 2, 4, meterRegistry,
+                new PipelineMetrics(meterRegistry), channelLimiter);
+        ReflectionTestUtils.setField(smsService, "twilioPhoneNumber", "+15005550006");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        twilio.stop(0);
+    }
+
+    private void handleCreate(HttpExchange exchange) throws IOException {
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+        try {
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Thread.sleep(100);
+            boolean invalid = form.contains("To=invalid");
+            boolean throttled = form.contains("To=throttled");
+            String json = invalid
+                    ? "{\"code\":21211,\"message\":\"Invalid 'To' Phone Number\",\"status\":400}"
+                    : throttled
+                    ? "{\"code\":20429,\"message\":\"Too Many Requests\",\"status\":429}"
+                    : "{\"sid\":\"SM" + UUID.randomUUID().toString().replace("-", "") + "\",\"status\":\"queued\"}";
+            byte[] response = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(invalid ? 400 : throttled ? 429 : 201, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    private static NotificationRequest sms(String recipient) {
+        NotificationRequest request = new NotificationRequest();
+        request.setId(UUID.randomUUID());
+        request.setType(NotificationRequest.NotificationType.SMS);
+        request.setRecipient(recipient);
+        request.setContent("Your code is 1234");
+        return request;
+    }
+
+    @Test
+    void asyncSendsRespectInFlightLimit() throws Exception {
+        List<CompletableFuture<NotificationStatus>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(smsService.sendSmsAsync(sms("+1555000000" + i)));
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertTrue(results.stream().allMatch(result -> result.join().isSuccess()));
+        assertTrue(maxConcurrent.get() <= 2, "max concurrent requests was " + maxConcurrent.get());
+        assertEquals(0.0, meterRegistry.get("notification.sms.in-flight").gauge().value());
+        assertEquals(0.0, meterRegistry.get("notification.sms.queued").gauge().value());
+    }
+
+    @Test
+    void sendsBeyondTheQueueFailFast() throws Exception {
+        List<CompletableFuture<NotificationStatus>> results = new ArrayList<>();
+        // Submitting never waits for a slot: two in flight and four queued fill the service and the
+        // seventh is turned away at once
+        for (int i = 0; i < 7; i++) {
+            results.add(smsService.sendSmsAsync(sms("+1555000000" + i)));
+        }
+
+        NotificationStatus rejected = results.get(6).getNow(null);
+        assertNotNull(rejected);
+        assertFalse(rejected.isSuccess());
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertTrue(results.subList(0, 6).stream().allMatch(result -> result.join().isSuccess()));
+    }
+
+    @Test
+    void twilioErrorResolvesToErrorStatusAndIsStoredForRetry() {
+        NotificationStatus status = smsService.sendSms(sms("invalid"));
+
+        assertFalse(status.isSuccess());
+        verify(failedNotificationService).saveFailedNotification(any(NotificationRequest.class), anyString());
+        // A bad number says nothing about Twilio's capacity
+        verify(channelLimiter, never()).reportThrottled(any());
+    }
+
+    @Test
+    void rateLimitedSendIsReportedToTheLimiter() {
+        NotificationStatus status = smsService.sendSmsAsync(sms("throttled")).join();
+
+        assertFalse(status.isSuccess());
+        verify(channelLimiter).reportThrottled(NotificationRequest.NotificationType.SMS);
+    }
+}
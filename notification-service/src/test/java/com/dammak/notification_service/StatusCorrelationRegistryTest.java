@@ -0,0 +1,71 @@
+package com.dammak.notification_service;
+
+
+import com.dammak.notification_service.correlation.StatusCorrelationRegistry;
+import com.dammak.notification_service.model.NotificationRequest;
+import com.dammak.notification_service.model.NotificationStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatusCorrelationRegistryTest {
+
+    private final StatusCorrelationRegistry registry =
+            new StatusCorrelationRegistry(Duration.ofMillis(10), 64, 0, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void testCompleteResolvesWaitingCaller() throws Exception {
+        UUID id = UUID.randomUUID();
+        CompletableFuture<NotificationStatus> future = registry.register(id, Duration.ofSeconds(30));
+
+        NotificationStatus status = new NotificationStatus(id, NotificationRequest.NotificationType.EMAIL,
+                "test@example.com", true, "Email sent successfully", LocalDateTime.now());
+
+        assertTrue(registry.complete(status));
+        assertEquals(status, future.get(1, TimeUnit.SECONDS));
+        assertEquals(0, registry.pendingCount());
+    }
+
+    @Test
+    void testUnknownStatusIsIgnored() {
+        NotificationStatus status = new NotificationStatus(UUID.randomUUID(), NotificationRequest.NotificationType.SMS,
+                "+1234567890", true, "SMS sent successfully", LocalDateTime.now());
+
+        assertFalse(registry.complete(status));
+    }
+
+    @Test
+    void testEntryExpiresAndIsRemoved() {
+        UUID id = UUID.randomUUID();
+        CompletableFuture<NotificationStatus> future = registry.register(id, Duration.ofMillis(50));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, ex.getCause());
+        assertEquals(0, registry.pendingCount());
+    }
+
+    @Test
+    void testDiscardRemovesEntry() {
+        UUID id = UUID.randomUUID();
+        registry.register(id, Duration.ofSeconds(30));
+
+        registry.discard(id);
+
+        assertEquals(0, registry.pendingCount());
+    }
+}